@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateAction;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.stream.Stream;
+
+/**
+ * A {@link State} that is backed by an enum constant, instances with the same constant are
+ * {@link #equals(Object)}. Instances are created by an {@link EnumStateMachine}, one for each
+ * constant, and are indexed by the constant's ordinal.
+ */
+public final class EnumState<T, S, E extends Enum<E>> implements State<T, S> {
+
+  private final E constant;
+  private final List<StateAction<T, S>> entryActions;
+  private final List<StateAction<T, S>> exitActions;
+
+  EnumState(E constant) {
+    this.constant = constant;
+    this.entryActions = new ArrayList<>();
+    this.exitActions = new ArrayList<>();
+  }
+
+  @Override
+  public void onEntry(StateEvent<S> stateEvent, StateMachine<T, S> stateMachine) {
+    for (int i = 0; i < this.entryActions.size(); i++) {
+      this.entryActions.get(i).execute(stateEvent, stateMachine);
+    }
+  }
+
+  @Override
+  public void onExit(StateEvent<S> stateEvent, StateMachine<T, S> stateMachine) {
+    for (int i = 0; i < this.exitActions.size(); i++) {
+      this.exitActions.get(i).execute(stateEvent, stateMachine);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void appendEntryActions(StateAction<T, S>... actions) {
+    Stream.of(actions).filter(Objects::nonNull).forEach(this.entryActions::add);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void appendExitActions(StateAction<T, S>... actions) {
+    Stream.of(actions).filter(Objects::nonNull).forEach(this.exitActions::add);
+  }
+
+  @Override
+  public String getName() {
+    return this.constant.name();
+  }
+
+  /**
+   * @return the enum constant of this {@link State}
+   */
+  public E getConstant() {
+    return this.constant;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    EnumState<?, ?, ?> that = (EnumState<?, ?, ?>) o;
+    return constant == that.constant;
+  }
+
+  @Override
+  public int hashCode() {
+    return constant.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", EnumState.class.getSimpleName() + "[", "]")
+        .add(constant.name()).toString();
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import com.webotech.statemachine.api.StateEvent;
+import java.util.StringJoiner;
+
+/**
+ * A {@link StateEvent} that is backed by an enum constant, instances with the same constant are
+ * {@link #equals(Object)}. When it is received by an {@link EnumStateMachine} its transition is
+ * resolved using the constant's ordinal.
+ */
+public final class EnumStateEvent<S, V extends Enum<V>> implements StateEvent<S> {
+
+  private final V constant;
+  private S payload;
+
+  public EnumStateEvent(V constant) {
+    this(constant, null);
+  }
+
+  public EnumStateEvent(EnumStateEvent<S, V> stateEvent) {
+    this(stateEvent.getConstant(), stateEvent.getPayload());
+  }
+
+  public EnumStateEvent(V constant, S payload) {
+    this.constant = constant;
+    this.payload = payload;
+  }
+
+  @Override
+  public String getName() {
+    return this.constant.name();
+  }
+
+  @Override
+  public S getPayload() {
+    return this.payload;
+  }
+
+  @Override
+  public void setPayload(S payload) {
+    this.payload = payload;
+  }
+
+  /**
+   * @return the enum constant of this {@link StateEvent}
+   */
+  public V getConstant() {
+    return this.constant;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    EnumStateEvent<?, ?> that = (EnumStateEvent<?, ?>) o;
+    return constant == that.constant;
+  }
+
+  @Override
+  public int hashCode() {
+    return constant.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", EnumStateEvent.class.getSimpleName() + "[", "]")
+        .add(constant.name()).toString();
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateAction;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import com.webotech.statemachine.api.StateMachineListener;
+import com.webotech.statemachine.strategy.EventProcessingStrategy;
+import com.webotech.statemachine.strategy.EventProcessingStrategyFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>A {@link StateMachine} for a closed set of states and events that are defined as enums. Each
+ * enum constant has a {@link State} or {@link StateEvent} that is indexed by its ordinal, so
+ * transitions and entry/exit actions are resolved with array lookups rather than by hashing
+ * names.</p>
+ * <p>It has the same fluent configuration API as {@link GenericStateMachine} with overloads that
+ * take enum constants:</p>
+ * <pre>
+ * EnumStateMachine sm = new EnumStateMachine.Builder(OrderState.class, OrderEvent.class).build();
+ * sm.initialSate(NEW).receives(ACK).itTransitionsTo(OPEN)
+ *     .when(OPEN).receives(FILL).itTransitionsTo(FILLED)
+ *     .when(FILLED).itEnds();
+ * sm.appendEntryActions(OPEN, (ev, m) -&gt; ...);
+ * </pre>
+ * <p>Generic types are
+ * <li>T - the context for the {@link StateMachine}</li>
+ * <li>S - the payload of the {@link StateEvent}</li>
+ * <li>E - the enum of the states</li>
+ * <li>V - the enum of the events</li>
+ * </p>
+ */
+public class EnumStateMachine<T, S, E extends Enum<E>, V extends Enum<V>> extends
+    GenericStateMachine<T, S> {
+
+  private final List<EnumState<T, S, E>> states;
+  private final List<EnumStateEvent<S, V>> events;
+
+  private EnumStateMachine(Class<E> stateType, Class<V> eventType, T context,
+      StateMachineListener<T, S> stateMachineListener,
+      EventProcessingStrategy<T, S> eventProcessingStrategy) {
+    this(enumStates(stateType), enumEvents(eventType), eventType, context, stateMachineListener,
+        eventProcessingStrategy);
+  }
+
+  @SuppressWarnings("unchecked")
+  private EnumStateMachine(List<EnumState<T, S, E>> states, List<EnumStateEvent<S, V>> events,
+      Class<V> eventType, T context, StateMachineListener<T, S> stateMachineListener,
+      EventProcessingStrategy<T, S> eventProcessingStrategy) {
+    super(context, new StateMachineDefinition.Builder<>((List<State<T, S>>) (List<?>) states,
+            (List<StateEvent<S>>) (List<?>) events, eventType), stateMachineListener,
+        eventProcessingStrategy);
+    this.states = states;
+    this.events = events;
+  }
+
+  private static <T, S, E extends Enum<E>> List<EnumState<T, S, E>> enumStates(
+      Class<E> stateType) {
+    List<EnumState<T, S, E>> enumStates = new ArrayList<>();
+    for (E constant : stateType.getEnumConstants()) {
+      enumStates.add(new EnumState<>(constant));
+    }
+    return Collections.unmodifiableList(enumStates);
+  }
+
+  private static <S, V extends Enum<V>> List<EnumStateEvent<S, V>> enumEvents(
+      Class<V> eventType) {
+    List<EnumStateEvent<S, V>> enumEvents = new ArrayList<>();
+    for (V constant : eventType.getEnumConstants()) {
+      enumEvents.add(new EnumStateEvent<>(constant));
+    }
+    return Collections.unmodifiableList(enumEvents);
+  }
+
+  /**
+   * @return the {@link State} for the enum constant
+   */
+  public EnumState<T, S, E> getState(E state) {
+    return this.states.get(state.ordinal());
+  }
+
+  /**
+   * @return the {@link StateEvent} for the enum constant, it has no payload
+   */
+  public EnumStateEvent<S, V> getEvent(V event) {
+    return this.events.get(event.ordinal());
+  }
+
+  /**
+   * Assigns {@link StateAction}s to fire when the state is entered.
+   */
+  @SafeVarargs
+  @SuppressWarnings("varargs")
+  public final EnumStateMachine<T, S, E, V> appendEntryActions(E state,
+      StateAction<T, S>... actions) {
+    getState(state).appendEntryActions(actions);
+    return this;
+  }
+
+  /**
+   * Assigns {@link StateAction}s to fire when the state is exited.
+   */
+  @SafeVarargs
+  @SuppressWarnings("varargs")
+  public final EnumStateMachine<T, S, E, V> appendExitActions(E state,
+      StateAction<T, S>... actions) {
+    getState(state).appendExitActions(actions);
+    return this;
+  }
+
+  /**
+   * A configuration method: see {@link StateMachine#initialSate(State)}
+   */
+  public EnumStateMachine<T, S, E, V> initialSate(E initState) {
+    return initialSate(getState(initState));
+  }
+
+  /**
+   * A configuration method: see {@link StateMachine#when(State)}
+   */
+  public EnumStateMachine<T, S, E, V> when(E state) {
+    return when(getState(state));
+  }
+
+  /**
+   * A configuration method: see {@link StateMachine#receives(StateEvent)}
+   */
+  public EnumStateMachine<T, S, E, V> receives(V stateEvent) {
+    return receives(getEvent(stateEvent));
+  }
+
+  /**
+   * A configuration method: see {@link StateMachine#itTransitionsTo(State)}
+   */
+  public EnumStateMachine<T, S, E, V> itTransitionsTo(E state) {
+    return itTransitionsTo(getState(state));
+  }
+
+  @Override
+  public EnumStateMachine<T, S, E, V> initialSate(State<T, S> initState) {
+    super.initialSate(initState);
+    return this;
+  }
+
+  @Override
+  public EnumStateMachine<T, S, E, V> when(State<T, S> state) {
+    super.when(state);
+    return this;
+  }
+
+  @Override
+  public EnumStateMachine<T, S, E, V> receives(StateEvent<S> stateEvent) {
+    super.receives(stateEvent);
+    return this;
+  }
+
+  @Override
+  public EnumStateMachine<T, S, E, V> itEnds() {
+    super.itEnds();
+    return this;
+  }
+
+  @Override
+  public EnumStateMachine<T, S, E, V> itTransitionsTo(State<T, S> state) {
+    super.itTransitionsTo(state);
+    return this;
+  }
+
+  @Override
+  public EnumStateMachine<T, S, E, V> timesOutAfter(Duration timeout) {
+    super.timesOutAfter(timeout);
+    return this;
+  }
+
+  @Override
+  public EnumStateMachine<T, S, E, V> itDoesNotTransition() {
+    super.itDoesNotTransition();
+    return this;
+  }
+
+  /**
+   * Starts the {@link StateMachine} in the state of the enum constant, see
+   * {@link StateMachine#startInState(State)}
+   */
+  public void startInState(E state) {
+    startInState(getState(state));
+  }
+
+  /**
+   * Fires the event of the enum constant, it has no payload
+   */
+  public void fire(V stateEvent) {
+    fire(getEvent(stateEvent));
+  }
+
+  /**
+   * Fires the event of the enum constant with a payload
+   */
+  public void fire(V stateEvent, S payload) {
+    fire(new EnumStateEvent<>(stateEvent, payload));
+  }
+
+  /**
+   * @return the enum constant of the current state or null if the {@link StateMachine} is not in a
+   * state that is backed by an enum constant, for example before it has been started or once it
+   * has ended.
+   */
+  @SuppressWarnings("unchecked")
+  public E getCurrentStateConstant() {
+    State<T, S> currentState = getCurrentState();
+    if (currentState instanceof EnumState) {
+      return ((EnumState<T, S, E>) currentState).getConstant();
+    }
+    return null;
+  }
+
+  public static class Builder<T, S, E extends Enum<E>, V extends Enum<V>> {
+
+    private final Class<E> stateType;
+    private final Class<V> eventType;
+    private T context;
+    private StateMachineListener<T, S> stateMachineListener;
+    private EventProcessingStrategy<T, S> eventProcessingStrategy;
+
+    public Builder(Class<E> stateType, Class<V> eventType) {
+      this.stateType = stateType;
+      this.eventType = eventType;
+    }
+
+    public Builder<T, S, E, V> setContext(T context) {
+      this.context = context;
+      return this;
+    }
+
+    public Builder<T, S, E, V> setStateMachineListener(
+        StateMachineListener<T, S> stateMachineListener) {
+      this.stateMachineListener = stateMachineListener;
+      return this;
+    }
+
+    public Builder<T, S, E, V> setEventProcessingStrategy(
+        EventProcessingStrategy<T, S> eventProcessingStrategy) {
+      this.eventProcessingStrategy = eventProcessingStrategy;
+      return this;
+    }
+
+    public EnumStateMachine<T, S, E, V> build() {
+      if (eventProcessingStrategy == null) {
+        eventProcessingStrategy = EventProcessingStrategyFactory.createDefaultStrategy();
+      }
+      return new EnumStateMachine<>(stateType, eventType, context, stateMachineListener,
+          eventProcessingStrategy);
+    }
+  }
+}
@@ -4,183 +4,193 @@
 
 package com.webotech.statemachine;
 
+import com.webotech.statemachine.api.ScheduledEvent;
 import com.webotech.statemachine.api.State;
 import com.webotech.statemachine.api.StateEvent;
 import com.webotech.statemachine.api.StateMachine;
 import com.webotech.statemachine.api.StateMachineListener;
 import com.webotech.statemachine.strategy.EventProcessingStrategy;
 import com.webotech.statemachine.strategy.EventProcessingStrategyFactory;
-import java.util.Collections;
-import java.util.HashMap;
+import com.webotech.statemachine.util.TimingWheel;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.StringJoiner;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
 
 public class GenericStateMachine<T, S> implements StateMachine<T, S> {
 
   public static final String RESERVED_STATE_NAME_END = "_END_";
-  private static final String RESERVED_STATE_NAME_UNINITIALISED = "_UNINITIALISED_";
+  static final String RESERVED_STATE_NAME_UNINITIALISED = "_UNINITIALISED_";
   public static final String RESERVED_STATE_NAME_NOOP = "_NOOP_";
   public static final String RESERVED_STATE_EVENT_NAME_IMMEDIATE = "_immediate_";
+  public static final String RESERVED_STATE_EVENT_NAME_TIMEOUT = "_timeout_";
+  public static final String RESERVED_STATE_EVENT_NAME_STOP = "_stop_";
   static final List<String> reservedStateNames = List.of(RESERVED_STATE_NAME_UNINITIALISED,
       RESERVED_STATE_NAME_END, RESERVED_STATE_NAME_NOOP);
-  private final AtomicBoolean isStarted;
-  private final AtomicBoolean isEnded;
-  private final Map<StateEvent<S>, State<T, S>> noTransitionMap;
+  private static final long STOP_RETRY_NANOS = 1_000_000;
+  private static final VarHandle STARTED;
+  private static final VarHandle ENDED;
+  private static final VarHandle STOPPING;
+  private static final VarHandle CURRENT_STATE;
+  private static final VarHandle TRANSITION_TIME_MILLIS;
+  private static final VarHandle SEQUENCE;
   private final StateEvent<S> immediateEvent;
+  private final StateEvent<S> stopEvent;
   private final State<T, S> noState;
   private final State<T, S> endState;
   private final State<T, S> noopState;
-  private final Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states;
   private final T context;
   private final EventProcessingStrategy<T, S> eventProcessingStrategy;
   private final UnexpectedFlowListener<T, S> unexpectedFlowListener;
+  private StateMachineDefinition.Builder<T, S> definitionBuilder;
+  private StateMachineDefinition<T, S> definition;
   private StateMachineListener<T, S> stateMachineListener;
-  private State<T, S> initState;
-  private State<T, S> markedState;
-  private StateEvent<S> markedEvent;
+  private TransitionTable<T, S> transitionTable;
+  // accessed with CURRENT_STATE, TRANSITION_TIME_MILLIS and SEQUENCE, see setCurrentState
+  @SuppressWarnings("unused")
   private State<T, S> currentState;
+  @SuppressWarnings("unused")
+  private long transitionTimeMillis;
+  @SuppressWarnings("unused")
+  private long sequence;
+  private int currentStateId;
+  private volatile ScheduledEvent stateTimeout;
+  private volatile CompletableFuture<Void> termination;
+  // accessed with STARTED and ENDED so that no Atomic* instances are allocated per StateMachine
+  @SuppressWarnings("unused")
+  private volatile boolean started;
+  @SuppressWarnings("unused")
+  private volatile boolean ended;
+  @SuppressWarnings("unused")
+  private volatile boolean stopping;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      STARTED = lookup.findVarHandle(GenericStateMachine.class, "started", boolean.class);
+      ENDED = lookup.findVarHandle(GenericStateMachine.class, "ended", boolean.class);
+      STOPPING = lookup.findVarHandle(GenericStateMachine.class, "stopping", boolean.class);
+      CURRENT_STATE = lookup.findVarHandle(GenericStateMachine.class, "currentState", State.class);
+      TRANSITION_TIME_MILLIS = lookup.findVarHandle(GenericStateMachine.class,
+          "transitionTimeMillis", long.class);
+      SEQUENCE = lookup.findVarHandle(GenericStateMachine.class, "sequence", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * Creates a {@link StateMachine} that is configured with its fluent API, the configuration is
+   * compiled into a {@link StateMachineDefinition} when it is started.
+   */
+  GenericStateMachine(T context, StateMachineDefinition.Builder<T, S> definitionBuilder,
+      StateMachineListener<T, S> stateMachineListener,
+      EventProcessingStrategy<T, S> eventProcessingStrategy) {
+    this(context, definitionBuilder.getImmediateEvent(), definitionBuilder.getStopEvent(),
+        definitionBuilder.getEndState(), definitionBuilder.getUninitialisedState(),
+        definitionBuilder.getNoopState(), stateMachineListener, eventProcessingStrategy);
+    this.definitionBuilder = definitionBuilder;
+  }
+
+  /**
+   * Creates a {@link StateMachine} from a shared {@link StateMachineDefinition}, it can not be
+   * configured further.
+   */
+  GenericStateMachine(T context, StateMachineDefinition<T, S> definition,
+      StateMachineListener<T, S> stateMachineListener,
+      EventProcessingStrategy<T, S> eventProcessingStrategy) {
+    this(context, definition.getImmediateEvent(), definition.getStopEvent(),
+        definition.getEndState(), definition.getUninitialisedState(), definition.getNoopState(),
+        stateMachineListener, eventProcessingStrategy);
+    this.definition = definition;
+  }
 
-  private GenericStateMachine(T context, Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states,
+  private GenericStateMachine(T context, StateEvent<S> immediateEvent, StateEvent<S> stopEvent,
+      State<T, S> endState, State<T, S> noState, State<T, S> noopState,
       StateMachineListener<T, S> stateMachineListener,
       EventProcessingStrategy<T, S> eventProcessingStrategy) {
-    this.states = states;
-    this.immediateEvent = new NamedStateEvent<>(RESERVED_STATE_EVENT_NAME_IMMEDIATE);
-    this.endState = new NamedState<>(RESERVED_STATE_NAME_END);
-    this.noState = new NamedState<>(RESERVED_STATE_NAME_UNINITIALISED);
-    this.noopState = new NamedState<>(RESERVED_STATE_NAME_NOOP);
-    this.noTransitionMap = Collections.emptyMap();
+    this.immediateEvent = immediateEvent;
+    this.stopEvent = stopEvent;
+    this.endState = endState;
+    this.noState = noState;
+    this.noopState = noopState;
     this.context = context;
     this.stateMachineListener = stateMachineListener;
     this.eventProcessingStrategy = eventProcessingStrategy;
     this.unexpectedFlowListener = eventProcessingStrategy.getUnexpectedFlowListener();
-    this.eventProcessingStrategy.setStates(this.states);
-    isStarted = new AtomicBoolean(false);
-    isEnded = new AtomicBoolean(false);
+    this.currentStateId = TransitionTable.NO_ID;
+    eventProcessingStrategy.retain();
   }
 
   @SuppressWarnings("hiding")
   @Override
   public StateMachine<T, S> initialSate(State<T, S> initState) {
-    assertNotReservedState(initState);
-    assertInitStateDefined(false);
-    this.initState = initState;
-    states.put(initState, new HashMap<>());
-    states.put(endState, noTransitionMap);
-    states.put(noState, noTransitionMap);
-    states.put(noopState, noTransitionMap);
-    when(initState);
+    assertNotStarted();
+    configuration().initialSate(initState);
     return this;
   }
 
   @Override
   public StateMachine<T, S> when(State<T, S> state) {
-    assertNotReservedState(state);
-    assertInitStateDefined(true);
-    assertMarkedStateDefined(false);
-    this.states.putIfAbsent(state, new HashMap<>());
-    this.markedState = state;
+    assertNotStarted();
+    configuration().when(state);
     return this;
   }
 
   @Override
   public StateMachine<T, S> receives(StateEvent<S> stateEvent) {
-    assertNotReservedStateEvent(stateEvent);
-    assertInitStateDefined(true);
-    assertMarkedStateDefined(true);
-    this.markedEvent = stateEvent;
-    this.states.get(this.markedState).put(this.markedEvent, null);
+    assertNotStarted();
+    configuration().receives(stateEvent);
     return this;
   }
 
   @Override
   public StateMachine<T, S> itEnds() {
-    assertInitStateDefined(true);
-    assertMarkedStateDefined(true);
-    if (this.markedEvent == null) {
-      assertNoMappingsExistAtEnd();
-      this.states.get(this.markedState).put(immediateEvent, this.endState);
-    } else {
-      assertEventNotMapped();
-      this.states.get(this.markedState).put(this.markedEvent, this.endState);
-    }
-    this.markedState = null;
-    this.markedEvent = null;
+    assertNotStarted();
+    configuration().itEnds();
     return this;
   }
 
   @Override
   public StateMachine<T, S> itTransitionsTo(State<T, S> state) {
-    assertNotReservedState(state);
-    assertInitStateDefined(true);
-    assertMarkedStateDefined(true);
-    assertEventNotMapped();
-    this.states.get(this.markedState).put(this.markedEvent, state);
-    this.markedState = null;
-    this.markedEvent = null;
+    assertNotStarted();
+    configuration().itTransitionsTo(state);
     return this;
   }
 
   @Override
-  public StateMachine<T, S> itDoesNotTransition() {
-    assertInitStateDefined(true);
-    assertMarkedStateDefined(true);
-    assertEventNotMapped();
-    this.states.get(this.markedState).put(this.markedEvent, this.noopState);
-    this.markedState = null;
-    this.markedEvent = null;
+  public StateMachine<T, S> timesOutAfter(Duration timeout) {
+    assertNotStarted();
+    configuration().timesOutAfter(timeout);
     return this;
   }
 
-  private void assertNotReservedState(State<T, S> state) {
-    if (reservedStateNames.stream().anyMatch(r -> r.equals(state.getName()))) {
-      throw new IllegalStateException(
-          "Invalid state [" + state.getName() + "] is using a reserved name.");
-    }
-  }
-
-  private void assertNotReservedStateEvent(StateEvent<S> stateEvent) {
-    if (immediateEvent.getName().equals(stateEvent.getName())) {
-      throw new IllegalStateException(
-          "Invalid StateEvent [" + stateEvent.getName() + "] is using a reserved name.");
-    }
-  }
-
-  private void assertEventNotMapped() {
-    State<T, S> toState = this.states.get(this.markedState).get(this.markedEvent);
-    if (toState != null) {
-      throw new IllegalStateException(
-          "State [" + this.markedState.getName() + "] already transitions to State [" + toState
-              + "] when StateEvent [" + this.markedEvent.getName() + "] is received.");
-    }
-  }
-
-  private void assertNoMappingsExistAtEnd() {
-    if (!this.states.get(this.markedState).isEmpty()) {
-      throw new IllegalStateException(
-          "It is not possible to immediately end in State [" + this.markedState.getName()
-              + "] since transitions for the State exist: " + this.states.get(this.markedState)
-              + ".");
-    }
+  @Override
+  public StateMachine<T, S> itDoesNotTransition() {
+    assertNotStarted();
+    configuration().itDoesNotTransition();
+    return this;
   }
 
-  private void assertMarkedStateDefined(boolean exists) {
-    if (exists && this.markedState == null) {
-      throw new IllegalStateException("A state has to be marked to be configured using when().");
-    } else if (!exists && this.markedState != null) {
+  private StateMachineDefinition.Builder<T, S> configuration() {
+    if (this.definitionBuilder == null) {
       throw new IllegalStateException(
-          "A StateEvent for State [" + this.markedState.getName() + "] has to be defined first.");
+          "The state machine was built from a StateMachineDefinition, it can not be configured.");
     }
+    return this.definitionBuilder;
   }
 
-  private void assertInitStateDefined(boolean exists) {
-    if (exists && this.initState == null) {
-      throw new IllegalStateException("An initial State has to be defined first.");
-    } else if (!exists && this.initState != null) {
+  private void assertNotStarted() {
+    if (isStarted()) {
       throw new IllegalStateException(
-          "An initial State [" + this.initState.getName() + "] already exists.");
+          "The state machine has already been started, it can no longer be configured.");
     }
   }
 
@@ -202,6 +212,17 @@ public class GenericStateMachine<T, S> implements StateMachine<T, S> {
         this.stateMachineListener.onStateChangeBegin(fromState, stateEvent, toState);
       }
     }
+    if (isComplete) {
+      completeTermination();
+    }
+  }
+
+  /**
+   * @return the {@link StateEvent} that ends this {@link StateMachine} when it is processed, see
+   * {@link #stopGracefully(Duration)}
+   */
+  public StateEvent<S> getStopEvent() {
+    return this.stopEvent;
   }
 
   public StateEvent<S> getImmediateEvent() {
@@ -212,32 +233,39 @@ public class GenericStateMachine<T, S> implements StateMachine<T, S> {
     return this.endState;
   }
 
+  /**
+   * @return the {@link TransitionTable} that was compiled when the {@link StateMachine} was
+   * started, or null if it has not been started.
+   */
+  public TransitionTable<T, S> getTransitionTable() {
+    return this.transitionTable;
+  }
+
+  /**
+   * @return the id in the {@link TransitionTable} of the current {@link State}
+   */
+  public int getCurrentStateId() {
+    return this.currentStateId;
+  }
+
+  /**
+   * @return the {@link StateMachineDefinition} of this {@link StateMachine}, or null if it was
+   * configured with its fluent API and it has not been started.
+   */
+  public StateMachineDefinition<T, S> getDefinition() {
+    return this.definition;
+  }
+
   @Override
   public void start() {
-    assertInitStateDefined(true);
-    if (this.states.isEmpty()) {
-      throw new IllegalStateException(
-          "State machine cannot be started with no defined transitions.");
-    }
-    for (Entry<State<T, S>, Map<StateEvent<S>, State<T, S>>> entry : this.states.entrySet()) {
-      State<T, S> key = entry.getKey();
-      for (Entry<StateEvent<S>, State<T, S>> entry1 : entry.getValue().entrySet()) {
-        if (entry1.getValue() == null) {
-          throw new IllegalStateException(
-              "State " + key.getName() + " dose not transition when a " + entry1.getKey().getName()
-                  + " event is received");
-        }
-      }
-    }
-    if (isStarted.compareAndSet(false, true)) {
-      currentState = initState;
-      notifyStateMachineListener(false, noState, immediateEvent, initState);
-      initState.onEntry(immediateEvent, this);
-      notifyStateMachineListener(true, noState, immediateEvent, initState);
-      isEnded.set(false);
-    } else {
-      throw new IllegalStateException("The state machine has already been started");
-    }
+    StateMachineDefinition<T, S> stateMachineDefinition = claimStart();
+    applyDefinition(stateMachineDefinition);
+    State<T, S> initState = stateMachineDefinition.getInitialState();
+    setCurrentState(initState, transitionTable.getStateId(initState), false);
+    ENDED.setVolatile(this, false);
+    notifyStateMachineListener(false, noState, immediateEvent, initState);
+    initState.onEntry(immediateEvent, this);
+    notifyStateMachineListener(true, noState, immediateEvent, initState);
   }
 
   /**
@@ -251,29 +279,131 @@ public class GenericStateMachine<T, S> implements StateMachine<T, S> {
   @Override
   public void stop() {
     updateCurrentState(this.endState);
+    completeTermination();
+  }
+
+  /**
+   * Admission is stopped straight away, so {@link StateEvent}s that are fired after this is called
+   * (including by a {@link com.webotech.statemachine.api.StateAction} while the queue drains) are
+   * treated as if the {@link StateMachine} has ended. The end transition is made by a reserved
+   * {@link StateEvent} that is queued behind the {@link StateEvent}s that are already queued, so it
+   * is processed like any other {@link StateEvent} and the {@link StateMachineListener} is
+   * notified.
+   * <p>
+   * The {@link EventProcessingStrategy} is released whether or not the queue drains in time, so
+   * an executor that it owns is shut down once no other {@link StateMachine} uses it.
+   */
+  @Override
+  public boolean stopGracefully(Duration timeout) {
+    if (!STOPPING.compareAndSet(this, false, true)) {
+      return isEnded();
+    }
+    long deadline = System.nanoTime() + timeout.toNanos();
+    try {
+      if (isStarted()) {
+        awaitEnd(deadline);
+      }
+      return !isStarted() || isEnded();
+    } finally {
+      if (isStarted() && !isEnded()) {
+        stop();
+      }
+      eventProcessingStrategy.release();
+    }
+  }
+
+  private void awaitEnd(long deadline) {
+    CompletableFuture<Void> ended = new CompletableFuture<>();
+    this.termination = ended;
+    if (isEnded()) {
+      return;
+    }
+    // the stop event is retried while a bound queue is full
+    while (!eventProcessingStrategy.tryProcessEvent(this.stopEvent, this)) {
+      if (isEnded() || System.nanoTime() - deadline >= 0) {
+        return;
+      }
+      LockSupport.parkNanos(STOP_RETRY_NANOS);
+    }
+    try {
+      ended.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      // it is stopped immediately
+    }
+  }
+
+  public boolean isStopping() {
+    return (boolean) STOPPING.getVolatile(this);
   }
 
   @Override
   public void startInState(State<T, S> state) {
-    if (!states.containsKey(state)) {
+    StateMachineDefinition<T, S> stateMachineDefinition = claimStart();
+    int stateId = stateMachineDefinition.getTransitionTable().getStateId(state);
+    if (stateId == TransitionTable.NO_ID) {
+      STARTED.setVolatile(this, false);
       throw new IllegalStateException("State [" + state + "] has not been configured");
     }
-    if (isStarted.compareAndSet(false, true)) {
-      this.currentState = state;
-      isEnded.set(false);
-    } else {
+    applyDefinition(stateMachineDefinition);
+    setCurrentState(transitionTable.getState(stateId), stateId, false);
+    ENDED.setVolatile(this, false);
+  }
+
+  /**
+   * Marks this {@link StateMachine} as started before its definition is built, so that a second
+   * start fails without building it again. The mark is undone if the definition can not be used.
+   */
+  private StateMachineDefinition<T, S> claimStart() {
+    if (!STARTED.compareAndSet(this, false, true)) {
       throw new IllegalStateException("The state machine has already been started");
     }
+    try {
+      StateMachineDefinition<T, S> stateMachineDefinition = resolveDefinition();
+      assertNotStopping();
+      assertScheduledEventsSupported(stateMachineDefinition);
+      return stateMachineDefinition;
+    } catch (RuntimeException e) {
+      STARTED.setVolatile(this, false);
+      throw e;
+    }
+  }
+
+  private void assertNotStopping() {
+    if (isStopping()) {
+      throw new IllegalStateException("The state machine has been stopped gracefully");
+    }
+  }
+
+  private void assertScheduledEventsSupported(StateMachineDefinition<T, S> stateMachineDefinition) {
+    if (stateMachineDefinition.hasTimeouts()
+        && !eventProcessingStrategy.supportsScheduledEvents()) {
+      throw new UnsupportedOperationException(
+          eventProcessingStrategy.getClass().getSimpleName() + " does not support state timeouts");
+    }
+  }
+
+  private StateMachineDefinition<T, S> resolveDefinition() {
+    if (this.definition != null) {
+      return this.definition;
+    }
+    return this.definitionBuilder.build();
+  }
+
+  private void applyDefinition(StateMachineDefinition<T, S> stateMachineDefinition) {
+    this.definition = stateMachineDefinition;
+    this.transitionTable = stateMachineDefinition.getTransitionTable();
   }
 
   @Override
   public boolean isStarted() {
-    return isStarted.get();
+    return (boolean) STARTED.getVolatile(this);
   }
 
   @Override
   public boolean isEnded() {
-    return isEnded.get();
+    return (boolean) ENDED.getVolatile(this);
   }
 
   @Override
@@ -281,20 +411,104 @@ public class GenericStateMachine<T, S> implements StateMachine<T, S> {
     return eventProcessingStrategy.getEventQueueSize();
   }
 
+  @Override
+  public int getRemainingCapacity() {
+    return eventProcessingStrategy.getRemainingCapacity(this);
+  }
+
   @Override
   public void fire(StateEvent<S> stateEvent) {
+    tryFire(stateEvent);
+  }
+
+  @Override
+  public boolean tryFire(StateEvent<S> stateEvent) {
     if (!isStarted()) {
       unexpectedFlowListener.onEventBeforeMachineStart(stateEvent, this);
-    } else if (isStarted() && isEnded()) {
+      return false;
+    } else if (isEnded() || isStopping()) {
       unexpectedFlowListener.onEventAfterMachineEnd(stateEvent, this);
-    } else {
-      eventProcessingStrategy.processEvent(stateEvent, this);
+      return false;
     }
+    return eventProcessingStrategy.tryProcessEvent(stateEvent, this);
   }
 
+  /**
+   * The {@link CompletableFuture} is carried through the {@link EventProcessingStrategy} with the
+   * event, so it is the only object that is allocated in addition to a plain
+   * {@link #fire(StateEvent)}. It is completed on the thread that processes the event.
+   */
+  @Override
+  public CompletableFuture<State<T, S>> fireAsync(StateEvent<S> stateEvent) {
+    CompletableFuture<State<T, S>> completion = new CompletableFuture<>();
+    if (!isStarted()) {
+      unexpectedFlowListener.onEventBeforeMachineStart(stateEvent, this);
+      completion.completeExceptionally(
+          new IllegalStateException("The state machine has not been started"));
+    } else if (isEnded() || isStopping()) {
+      unexpectedFlowListener.onEventAfterMachineEnd(stateEvent, this);
+      completion.completeExceptionally(new IllegalStateException("The state machine has ended"));
+    } else if (!eventProcessingStrategy.processEvent(stateEvent, this, completion)) {
+      completion.completeExceptionally(new IllegalStateException(
+          "StateEvent [" + stateEvent.getName() + "] was not accepted"));
+    }
+    return completion;
+  }
+
+  /**
+   * The event is scheduled on the {@link TimingWheel#getShared()} so that scheduling and cancelling
+   * it takes constant time however many events are scheduled. It is fired with
+   * {@link #fire(StateEvent)} up to 10 millis after the delay, on the thread of the
+   * {@link TimingWheel}, where the {@link EventProcessingStrategy} neither blocks nor processes it.
+   */
+  @Override
+  public ScheduledEvent fireAfter(Duration delay, StateEvent<S> stateEvent) {
+    if (!eventProcessingStrategy.supportsScheduledEvents()) {
+      throw new UnsupportedOperationException(
+          eventProcessingStrategy.getClass().getSimpleName() + " does not support fireAfter");
+    }
+    // the StateEvent is held until it fires, after an action that it was delivered to returns
+    StateEvent<S> scheduledEvent = EventProcessingStrategy.detach(stateEvent);
+    return TimingWheel.getShared().schedule(delay, () -> fire(scheduledEvent));
+  }
+
+  @Override
+  public int fireAll(Collection<? extends StateEvent<S>> stateEvents) {
+    if (!isStarted()) {
+      stateEvents.forEach(e -> unexpectedFlowListener.onEventBeforeMachineStart(e, this));
+      return 0;
+    } else if (isEnded() || isStopping()) {
+      stateEvents.forEach(e -> unexpectedFlowListener.onEventAfterMachineEnd(e, this));
+      return 0;
+    }
+    return eventProcessingStrategy.processEvents(stateEvents, this);
+  }
+
+  @SuppressWarnings("unchecked")
   @Override
   public State<T, S> getCurrentState() {
-    return this.currentState;
+    return (State<T, S>) CURRENT_STATE.getAcquire(this);
+  }
+
+  /**
+   * The snapshot is read without locking, if a transition is updating the current state the read
+   * is retried.
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public Snapshot<T, S> getSnapshot() {
+    while (true) {
+      long seq = (long) SEQUENCE.getAcquire(this);
+      if ((seq & 1) == 0) {
+        State<T, S> state = (State<T, S>) CURRENT_STATE.getOpaque(this);
+        long timeMillis = (long) TRANSITION_TIME_MILLIS.getOpaque(this);
+        VarHandle.loadLoadFence();
+        if ((long) SEQUENCE.getOpaque(this) == seq) {
+          return new Snapshot<>(state, seq >>> 1, timeMillis);
+        }
+      }
+      Thread.onSpinWait();
+    }
   }
 
   @Override
@@ -316,9 +530,96 @@ public class GenericStateMachine<T, S> implements StateMachine<T, S> {
   }
 
   public void updateCurrentState(State<T, S> state) {
-    if (isEnded.compareAndSet(false, state.equals(endState))) {
-      currentState = state;
+    setCurrentState(state,
+        transitionTable == null ? TransitionTable.NO_ID : transitionTable.getStateId(state), true);
+  }
+
+  /**
+   * Updates the current state to the {@link State} with stateId in the {@link TransitionTable}.
+   */
+  public void updateCurrentState(int stateId) {
+    setCurrentState(transitionTable.getState(stateId), stateId, true);
+  }
+
+  /**
+   * Completes the termination that {@link #stopGracefully(Duration)} waits for once the end
+   * transition has completed.
+   */
+  private void completeTermination() {
+    CompletableFuture<Void> ended = this.termination;
+    if (ended != null && isEnded()) {
+      ended.complete(null);
+    }
+  }
+
+  /**
+   * The current state is published with a seqlock: the sequence is odd while it is being updated
+   * and the update is released by making it even again, so {@link #getSnapshot()} can read a
+   * consistent snapshot from any thread. The sequence is also a spin lock for concurrent updates.
+   * Transitions are made by the one thread that processes the {@link StateEvent}s, so it is only
+   * contended when {@link #stop()} is called from another thread while a {@link StateEvent} is
+   * processing. When unlessEnded is true the ended flag is checked and set in the same write
+   * section as the state, so an update can not overwrite the end state. The timeout of the
+   * {@link State} is armed in the write section too, so a timeout can not be armed once the end
+   * state has been published.
+   */
+  private void setCurrentState(State<T, S> state, int stateId, boolean unlessEnded) {
+    long seq;
+    while (((seq = (long) SEQUENCE.getVolatile(this)) & 1) != 0
+        || !SEQUENCE.compareAndSet(this, seq, seq + 1)) {
+      Thread.onSpinWait();
+    }
+    if (unlessEnded && isEnded()) {
+      // nothing was written, so the sequence is released unchanged
+      SEQUENCE.setRelease(this, seq);
+      return;
+    }
+    this.currentStateId = stateId;
+    TRANSITION_TIME_MILLIS.setOpaque(this, System.currentTimeMillis());
+    CURRENT_STATE.setRelease(this, state);
+    if (unlessEnded) {
+      ENDED.setVolatile(this, state.equals(endState));
+    }
+    if (this.definition != null && this.definition.hasTimeouts()) {
+      armStateTimeout(stateId);
+    }
+    SEQUENCE.setRelease(this, seq + 2);
+    if (unlessEnded && state.equals(endState)) {
+      eventProcessingStrategy.onEnded(this);
+    }
+  }
+
+  /**
+   * Cancels the timeout of the {@link State} that has been exited and arms the timeout of the
+   * {@link State} with stateId, on the {@link TimingWheel#getShared()}. It is called while the
+   * current state is written, see {@link #setCurrentState(State, int, boolean)}. The task that fires the
+   * timeout is shared by the {@link StateMachineDefinition}, so only the
+   * {@link TimingWheel.Timeout} is allocated.
+   */
+  private void armStateTimeout(int stateId) {
+    ScheduledEvent armedTimeout = this.stateTimeout;
+    if (armedTimeout != null) {
+      armedTimeout.cancel();
     }
+    Duration timeout = this.definition.getTimeout(stateId);
+    this.stateTimeout =
+        timeout == null ? null
+            : TimingWheel.getShared().schedule(timeout, this.definition.getTimeoutTask(), this);
+  }
+
+  /**
+   * A timeout {@link StateEvent} is stale when the timer of the current {@link State} has not
+   * expired, that is it was fired for a {@link State} that has since been exited.
+   *
+   * @return true if the stateEvent is a timeout that should be ignored
+   */
+  public boolean isStaleTimeout(StateEvent<S> stateEvent) {
+    if (this.definition == null || !this.definition.hasTimeouts()
+        || !this.definition.getTimeoutEvent().equals(stateEvent)) {
+      return false;
+    }
+    ScheduledEvent armedTimeout = this.stateTimeout;
+    return armedTimeout == null || !armedTimeout.isExpired();
   }
 
   public State<T, S> getNoopState() {
@@ -328,7 +629,7 @@ public class GenericStateMachine<T, S> implements StateMachine<T, S> {
   @Override
   public String toString() {
     return new StringJoiner(", ", GenericStateMachine.class.getSimpleName() + "[", "]")
-        .add("currentState=" + currentState)
+        .add("currentState=" + getCurrentState())
         .add("context=" + context)
         .toString();
   }
@@ -338,6 +639,7 @@ public class GenericStateMachine<T, S> implements StateMachine<T, S> {
     private T context;
     private StateMachineListener<T, S> stateMachineListener;
     private EventProcessingStrategy<T, S> eventProcessingStrategy;
+    private StateMachineDefinition<T, S> definition;
 
     public Builder<T, S> setContext(T context) {
       this.context = context;
@@ -355,6 +657,15 @@ public class GenericStateMachine<T, S> implements StateMachine<T, S> {
       return this;
     }
 
+    /**
+     * The {@link StateMachine} will use the shared {@link StateMachineDefinition} rather than being
+     * configured with its fluent API.
+     */
+    public Builder<T, S> setDefinition(StateMachineDefinition<T, S> definition) {
+      this.definition = definition;
+      return this;
+    }
+
     StateMachineListener<T, S> getStateMachineListener() {
       return stateMachineListener;
     }
@@ -367,8 +678,12 @@ public class GenericStateMachine<T, S> implements StateMachine<T, S> {
       if (eventProcessingStrategy == null) {
         eventProcessingStrategy = EventProcessingStrategyFactory.createDefaultStrategy();
       }
-      return new GenericStateMachine<>(context, new HashMap<>(), stateMachineListener,
-          eventProcessingStrategy);
+      if (definition != null) {
+        return new GenericStateMachine<>(context, definition, stateMachineListener,
+            eventProcessingStrategy);
+      }
+      return new GenericStateMachine<>(context, new StateMachineDefinition.Builder<>(),
+          stateMachineListener, eventProcessingStrategy);
     }
   }
 }
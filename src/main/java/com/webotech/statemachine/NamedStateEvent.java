@@ -15,6 +15,7 @@ public final class NamedStateEvent<S> implements StateEvent<S> {
 
   private final String name;
   private S payload;
+  private volatile EventId eventId;
 
   public NamedStateEvent(String name) {
     this(name, null);
@@ -44,6 +45,24 @@ public final class NamedStateEvent<S> implements StateEvent<S> {
     this.payload = payload;
   }
 
+  /**
+   * @return the id cached by {@link #cacheEventId(TransitionTable, int)} for the
+   * {@link TransitionTable} or {@link EventId#UNCACHED} if none is cached for it
+   */
+  int getCachedEventId(TransitionTable<?, ?> transitionTable) {
+    EventId cached = this.eventId;
+    return cached != null && cached.transitionTable() == transitionTable ? cached.id()
+        : EventId.UNCACHED;
+  }
+
+  /**
+   * Caches the id this {@link NamedStateEvent} has in the {@link TransitionTable}, the last
+   * {@link TransitionTable} it is cached for wins.
+   */
+  void cacheEventId(TransitionTable<?, ?> transitionTable, int id) {
+    this.eventId = new EventId(transitionTable, id);
+  }
+
   @SuppressWarnings({"unchecked", "rawtypes"})
   @Override
   public boolean equals(Object o) {
@@ -67,4 +86,9 @@ public final class NamedStateEvent<S> implements StateEvent<S> {
     return new StringJoiner(", ", NamedStateEvent.class.getSimpleName() + "[", "]")
         .add(name).toString();
   }
+
+  record EventId(TransitionTable<?, ?> transitionTable, int id) {
+
+    static final int UNCACHED = Integer.MIN_VALUE;
+  }
 }
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+
+/**
+ * <p>The validated and compiled configuration of a {@link StateMachine}: its initial {@link State},
+ * its transitions and the reserved {@link State}s and {@link StateEvent} that it uses.</p>
+ * <p>It is immutable and thread safe so a single instance can be built once and shared by
+ * reference between many {@link GenericStateMachine}s, each of them then only holds its context
+ * and current state. It is built with the same fluent API that is used to configure a
+ * {@link StateMachine}:</p>
+ * <pre>
+ * StateMachineDefinition definition = new StateMachineDefinition.Builder()
+ *     .initialSate(STARTING).receives(DONE).itTransitionsTo(STARTED)
+ *     .when(STARTED).receives(STOP).itEnds().build();
+ * StateMachine sm = new GenericStateMachine.Builder().setDefinition(definition).build();
+ * </pre>
+ * <p>Note that the {@link State}s in a shared definition are shared too, so their
+ * {@link com.webotech.statemachine.api.StateAction}s should not hold state of an individual
+ * {@link StateMachine}, the {@link StateMachine}'s context is the place for that.</p>
+ */
+public final class StateMachineDefinition<T, S> {
+
+  private final State<T, S> initState;
+  private final TransitionTable<T, S> transitionTable;
+  private final State<T, S> endState;
+  private final State<T, S> noState;
+  private final State<T, S> noopState;
+  private final StateEvent<S> immediateEvent;
+  private final StateEvent<S> timeoutEvent;
+  private final StateEvent<S> stopEvent;
+  private final Duration[] timeouts;
+  private final Consumer<GenericStateMachine<T, S>> timeoutTask;
+
+  private StateMachineDefinition(Builder<T, S> builder, TransitionTable<T, S> transitionTable) {
+    this.initState = builder.initState;
+    this.transitionTable = transitionTable;
+    this.endState = builder.endState;
+    this.noState = builder.noState;
+    this.noopState = builder.noopState;
+    this.immediateEvent = builder.immediateEvent;
+    this.timeoutEvent = builder.timeoutEvent;
+    this.stopEvent = builder.stopEvent;
+    StateEvent<S> stateTimeoutEvent = builder.timeoutEvent;
+    this.timeoutTask = stateMachine -> stateMachine.fire(stateTimeoutEvent);
+    if (builder.timeouts.isEmpty()) {
+      this.timeouts = null;
+    } else {
+      this.timeouts = new Duration[transitionTable.getStateCount()];
+      builder.timeouts.forEach(
+          (state, timeout) -> this.timeouts[transitionTable.getStateId(state)] = timeout);
+    }
+  }
+
+  /**
+   * @return the {@link State} that a {@link StateMachine} transitions to when it is started
+   */
+  public State<T, S> getInitialState() {
+    return initState;
+  }
+
+  /**
+   * @return the compiled transitions
+   */
+  public TransitionTable<T, S> getTransitionTable() {
+    return transitionTable;
+  }
+
+  /**
+   * @return the reserved {@link State} a {@link StateMachine} is in once it has ended
+   */
+  public State<T, S> getEndState() {
+    return endState;
+  }
+
+  /**
+   * @return the reserved {@link State} used to notify that a {@link StateEvent} did not cause a
+   * transition
+   */
+  public State<T, S> getNoopState() {
+    return noopState;
+  }
+
+  /**
+   * @return the reserved {@link State} a {@link StateMachine} is in before it has been started
+   */
+  public State<T, S> getUninitialisedState() {
+    return noState;
+  }
+
+  /**
+   * @return the reserved {@link StateEvent} used for transitions that happen without a
+   * {@link StateEvent} being received
+   */
+  public StateEvent<S> getImmediateEvent() {
+    return immediateEvent;
+  }
+
+  /**
+   * @return the reserved {@link StateEvent} that is fired when a {@link State} times out, see
+   * {@link StateMachine#timesOutAfter(Duration)}
+   */
+  public StateEvent<S> getTimeoutEvent() {
+    return timeoutEvent;
+  }
+
+  /**
+   * @return the reserved {@link StateEvent} that ends a {@link StateMachine} when it is processed,
+   * see {@link StateMachine#stopGracefully(Duration)}
+   */
+  public StateEvent<S> getStopEvent() {
+    return stopEvent;
+  }
+
+  /**
+   * @return the task that fires the timeout {@link StateEvent} at the {@link GenericStateMachine}
+   * that it is scheduled with, it is shared by every {@link GenericStateMachine} of this
+   * definition
+   */
+  Consumer<GenericStateMachine<T, S>> getTimeoutTask() {
+    return timeoutTask;
+  }
+
+  /**
+   * @return true if any {@link State} times out
+   */
+  public boolean hasTimeouts() {
+    return timeouts != null;
+  }
+
+  /**
+   * @return how long until the {@link State} with stateId in the {@link TransitionTable} times out,
+   * or null if it does not time out
+   */
+  public Duration getTimeout(int stateId) {
+    return timeouts == null || stateId == TransitionTable.NO_ID ? null : timeouts[stateId];
+  }
+
+  /**
+   * Builds a {@link StateMachineDefinition}, the configuration methods follow the same rules as
+   * the ones in {@link StateMachine}. Each call to {@link #build()} validates the configuration and
+   * compiles it into a new {@link StateMachineDefinition}.
+   */
+  public static class Builder<T, S> {
+
+    private final Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states;
+    private final Map<StateEvent<S>, State<T, S>> noTransitionMap;
+    private final StateEvent<S> immediateEvent;
+    private final StateEvent<S> timeoutEvent;
+    private final StateEvent<S> stopEvent;
+    private final Map<State<T, S>, Duration> timeouts;
+    private final State<T, S> noState;
+    private final State<T, S> endState;
+    private final State<T, S> noopState;
+    private final List<State<T, S>> stateOrder;
+    private final List<StateEvent<S>> eventOrder;
+    private final Class<? extends Enum<?>> ordinalEventType;
+    private State<T, S> initState;
+    private State<T, S> markedState;
+    private StateEvent<S> markedEvent;
+
+    public Builder() {
+      this(List.of(), List.of(), null);
+    }
+
+    /**
+     * Used when ids in the {@link TransitionTable} have to be assigned in a specific order, see
+     * {@link TransitionTable#compile(Map, List, List, State, StateEvent)}
+     */
+    Builder(List<State<T, S>> stateOrder, List<StateEvent<S>> eventOrder,
+        Class<? extends Enum<?>> ordinalEventType) {
+      this.states = new HashMap<>();
+      this.noTransitionMap = Collections.emptyMap();
+      this.immediateEvent = new NamedStateEvent<>(
+          GenericStateMachine.RESERVED_STATE_EVENT_NAME_IMMEDIATE);
+      this.timeoutEvent = new NamedStateEvent<>(
+          GenericStateMachine.RESERVED_STATE_EVENT_NAME_TIMEOUT);
+      this.stopEvent = new NamedStateEvent<>(GenericStateMachine.RESERVED_STATE_EVENT_NAME_STOP);
+      this.timeouts = new HashMap<>();
+      this.endState = new NamedState<>(GenericStateMachine.RESERVED_STATE_NAME_END);
+      this.noState = new NamedState<>(GenericStateMachine.RESERVED_STATE_NAME_UNINITIALISED);
+      this.noopState = new NamedState<>(GenericStateMachine.RESERVED_STATE_NAME_NOOP);
+      this.stateOrder = stateOrder;
+      this.eventOrder = eventOrder;
+      this.ordinalEventType = ordinalEventType;
+    }
+
+    /**
+     * A configuration method: see {@link StateMachine#initialSate(State)}
+     */
+    @SuppressWarnings("hiding")
+    public Builder<T, S> initialSate(State<T, S> initState) {
+      assertNotReservedState(initState);
+      assertInitStateDefined(false);
+      this.initState = initState;
+      states.put(initState, new HashMap<>());
+      states.put(endState, noTransitionMap);
+      states.put(noState, noTransitionMap);
+      states.put(noopState, noTransitionMap);
+      when(initState);
+      return this;
+    }
+
+    /**
+     * A configuration method: see {@link StateMachine#when(State)}
+     */
+    public Builder<T, S> when(State<T, S> state) {
+      assertNotReservedState(state);
+      assertInitStateDefined(true);
+      assertMarkedStateDefined(false);
+      this.states.putIfAbsent(state, new HashMap<>());
+      this.markedState = state;
+      return this;
+    }
+
+    /**
+     * A configuration method: see {@link StateMachine#receives(StateEvent)}
+     */
+    public Builder<T, S> receives(StateEvent<S> stateEvent) {
+      assertNotReservedStateEvent(stateEvent);
+      assertInitStateDefined(true);
+      assertMarkedStateDefined(true);
+      this.markedEvent = stateEvent;
+      this.states.get(this.markedState).put(this.markedEvent, null);
+      return this;
+    }
+
+    /**
+     * A configuration method: see {@link StateMachine#timesOutAfter(Duration)}
+     */
+    public Builder<T, S> timesOutAfter(Duration timeout) {
+      assertInitStateDefined(true);
+      assertMarkedStateDefined(true);
+      if (timeout.isNegative() || timeout.isZero()) {
+        throw new IllegalStateException("Timeout [" + timeout + "] has to be positive.");
+      }
+      if (this.timeouts.putIfAbsent(this.markedState, timeout) != null) {
+        throw new IllegalStateException(
+            "State [" + this.markedState.getName() + "] already times out after "
+                + this.timeouts.get(this.markedState) + ".");
+      }
+      this.markedEvent = timeoutEvent;
+      this.states.get(this.markedState).put(this.markedEvent, null);
+      return this;
+    }
+
+    /**
+     * A configuration method: see {@link StateMachine#itEnds()}
+     */
+    public Builder<T, S> itEnds() {
+      assertInitStateDefined(true);
+      assertMarkedStateDefined(true);
+      if (this.markedEvent == null) {
+        assertNoMappingsExistAtEnd();
+        this.states.get(this.markedState).put(immediateEvent, this.endState);
+      } else {
+        assertEventNotMapped();
+        this.states.get(this.markedState).put(this.markedEvent, this.endState);
+      }
+      this.markedState = null;
+      this.markedEvent = null;
+      return this;
+    }
+
+    /**
+     * A configuration method: see {@link StateMachine#itTransitionsTo(State)}
+     */
+    public Builder<T, S> itTransitionsTo(State<T, S> state) {
+      assertNotReservedState(state);
+      assertInitStateDefined(true);
+      assertMarkedStateDefined(true);
+      assertEventNotMapped();
+      this.states.get(this.markedState).put(this.markedEvent, state);
+      this.markedState = null;
+      this.markedEvent = null;
+      return this;
+    }
+
+    /**
+     * A configuration method: see {@link StateMachine#itDoesNotTransition()}
+     */
+    public Builder<T, S> itDoesNotTransition() {
+      assertInitStateDefined(true);
+      assertMarkedStateDefined(true);
+      assertEventNotMapped();
+      this.states.get(this.markedState).put(this.markedEvent, this.noopState);
+      this.markedState = null;
+      this.markedEvent = null;
+      return this;
+    }
+
+    /**
+     * Validates the configuration and compiles it into a {@link StateMachineDefinition}
+     *
+     * @throws IllegalStateException if the configuration is not complete
+     */
+    public StateMachineDefinition<T, S> build() {
+      assertInitStateDefined(true);
+      if (this.states.isEmpty()) {
+        throw new IllegalStateException(
+            "State machine cannot be started with no defined transitions.");
+      }
+      for (Entry<State<T, S>, Map<StateEvent<S>, State<T, S>>> entry : this.states.entrySet()) {
+        State<T, S> key = entry.getKey();
+        for (Entry<StateEvent<S>, State<T, S>> entry1 : entry.getValue().entrySet()) {
+          if (entry1.getValue() == null) {
+            throw new IllegalStateException(
+                "State " + key.getName() + " dose not transition when a " + entry1.getKey()
+                    .getName() + " event is received");
+          }
+        }
+      }
+      return new StateMachineDefinition<>(this,
+          TransitionTable.compile(this.states, this.stateOrder, this.eventOrder, this.endState,
+              this.immediateEvent, this.ordinalEventType));
+    }
+
+    State<T, S> getEndState() {
+      return endState;
+    }
+
+    State<T, S> getNoopState() {
+      return noopState;
+    }
+
+    State<T, S> getUninitialisedState() {
+      return noState;
+    }
+
+    StateEvent<S> getImmediateEvent() {
+      return immediateEvent;
+    }
+
+    StateEvent<S> getStopEvent() {
+      return stopEvent;
+    }
+
+    private void assertNotReservedState(State<T, S> state) {
+      if (GenericStateMachine.reservedStateNames.stream().anyMatch(r -> r.equals(state.getName()))) {
+        throw new IllegalStateException(
+            "Invalid state [" + state.getName() + "] is using a reserved name.");
+      }
+    }
+
+    private void assertNotReservedStateEvent(StateEvent<S> stateEvent) {
+      if (immediateEvent.getName().equals(stateEvent.getName()) || timeoutEvent.getName()
+          .equals(stateEvent.getName()) || stopEvent.getName().equals(stateEvent.getName())) {
+        throw new IllegalStateException(
+            "Invalid StateEvent [" + stateEvent.getName() + "] is using a reserved name.");
+      }
+    }
+
+    private void assertEventNotMapped() {
+      State<T, S> toState = this.states.get(this.markedState).get(this.markedEvent);
+      if (toState != null) {
+        throw new IllegalStateException(
+            "State [" + this.markedState.getName() + "] already transitions to State [" + toState
+                + "] when StateEvent [" + this.markedEvent.getName() + "] is received.");
+      }
+    }
+
+    private void assertNoMappingsExistAtEnd() {
+      if (!this.states.get(this.markedState).isEmpty()) {
+        throw new IllegalStateException(
+            "It is not possible to immediately end in State [" + this.markedState.getName()
+                + "] since transitions for the State exist: " + this.states.get(this.markedState)
+                + ".");
+      }
+    }
+
+    private void assertMarkedStateDefined(boolean exists) {
+      if (exists && this.markedState == null) {
+        throw new IllegalStateException("A state has to be marked to be configured using when().");
+      } else if (!exists && this.markedState != null) {
+        throw new IllegalStateException(
+            "A StateEvent for State [" + this.markedState.getName()
+                + "] has to be defined first.");
+      }
+    }
+
+    private void assertInitStateDefined(boolean exists) {
+      if (exists && this.initState == null) {
+        throw new IllegalStateException("An initial State has to be defined first.");
+      } else if (!exists && this.initState != null) {
+        throw new IllegalStateException(
+            "An initial State [" + this.initState.getName() + "] already exists.");
+      }
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import com.webotech.statemachine.util.TimingWheel;
+import java.time.Duration;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A {@link Flow.Subscriber} that fires the {@link StateEvent}s it receives on a
+ * {@link StateMachine}. It only requests as many {@link StateEvent}s as fit in the queue of the
+ * {@link StateMachine} (see {@link StateMachine#getRemainingCapacity()}), up to maxRequest at a
+ * time, and requests more once they have all been received. When the queue is full it checks
+ * again on each tick of the shared {@link TimingWheel}, so the publisher is slowed down rather than
+ * {@link StateEvent}s being dropped.
+ * <p>
+ * The {@link StateMachine} should not receive {@link StateEvent}s from other sources while it is
+ * subscribed, otherwise they can take the room that was requested for. The subscription is
+ * cancelled once the {@link StateMachine} has ended.
+ */
+public class StateMachineSubscriber<T, S> implements Flow.Subscriber<StateEvent<S>> {
+
+  private static final Logger logger = LogManager.getLogger(StateMachineSubscriber.class);
+  static final int DEFAULT_MAX_REQUEST = 64;
+  private static final Duration RETRY_DELAY = Duration.ofMillis(1);
+  private final StateMachine<T, S> stateMachine;
+  private final int maxRequest;
+  private final AtomicLong outstanding;
+  private final AtomicLong rejectedEventCount;
+  private final Runnable requestTask;
+  private volatile Flow.Subscription subscription;
+  private volatile boolean done;
+
+  public StateMachineSubscriber(StateMachine<T, S> stateMachine) {
+    this(stateMachine, DEFAULT_MAX_REQUEST);
+  }
+
+  public StateMachineSubscriber(StateMachine<T, S> stateMachine, int maxRequest) {
+    if (maxRequest < 1) {
+      throw new IllegalArgumentException("Max request must be positive: " + maxRequest);
+    }
+    this.stateMachine = stateMachine;
+    this.maxRequest = maxRequest;
+    this.outstanding = new AtomicLong();
+    this.rejectedEventCount = new AtomicLong();
+    this.requestTask = this::request;
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (this.subscription != null) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    request();
+  }
+
+  @Override
+  public void onNext(StateEvent<S> stateEvent) {
+    if (!stateMachine.tryFire(stateEvent)) {
+      rejectedEventCount.incrementAndGet();
+    }
+    if (stateMachine.isEnded()) {
+      if (!done) {
+        cancel();
+      }
+    } else if (outstanding.decrementAndGet() == 0) {
+      request();
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    done = true;
+    logger.error("Publisher failed, no more events will be fired", throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    done = true;
+  }
+
+  /**
+   * Cancels the subscription, no more {@link StateEvent}s are requested.
+   */
+  public void cancel() {
+    done = true;
+    Flow.Subscription currentSubscription = this.subscription;
+    if (currentSubscription != null) {
+      currentSubscription.cancel();
+    }
+  }
+
+  /**
+   * @return the number of {@link StateEvent}s that were received but not accepted by the
+   * {@link StateMachine}
+   */
+  public long getRejectedEventCount() {
+    return rejectedEventCount.get();
+  }
+
+  /**
+   * Requests as many {@link StateEvent}s as fit in the queue once all the ones that were requested
+   * have been received, so at most one request (or retry) is outstanding.
+   */
+  private void request() {
+    if (done) {
+      return;
+    }
+    int room = Math.min(stateMachine.getRemainingCapacity(), maxRequest);
+    if (room <= 0) {
+      TimingWheel.getShared().schedule(RETRY_DELAY, requestTask);
+    } else if (outstanding.compareAndSet(0, room)) {
+      subscription.request(room);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachineListener;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * A {@link StateMachineListener} that publishes a {@link Transition} each time a transition ends,
+ * to any number of {@link Flow.Subscriber}s. Each {@link Flow.Subscriber} has a buffer of
+ * maxBufferCapacity {@link Transition}s that are delivered with the executor as they are
+ * requested. When the buffer of a {@link Flow.Subscriber} is full the thread that is processing
+ * the transition waits for room, so a slow {@link Flow.Subscriber} slows down the
+ * {@link com.webotech.statemachine.api.StateMachine} rather than {@link Transition}s being
+ * dropped.
+ * <p>
+ * Nothing is published while there are no {@link Flow.Subscriber}s. It can be combined with other
+ * {@link StateMachineListener}s with a {@link MultiConsumerStateMachineListener}.
+ */
+public class TransitionPublisher<T, S> implements StateMachineListener<T, S>,
+    Flow.Publisher<TransitionPublisher.Transition<T, S>>, AutoCloseable {
+
+  private final SubmissionPublisher<Transition<T, S>> publisher;
+
+  public TransitionPublisher() {
+    this(ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+  }
+
+  public TransitionPublisher(Executor executor, int maxBufferCapacity) {
+    this.publisher = new SubmissionPublisher<>(executor, maxBufferCapacity);
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super Transition<T, S>> subscriber) {
+    publisher.subscribe(subscriber);
+  }
+
+  @Override
+  public void onStateChangeBegin(State<T, S> fromState, StateEvent<S> event, State<T, S> toState) {
+    // Only the end of a transition is published
+  }
+
+  @Override
+  public void onStateChangeEnd(State<T, S> fromState, StateEvent<S> event, State<T, S> toState) {
+    if (publisher.hasSubscribers() && !publisher.isClosed()) {
+      publisher.submit(new Transition<>(fromState, event.getName(), event.getPayload(), toState));
+    }
+  }
+
+  /**
+   * @return the number of {@link Flow.Subscriber}s
+   */
+  public int getSubscriberCount() {
+    return publisher.getNumberOfSubscribers();
+  }
+
+  /**
+   * Completes all the {@link Flow.Subscriber}s once they have received the {@link Transition}s that
+   * have been published.
+   */
+  @Override
+  public void close() {
+    publisher.close();
+  }
+
+  /**
+   * A transition of a {@link com.webotech.statemachine.api.StateMachine}, the name and payload of
+   * the {@link StateEvent} are taken when it ends since the {@link StateEvent} may be reused.
+   */
+  public record Transition<T, S>(State<T, S> fromState, String eventName, S payload,
+                                 State<T, S> toState) {
+
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An immutable, array indexed representation of the transitions configured in a
+ * {@link com.webotech.statemachine.api.StateMachine}. Each {@link State} and {@link StateEvent} is
+ * assigned an integer id when the table is compiled so that resolving a transition is a lookup in
+ * a dense <code>[stateId][eventId]</code> table rather than in nested {@link Map}s.
+ * <p>
+ * It is thread safe since it is never modified once it has been compiled.
+ */
+public final class TransitionTable<T, S> {
+
+  /**
+   * Returned when a {@link State} or {@link StateEvent} is unknown or when no transition exists.
+   */
+  public static final int NO_ID = -1;
+  private final Map<State<T, S>, Integer> stateIds;
+  private final Map<StateEvent<S>, Integer> eventIds;
+  private final State<T, S>[] states;
+  private final int[][] transitions;
+  private final boolean[] endsOnEntry;
+  private final Class<?> ordinalEventType;
+
+  private TransitionTable(Map<State<T, S>, Integer> stateIds,
+      Map<StateEvent<S>, Integer> eventIds, State<T, S>[] states, int[][] transitions,
+      boolean[] endsOnEntry, Class<?> ordinalEventType) {
+    this.stateIds = stateIds;
+    this.eventIds = eventIds;
+    this.states = states;
+    this.transitions = transitions;
+    this.endsOnEntry = endsOnEntry;
+    this.ordinalEventType = ordinalEventType;
+  }
+
+  /**
+   * Compiles the configured states/events into a {@link TransitionTable}. Ids are assigned in the
+   * iteration order of the {@link List}s first, any other {@link State} or {@link StateEvent} found
+   * in the transitions is assigned the next available id.
+   */
+  public static <T, S> TransitionTable<T, S> compile(
+      Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> transitionMap, List<State<T, S>> stateOrder,
+      List<StateEvent<S>> eventOrder, State<T, S> endState, StateEvent<S> immediateEvent) {
+    return compile(transitionMap, stateOrder, eventOrder, endState, immediateEvent, null);
+  }
+
+  /**
+   * Compiles a {@link TransitionTable} where the ids of {@link EnumStateEvent}s with constants of
+   * ordinalEventType are their ordinals, so the id of such a {@link StateEvent} is resolved without
+   * a {@link Map} lookup. The eventOrder has to contain an {@link EnumStateEvent} for every
+   * constant of ordinalEventType, in ordinal order.
+   */
+  @SuppressWarnings("unchecked")
+  static <T, S> TransitionTable<T, S> compile(
+      Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> transitionMap, List<State<T, S>> stateOrder,
+      List<StateEvent<S>> eventOrder, State<T, S> endState, StateEvent<S> immediateEvent,
+      Class<? extends Enum<?>> ordinalEventType) {
+    Map<State<T, S>, Integer> stateIds = new HashMap<>();
+    Map<StateEvent<S>, Integer> eventIds = new HashMap<>();
+    List<State<T, S>> states = new ArrayList<>();
+    stateOrder.forEach(s -> assignStateId(s, stateIds, states));
+    eventOrder.forEach(e -> assignId(e, eventIds));
+    for (Entry<State<T, S>, Map<StateEvent<S>, State<T, S>>> entry : transitionMap.entrySet()) {
+      assignStateId(entry.getKey(), stateIds, states);
+      for (Entry<StateEvent<S>, State<T, S>> transition : entry.getValue().entrySet()) {
+        assignId(transition.getKey(), eventIds);
+        if (transition.getValue() != null) {
+          assignStateId(transition.getValue(), stateIds, states);
+        }
+      }
+    }
+    assignId(immediateEvent, eventIds);
+    int[][] transitions = new int[states.size()][eventIds.size()];
+    boolean[] endsOnEntry = new boolean[states.size()];
+    for (int stateId = 0; stateId < states.size(); stateId++) {
+      Arrays.fill(transitions[stateId], NO_ID);
+      Map<StateEvent<S>, State<T, S>> stateTransitions = transitionMap.get(states.get(stateId));
+      if (stateTransitions == null) {
+        endsOnEntry[stateId] = true;
+        continue;
+      }
+      for (Entry<StateEvent<S>, State<T, S>> transition : stateTransitions.entrySet()) {
+        if (transition.getValue() != null) {
+          transitions[stateId][eventIds.get(transition.getKey())] = stateIds.get(
+              transition.getValue());
+        }
+      }
+      endsOnEntry[stateId] = endState.equals(stateTransitions.get(immediateEvent));
+    }
+    return new TransitionTable<>(Map.copyOf(stateIds), Map.copyOf(eventIds),
+        (State<T, S>[]) states.toArray(new State<?, ?>[0]), transitions, endsOnEntry,
+        ordinalEventType);
+  }
+
+  private static <T, S> void assignStateId(State<T, S> state, Map<State<T, S>, Integer> ids,
+      List<State<T, S>> states) {
+    if (assignId(state, ids)) {
+      states.add(state);
+    }
+  }
+
+  private static <K> boolean assignId(K key, Map<K, Integer> ids) {
+    if (ids.containsKey(key)) {
+      return false;
+    }
+    ids.put(key, ids.size());
+    return true;
+  }
+
+  /**
+   * @return the id of the {@link State} or {@link #NO_ID} if it is not in this table
+   */
+  public int getStateId(State<T, S> state) {
+    Integer id = stateIds.get(state);
+    return id == null ? NO_ID : id;
+  }
+
+  /**
+   * @return the id of the {@link StateEvent} or {@link #NO_ID} if it is not in this table. The id
+   * of a {@link NamedStateEvent} is cached on it after the first lookup, so firing the same instance
+   * again does not hash the name.
+   */
+  public int getEventId(StateEvent<S> stateEvent) {
+    if (ordinalEventType != null && stateEvent instanceof EnumStateEvent<?, ?> enumStateEvent
+        && enumStateEvent.getConstant().getDeclaringClass() == ordinalEventType) {
+      return enumStateEvent.getConstant().ordinal();
+    }
+    if (stateEvent instanceof NamedStateEvent<?> namedStateEvent) {
+      int cachedId = namedStateEvent.getCachedEventId(this);
+      if (cachedId != NamedStateEvent.EventId.UNCACHED) {
+        return cachedId;
+      }
+      int id = lookupEventId(stateEvent);
+      namedStateEvent.cacheEventId(this, id);
+      return id;
+    }
+    return lookupEventId(stateEvent);
+  }
+
+  private int lookupEventId(StateEvent<S> stateEvent) {
+    Integer id = eventIds.get(stateEvent);
+    return id == null ? NO_ID : id;
+  }
+
+  /**
+   * @return the {@link State} with the given id
+   */
+  public State<T, S> getState(int stateId) {
+    return states[stateId];
+  }
+
+  /**
+   * @return the id of the {@link State} that is transitioned to when the {@link StateEvent} with
+   * eventId is received in the {@link State} with stateId, or {@link #NO_ID} if the
+   * {@link StateEvent} is not mapped.
+   */
+  public int getTransition(int stateId, int eventId) {
+    if (stateId == NO_ID || eventId == NO_ID) {
+      return NO_ID;
+    }
+    return transitions[stateId][eventId];
+  }
+
+  /**
+   * @return true if the {@link com.webotech.statemachine.api.StateMachine} ends as soon as the
+   * {@link State} with stateId has been entered.
+   */
+  public boolean isEndOnEntry(int stateId) {
+    return endsOnEntry[stateId];
+  }
+
+  /**
+   * @return the number of {@link State}s in this table
+   */
+  public int getStateCount() {
+    return states.length;
+  }
+
+  /**
+   * @return the number of {@link StateEvent}s in this table
+   */
+  public int getEventCount() {
+    return eventIds.size();
+  }
+}
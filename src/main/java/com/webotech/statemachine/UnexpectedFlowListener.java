@@ -34,4 +34,16 @@ public interface UnexpectedFlowListener<T, S> {
    * {@link com.webotech.statemachine.api.StateMachine} has started
    */
   void onEventBeforeMachineStart(StateEvent<S> stateEvent, StateMachine<T, S> stateMachine);
+
+  /**
+   * Called when a {@link StateEvent} is dropped because the queue of the
+   * {@link com.webotech.statemachine.strategy.EventProcessingStrategy} is full, see
+   * {@link com.webotech.statemachine.strategy.BackpressurePolicy}. It is called on the thread that
+   * fired the {@link StateEvent} so it should be cheap, by default it does nothing. Dropped
+   * {@link StateEvent}s are also counted by the
+   * {@link com.webotech.statemachine.strategy.EventProcessingStrategy}.
+   */
+  default void onEventDropped(StateEvent<S> stateEvent, StateMachine<T, S> stateMachine) {
+    // dropped events are counted by the EventProcessingStrategy
+  }
 }
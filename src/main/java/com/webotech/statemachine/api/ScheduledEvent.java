@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.api;
+
+/**
+ * A handle to a {@link StateEvent} that is scheduled to be fired, see
+ * {@link StateMachine#fireAfter(java.time.Duration, StateEvent)}.
+ */
+public interface ScheduledEvent {
+
+  /**
+   * Cancels the scheduled {@link StateEvent} so that it is not fired.
+   *
+   * @return false if it has already been fired or cancelled
+   */
+  boolean cancel();
+
+  /**
+   * @return true if it was cancelled before it was fired
+   */
+  boolean isCancelled();
+
+  /**
+   * @return true if its delay has elapsed and it has been fired
+   */
+  boolean isExpired();
+}
@@ -15,6 +15,13 @@ public interface StateAction<T, S> {
 
   /**
    * This is called when this {@link StateAction} os executed.
+   * <p>
+   * The stateEvent can be a view, with the payload it was fired with, that is reused once this
+   * method returns. It can be fired again from here, but to keep it after this method returns
+   * copy it with
+   * {@link com.webotech.statemachine.strategy.EventProcessingStrategy#detach(StateEvent)}. A view
+   * is only {@link Object#equals(Object)} to another view of an equal {@link StateEvent}, so
+   * compare it by {@link StateEvent#getName()}.
    */
   void execute(StateEvent<S> stateEvent, StateMachine<T, S> stateMachine);
 
@@ -4,6 +4,11 @@
 
 package com.webotech.statemachine.api;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>This is the API for the state machine. It made up from methods that are used to configure it
  * before it is started and service methods that are used while the state machine is running.</p>
@@ -53,6 +58,14 @@ public interface StateMachine<T, S> {
    */
   StateMachine<T, S> itTransitionsTo(State<T, S> state);
 
+  /**
+   * A configuration method: used to specify that the {@link State} that is currently being
+   * configured (see {@link #when(State)}) times out when the {@link StateMachine} has been in it
+   * for the timeout. The timer starts when the {@link State} is entered and it is cancelled when it
+   * is exited. Generally it is followed by {@link #itTransitionsTo(State)} or {@link #itEnds()}.
+   */
+  StateMachine<T, S> timesOutAfter(Duration timeout);
+
   /**
    * A configuration method: used to specify that the {@link StateMachine} does not change state and
    * no {@link StateAction} are executed. Generally called after {@link #receives(StateEvent)}.
@@ -75,11 +88,71 @@ public interface StateMachine<T, S> {
    */
   void fire(StateEvent<S> stateEvent);
 
+  /**
+   * Fires an event
+   *
+   * @return false if the event was not accepted, for example when the {@link StateMachine} has not
+   * started, has ended or its queue is full (see
+   * {@link com.webotech.statemachine.strategy.BackpressurePolicy#REJECT}).
+   */
+  default boolean tryFire(StateEvent<S> stateEvent) {
+    fire(stateEvent);
+    return true;
+  }
+
+  /**
+   * Fires an event, the returned {@link CompletableFuture} is completed when it has been
+   * processed. It completes with the {@link State} that was transitioned to (or the current
+   * {@link State} if it did not transition) once {@link StateMachineListener#onStateChangeEnd} has
+   * been called, or exceptionally if the event is not mapped, is not accepted or is dropped, or its
+   * processing fails.
+   */
+  CompletableFuture<State<T, S>> fireAsync(StateEvent<S> stateEvent);
+
+  /**
+   * Fires an event after a delay, for example a timeout. The payload of the event is read when it
+   * is fired.
+   *
+   * @return a {@link ScheduledEvent} that can be used to cancel it
+   */
+  ScheduledEvent fireAfter(Duration delay, StateEvent<S> stateEvent);
+
+  /**
+   * Fires a batch of events, they are processed in the order they are given.
+   *
+   * @return the number of events that were accepted, see {@link #tryFire(StateEvent)}
+   */
+  @SuppressWarnings("unchecked")
+  default int fireAll(StateEvent<S>... stateEvents) {
+    return fireAll(Arrays.asList(stateEvents));
+  }
+
+  /**
+   * Fires a batch of events, they are processed in the order of the {@link Collection}'s iterator.
+   *
+   * @return the number of events that were accepted, see {@link #tryFire(StateEvent)}
+   */
+  default int fireAll(Collection<? extends StateEvent<S>> stateEvents) {
+    int accepted = 0;
+    for (StateEvent<S> stateEvent : stateEvents) {
+      if (tryFire(stateEvent)) {
+        accepted++;
+      }
+    }
+    return accepted;
+  }
+
   /**
    * Retrieves the current state
    */
   State<T, S> getCurrentState();
 
+  /**
+   * Retrieves the current state with the number of transitions that have been made and when the
+   * last one was made, it can be read from any thread.
+   */
+  Snapshot<T, S> getSnapshot();
+
   /**
    * Retrieves the context of the {@link StateMachine}
    */
@@ -108,8 +181,39 @@ public interface StateMachine<T, S> {
    */
   int getEventQueueSize();
 
+  /**
+   * @return how many more {@link StateEvent}s fit in the queue before it is full,
+   * {@link Integer#MAX_VALUE} if the queue is not bound.
+   */
+  int getRemainingCapacity();
+
   /**
    * Stops the {@link StateMachine}
    */
   void stop();
+
+  /**
+   * Stops the {@link StateMachine} once the {@link StateEvent}s that have already been fired are
+   * processed. No more {@link StateEvent}s are accepted, the queued {@link StateEvent}s are
+   * processed and then the {@link StateMachine} transitions to its end {@link State}. If that does
+   * not happen within the timeout it is stopped immediately, as in {@link #stop()}. Any resources
+   * that are no longer used, like an executor, are released.
+   *
+   * @return true if it ended within the timeout
+   */
+  boolean stopGracefully(Duration timeout);
+
+  /**
+   * A consistent view of the current {@link State} of a {@link StateMachine}.
+   *
+   * @param state                the current {@link State}
+   * @param sequence             the number of times the current {@link State} has been updated,
+   *                             if it has not changed between two snapshots then no transition was
+   *                             made in between
+   * @param transitionTimeMillis the time in epoch millis that the current {@link State} was
+   *                             updated
+   */
+  record Snapshot<T, S>(State<T, S> state, long sequence, long transitionTimeMillis) {
+
+  }
 }
@@ -11,6 +11,8 @@ package com.webotech.statemachine.api;
  * <li>T - the context for the {@link StateMachine}</li>
  * <li>S - the payload of the {@link StateEvent}</li>
  * </p>
+ * <p>The {@link StateEvent} that a listener is called with has the same lifetime as the one
+ * delivered to a {@link StateAction}, see {@link StateAction#execute(StateEvent, StateMachine)}.</p>
  */
 public interface StateMachineListener<T, S> {
 
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link IdleStrategy} that busy spins, then yields and then parks the thread for a period that
+ * doubles each time it is idle, from the minimum up to the maximum park period. It keeps the
+ * latency low when {@link com.webotech.statemachine.api.StateEvent}s arrive in bursts without
+ * burning a core when they do not.
+ */
+public final class BackoffIdleStrategy implements IdleStrategy {
+
+  static final int DEFAULT_SPINS = 100;
+  static final int DEFAULT_YIELDS = 10;
+  static final Duration DEFAULT_MIN_PARK_PERIOD = Duration.ofNanos(1000);
+  static final Duration DEFAULT_MAX_PARK_PERIOD = Duration.ofMillis(1);
+  private final int maxSpins;
+  private final int maxYields;
+  private final long minParkPeriodNanos;
+  private final long maxParkPeriodNanos;
+  private int spins;
+  private int yields;
+  private long parkPeriodNanos;
+
+  public BackoffIdleStrategy() {
+    this(DEFAULT_SPINS, DEFAULT_YIELDS, DEFAULT_MIN_PARK_PERIOD, DEFAULT_MAX_PARK_PERIOD);
+  }
+
+  public BackoffIdleStrategy(int maxSpins, int maxYields, Duration minParkPeriod,
+      Duration maxParkPeriod) {
+    if (minParkPeriod.isNegative() || minParkPeriod.isZero()
+        || maxParkPeriod.compareTo(minParkPeriod) < 0) {
+      throw new IllegalArgumentException(
+          "Park periods must be positive and max must not be less than min: " + minParkPeriod
+              + ", " + maxParkPeriod);
+    }
+    this.maxSpins = maxSpins;
+    this.maxYields = maxYields;
+    this.minParkPeriodNanos = minParkPeriod.toNanos();
+    this.maxParkPeriodNanos = maxParkPeriod.toNanos();
+    this.parkPeriodNanos = minParkPeriodNanos;
+  }
+
+  @Override
+  public void idle(int workCount) {
+    if (workCount > 0) {
+      spins = 0;
+      yields = 0;
+      parkPeriodNanos = minParkPeriodNanos;
+    } else if (spins < maxSpins) {
+      spins++;
+      Thread.onSpinWait();
+    } else if (yields < maxYields) {
+      yields++;
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(parkPeriodNanos);
+      parkPeriodNanos = Math.min(parkPeriodNanos << 1, maxParkPeriodNanos);
+    }
+  }
+
+  @Override
+  public boolean isParking() {
+    return true;
+  }
+}
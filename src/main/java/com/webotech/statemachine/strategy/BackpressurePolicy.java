@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+
+/**
+ * What an {@link EventProcessingStrategy} with a bound queue does with a {@link StateEvent} that is
+ * received when its queue is full. Every {@link StateEvent} that is not queued is counted, see
+ * {@link EventProcessingStrategy#getDroppedEventCount()}, no exceptions are created.
+ */
+public enum BackpressurePolicy {
+
+  /**
+   * The received {@link StateEvent} is dropped and
+   * {@link UnexpectedFlowListener#onEventDropped(StateEvent, StateMachine)} is called.
+   */
+  DROP_NEWEST,
+
+  /**
+   * The oldest queued {@link StateEvent} is dropped to make room for the received one and
+   * {@link UnexpectedFlowListener#onEventDropped(StateEvent, StateMachine)} is called for the
+   * oldest one.
+   */
+  DROP_OLDEST,
+
+  /**
+   * The firing thread waits for room in the queue, up to the configured block timeout. If the
+   * timeout expires the received {@link StateEvent} is dropped as in {@link #DROP_NEWEST}. A
+   * {@link StateEvent} fired from a {@link com.webotech.statemachine.api.StateAction} is fired on
+   * the thread that drains the queue and one fired by a timer, see
+   * {@link StateMachine#fireAfter(java.time.Duration, StateEvent)}, must not hold up the timer's
+   * thread, so neither waits, they are dropped as in {@link #DROP_NEWEST}.
+   */
+  BLOCK,
+
+  /**
+   * When the executor rejects the task that processes queued {@link StateEvent}s, for example
+   * because it is saturated, the firing thread processes them itself. When the queue is full and
+   * no thread is processing them the firing thread processes them to make room, otherwise it waits
+   * as in {@link #BLOCK}. Events are still processed in the order they were received. The firing
+   * thread processes at most a drain quantum at a time, bound by the max queue size and the block
+   * timeout, so it is not held as a consumer while others keep firing. A {@link StateEvent} fired
+   * from a {@link com.webotech.statemachine.api.StateAction} or by a timer is never processed on
+   * the firing thread, it is handled as in {@link #BLOCK}.
+   */
+  CALLER_RUNS,
+
+  /**
+   * The received {@link StateEvent} is not queued and the caller is told, see
+   * {@link StateMachine#tryFire(StateEvent)}. No {@link UnexpectedFlowListener} callback is made.
+   */
+  REJECT
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link IdleStrategy} that parks the thread until there is something to process, it uses no
+ * CPU while it waits but it has the highest latency.
+ */
+public final class BlockingIdleStrategy implements IdleStrategy {
+
+  @Override
+  public void idle(int workCount) {
+    if (workCount <= 0) {
+      LockSupport.park(this);
+    }
+  }
+
+  @Override
+  public boolean isParking() {
+    return true;
+  }
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+/**
+ * An {@link IdleStrategy} that never gives up the CPU, it has the lowest latency but it uses a
+ * whole core. It is intended for a thread that is pinned to an isolated core.
+ */
+public final class BusySpinIdleStrategy implements IdleStrategy {
+
+  @Override
+  public void idle(int workCount) {
+    if (workCount <= 0) {
+      Thread.onSpinWait();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+public class CallingThreadEventStrategy<T, S> implements EventProcessingStrategy<T, S> {
+
+  private static final int INITIAL_CAPACITY = 16;
+  private final TransitionTask<T, S> transitionTask;
+  private final UnexpectedFlowListener<T, S> unexpectedFlowListener;
+  private EventMachinePair<T, S>[] pending;
+  private int head;
+  private int pendingCount;
+  private boolean processing;
+
+  /**
+   * An {@link EventProcessingStrategy} that processes each {@link StateEvent} on the thread that
+   * fires it, the transition has completed when {@link StateMachine#fire(StateEvent)} returns.
+   * There is no queue, executor or object pool so the cost of firing a {@link StateEvent} is the
+   * transition itself, it is intended for replaying recorded {@link StateEvent}s, for example in
+   * a backtest.
+   * <p>
+   * A {@link StateEvent} that is fired while a {@link StateEvent} is being processed, by a
+   * {@link com.webotech.statemachine.api.StateAction}, is held in a pending buffer and processed
+   * once the current transition has completed, before the outer
+   * {@link StateMachine#fire(StateEvent)} returns. So transitions are atomic and processed in the
+   * order they were received, as with the other {@link EventProcessingStrategy}s.
+   * <p>
+   * It is not thread-safe, the {@link StateMachine}s that use it must only be fired from one thread.
+   */
+  public CallingThreadEventStrategy(
+      BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      UnexpectedFlowListener<T, S> unexpectedFlowListener) {
+    this.transitionTask = new TransitionTask<>(unmappedEventHandler);
+    this.unexpectedFlowListener = unexpectedFlowListener;
+    this.pending = newPending(INITIAL_CAPACITY);
+    for (int i = 0; i < pending.length; i++) {
+      pending[i] = new EventMachinePair<>();
+    }
+  }
+
+  /**
+   * @return the number of {@link StateEvent}s that are waiting for the current transition to
+   * complete
+   */
+  @Override
+  public int getEventQueueSize() {
+    return pendingCount;
+  }
+
+  @Override
+  public void processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    tryProcessEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    return processEvent(stateEvent, stateMachine, null);
+  }
+
+  @Override
+  public boolean processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    if (processing) {
+      addPending(stateEvent, stateMachine, completion);
+      return true;
+    }
+    processing = true;
+    try {
+      process(stateEvent, stateMachine, completion);
+      while (pendingCount > 0) {
+        EventMachinePair<T, S> pendingPair = pending[head];
+        process(pendingPair.getDeliveredEvent(), pendingPair.getStateMachine(),
+            pendingPair.getCompletion());
+        pendingPair.clear();
+        head = (head + 1) & (pending.length - 1);
+        pendingCount--;
+      }
+    } finally {
+      processing = false;
+    }
+    return true;
+  }
+
+  /**
+   * The pending {@link StateEvent}s are held in a ring of {@link EventMachinePair}s that doubles in
+   * size when it is full, so the payload is taken when the {@link StateEvent} is fired.
+   */
+  private void addPending(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    if (pendingCount == pending.length) {
+      EventMachinePair<T, S>[] grown = newPending(pending.length << 1);
+      for (int i = 0; i < pending.length; i++) {
+        grown[i] = pending[(head + i) & (pending.length - 1)];
+      }
+      for (int i = pending.length; i < grown.length; i++) {
+        grown[i] = new EventMachinePair<>();
+      }
+      pending = grown;
+      head = 0;
+    }
+    EventMachinePair<T, S> pendingPair = pending[(head + pendingCount) & (pending.length - 1)];
+    pendingPair.setEventMachinePair(stateEvent, stateMachine);
+    pendingPair.setCompletion(completion);
+    pendingCount++;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T, S> EventMachinePair<T, S>[] newPending(int capacity) {
+    return (EventMachinePair<T, S>[]) new EventMachinePair<?, ?>[capacity];
+  }
+
+  private void process(StateEvent<S> event, GenericStateMachine<T, S> machine,
+      CompletableFuture<State<T, S>> completion) {
+    try {
+      if (!machine.isEnded()) {
+        transitionTask.execute(event, machine, completion);
+      } else {
+        TransitionTask.fail(completion, new IllegalStateException("The state machine has ended"));
+      }
+    } catch (Exception e) {
+      unexpectedFlowListener.onExceptionDuringEventProcessing(event, machine,
+          Thread.currentThread(), e);
+      TransitionTask.fail(completion, e);
+    }
+  }
+
+  /**
+   * A scheduled {@link StateEvent} would be processed on the timer's thread, concurrently with the
+   * thread that fires the {@link StateMachine}, so fireAfter and state timeouts are not supported.
+   */
+  @Override
+  public boolean supportsScheduledEvents() {
+    return false;
+  }
+
+  @Override
+  public UnexpectedFlowListener<T, S> getUnexpectedFlowListener() {
+    return unexpectedFlowListener;
+  }
+}
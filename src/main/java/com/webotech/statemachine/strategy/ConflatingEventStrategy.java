@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.StateEvent;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConflatingEventStrategy<T, S> implements EventProcessingStrategy<T, S> {
+
+  private final DefaultEventStrategy<T, S> defaultStrategy;
+  private final Map<StateEvent<S>, AtomicReference<StateEvent<S>>> pendingEvents;
+  private final AtomicLong conflatedEventCount;
+
+  /**
+   * An {@link EventProcessingStrategy} that transitions state atomically where only the latest
+   * payload of a {@link StateEvent} matters. When a {@link StateEvent} is received while the same
+   * {@link StateEvent} is already queued, the queued {@link StateEvent} takes the payload of the
+   * received one and keeps its position in the queue, nothing more is queued. So at most one of
+   * each {@link StateEvent} is queued and it is processed with the latest payload.
+   * <p>
+   * Each {@link StateEvent} has a slot that holds the pending {@link StateEvent}, conflation
+   * replaces the content of the slot so it takes constant time. The {@link StateEvent}s are not
+   * told apart by {@link com.webotech.statemachine.api.StateMachine}, so this
+   * {@link EventProcessingStrategy} should not be shared between
+   * {@link com.webotech.statemachine.api.StateMachine}s.
+   * <p>
+   * A conflated {@link StateEvent} has no single caller waiting on it, so
+   * {@link com.webotech.statemachine.api.StateMachine#fireAsync(StateEvent)} is not supported.
+   */
+  public ConflatingEventStrategy(DefaultEventStrategy<T, S> defaultEventStrategy) {
+    this.defaultStrategy = defaultEventStrategy;
+    this.pendingEvents = new ConcurrentHashMap<>();
+    this.conflatedEventCount = new AtomicLong();
+    this.defaultStrategy.setDequeueHandler(this::takePending);
+  }
+
+  @Override
+  public int getEventQueueSize() {
+    return defaultStrategy.getEventQueueSize();
+  }
+
+  @Override
+  public void processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    tryProcessEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    StateEvent<S> identity = PooledStateEvent.identityOf(stateEvent);
+    AtomicReference<StateEvent<S>> slot = pendingEvents.get(identity);
+    if (slot == null) {
+      slot = pendingEvents.computeIfAbsent(identity, e -> new AtomicReference<>());
+    }
+    StateEvent<S> pendingEvent =
+        stateEvent.getPayload() == null ? stateEvent : DefaultEventStrategy.copyOf(stateEvent);
+    if (slot.getAndSet(pendingEvent) != null) {
+      conflatedEventCount.incrementAndGet();
+      return true;
+    }
+    if (!defaultStrategy.tryProcessEvent(stateEvent, stateMachine)) {
+      if (!slot.compareAndSet(pendingEvent, null)) {
+        // a newer StateEvent was conflated into this one while it was being queued
+        StateEvent<S> conflatedEvent = slot.getAndSet(null);
+        if (conflatedEvent != null) {
+          defaultStrategy.getUnexpectedFlowListener().onEventDropped(conflatedEvent, stateMachine);
+        }
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Empties the slot of a {@link StateEvent} that is taken off the queue, so the next one that is
+   * received is queued.
+   *
+   * @return the {@link StateEvent} with the latest payload
+   */
+  private StateEvent<S> takePending(StateEvent<S> queuedEvent) {
+    AtomicReference<StateEvent<S>> slot = pendingEvents.get(queuedEvent);
+    StateEvent<S> pendingEvent = slot == null ? null : slot.getAndSet(null);
+    return pendingEvent == null ? queuedEvent : pendingEvent;
+  }
+
+  /**
+   * @return the number of {@link StateEvent}s that were conflated into a queued
+   * {@link StateEvent}
+   */
+  public long getConflatedEventCount() {
+    return conflatedEventCount.get();
+  }
+
+  @Override
+  public int getRemainingCapacity(GenericStateMachine<T, S> stateMachine) {
+    return defaultStrategy.getRemainingCapacity(stateMachine);
+  }
+
+  @Override
+  public long getDroppedEventCount() {
+    return defaultStrategy.getDroppedEventCount();
+  }
+
+  @Override
+  public void retain() {
+    defaultStrategy.retain();
+  }
+
+  @Override
+  public void release() {
+    defaultStrategy.release();
+  }
+
+  @Override
+  public UnexpectedFlowListener<T, S> getUnexpectedFlowListener() {
+    return defaultStrategy.getUnexpectedFlowListener();
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+public class DedicatedThreadEventStrategy<T, S> implements EventProcessingStrategy<T, S>,
+    AutoCloseable {
+
+  private final Queue<EventMachinePair<T, S>> eventQueue;
+  private final TransitionTask<T, S> transitionTask;
+  private final UnexpectedFlowListener<T, S> unexpectedFlowListener;
+  private final EventMachinePairPool<T, S> eventMachinePairPool;
+  private final IdleStrategy idleStrategy;
+  private final int maxQueueSize;
+  private final AtomicInteger queueDepth;
+  private final AtomicLong droppedEventCount;
+  private final Thread consumerThread;
+  private final ReferenceCount references;
+  private volatile boolean running;
+  private volatile boolean consumerWaiting;
+
+  /**
+   * An {@link EventProcessingStrategy} that transitions state atomically and processes all
+   * {@link StateEvent}s in sequence, in the order they were received, on a consumer thread that it
+   * owns. The consumer thread is created with the threadFactory and started straight away.
+   * <p>
+   * Unlike the {@link DefaultEventStrategy} there is no hand-off to an executor when a
+   * {@link StateEvent} is received, the consumer thread polls the queue and waits with the
+   * {@link IdleStrategy} when it is empty. A {@link BusySpinIdleStrategy} gives the lowest latency
+   * from firing a {@link StateEvent} to processing it at the cost of a core, a parking
+   * {@link IdleStrategy} is unparked as soon as a {@link StateEvent} is queued.
+   * <p>
+   * If maxQueueSize is positive it bounds the queue, {@link StateEvent}s that do not fit are
+   * dropped as in {@link BackpressurePolicy#DROP_NEWEST}. Once it is closed the consumer thread
+   * stops and {@link StateEvent}s are dropped.
+   */
+  public DedicatedThreadEventStrategy(
+      BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ThreadFactory threadFactory, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      int maxQueueSize, IdleStrategy idleStrategy) {
+    this(unmappedEventHandler, threadFactory, unexpectedFlowListener, new EventMachinePairPool<>(),
+        maxQueueSize, idleStrategy);
+  }
+
+  DedicatedThreadEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ThreadFactory threadFactory, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      EventMachinePairPool<T, S> eventMachinePairPool, int maxQueueSize,
+      IdleStrategy idleStrategy) {
+    this.eventQueue = new ConcurrentLinkedQueue<>();
+    this.transitionTask = new TransitionTask<>(unmappedEventHandler);
+    this.unexpectedFlowListener = unexpectedFlowListener;
+    this.eventMachinePairPool = eventMachinePairPool;
+    this.idleStrategy = idleStrategy;
+    this.maxQueueSize = maxQueueSize;
+    this.queueDepth = new AtomicInteger();
+    this.droppedEventCount = new AtomicLong();
+    this.references = new ReferenceCount(this::close);
+    this.running = true;
+    this.consumerThread = threadFactory.newThread(this::consume);
+    this.consumerThread.start();
+  }
+
+  @Override
+  public int getEventQueueSize() {
+    return queueDepth.get();
+  }
+
+  @Override
+  public int getRemainingCapacity(GenericStateMachine<T, S> stateMachine) {
+    return maxQueueSize > 0 ? Math.max(0, maxQueueSize - queueDepth.get()) : Integer.MAX_VALUE;
+  }
+
+  @Override
+  public long getDroppedEventCount() {
+    return droppedEventCount.get();
+  }
+
+  /**
+   * @return the thread that processes the {@link StateEvent}s
+   */
+  public Thread getConsumerThread() {
+    return consumerThread;
+  }
+
+  @Override
+  public void processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    tryProcessEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    return processEvent(stateEvent, stateMachine, null);
+  }
+
+  @Override
+  public boolean processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    if (!running) {
+      return drop(stateEvent, stateMachine);
+    }
+    if (queueDepth.incrementAndGet() > maxQueueSize && maxQueueSize > 0) {
+      queueDepth.decrementAndGet();
+      return drop(stateEvent, stateMachine);
+    }
+    EventMachinePair<T, S> inboundPair = this.eventMachinePairPool.take();
+    /* The payload is taken with the StateEvent in case the client is
+      setting different payloads on the same event instance */
+    inboundPair.setEventMachinePair(stateEvent, stateMachine);
+    inboundPair.setCompletion(completion);
+    eventQueue.offer(inboundPair);
+    if (!running) {
+      // closed while queueing, the consumer thread may already have failed the queued pairs
+      failQueued();
+    } else if (consumerWaiting) {
+      LockSupport.unpark(consumerThread);
+    }
+    return true;
+  }
+
+  private boolean drop(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    droppedEventCount.incrementAndGet();
+    unexpectedFlowListener.onEventDropped(stateEvent, stateMachine);
+    return false;
+  }
+
+  /**
+   * The consumer loop, a parking {@link IdleStrategy} is only used once the waiting flag is set and
+   * the queue has been checked again, so a {@link StateEvent} that is queued while the flag is
+   * being set either is seen here or unparks the consumer thread.
+   */
+  private void consume() {
+    boolean parking = idleStrategy.isParking();
+    while (running) {
+      int workCount = 0;
+      EventMachinePair<T, S> consumedPair;
+      while (running && (consumedPair = eventQueue.poll()) != null) {
+        queueDepth.decrementAndGet();
+        process(consumedPair);
+        workCount++;
+      }
+      if (workCount > 0 || !parking) {
+        idleStrategy.idle(workCount);
+      } else {
+        consumerWaiting = true;
+        if (eventQueue.isEmpty() && running) {
+          idleStrategy.idle(0);
+        }
+        consumerWaiting = false;
+      }
+    }
+    failQueued();
+  }
+
+  /**
+   * Fails the pairs that are queued once the strategy is closed. It is called by the consumer
+   * thread when it stops and by a producer that queued a pair while it was being closed, each pair
+   * is polled by one of them.
+   */
+  private void failQueued() {
+    EventMachinePair<T, S> closedPair;
+    while ((closedPair = eventQueue.poll()) != null) {
+      queueDepth.decrementAndGet();
+      TransitionTask.fail(closedPair.getCompletion(),
+          new IllegalStateException("The event processing strategy is closed"));
+      eventMachinePairPool.give(closedPair);
+    }
+  }
+
+  private void process(EventMachinePair<T, S> consumedPair) {
+    StateEvent<S> event = consumedPair.getDeliveredEvent();
+    GenericStateMachine<T, S> machine = consumedPair.getStateMachine();
+    CompletableFuture<State<T, S>> completion = consumedPair.getCompletion();
+    try {
+      if (!machine.isEnded()) {
+        transitionTask.execute(event, machine, completion);
+      } else {
+        TransitionTask.fail(completion, new IllegalStateException("The state machine has ended"));
+      }
+    } catch (Exception e) {
+      unexpectedFlowListener.onExceptionDuringEventProcessing(event, machine,
+          Thread.currentThread(), e);
+      TransitionTask.fail(completion, e);
+    } finally {
+      eventMachinePairPool.give(consumedPair);
+    }
+  }
+
+  /**
+   * Stops the consumer thread, {@link StateEvent}s that are still queued are not processed and
+   * their completions (see {@link StateMachine#fireAsync(StateEvent)}) complete exceptionally.
+   */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(consumerThread);
+  }
+
+  @Override
+  public void retain() {
+    references.retain();
+  }
+
+  /**
+   * The strategy is closed when every {@link StateMachine} that retained it has released it.
+   */
+  @Override
+  public void release() {
+    references.release();
+  }
+
+  @Override
+  public UnexpectedFlowListener<T, S> getUnexpectedFlowListener() {
+    return unexpectedFlowListener;
+  }
+}
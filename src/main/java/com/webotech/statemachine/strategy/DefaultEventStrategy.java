@@ -4,25 +4,46 @@
 
 package com.webotech.statemachine.strategy;
 
+import com.webotech.statemachine.EnumStateEvent;
 import com.webotech.statemachine.GenericStateMachine;
 import com.webotech.statemachine.NamedStateEvent;
 import com.webotech.statemachine.UnexpectedFlowListener;
 import com.webotech.statemachine.api.State;
 import com.webotech.statemachine.api.StateEvent;
 import com.webotech.statemachine.api.StateMachine;
-import java.util.Map;
+import com.webotech.statemachine.util.TimingWheel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 public class DefaultEventStrategy<T, S> implements EventProcessingStrategy<T, S> {
 
+  private static final long BLOCK_PARK_NANOS = 50_000;
   private final Queue<EventMachinePair<T, S>> eventQueue;
-  private final ExecutorService executor;
+  private final ReferenceCount references;
   private final TransitionTask<T, S> transitionTask;
   private final UnexpectedFlowListener<T, S> unexpectedFlowListener;
   private final EventMachinePairPool<T, S> eventMachinePairPool;
   private final int maxQueueSize;
+  private final BackpressurePolicy backpressurePolicy;
+  private final long blockTimeoutNanos;
+  private final DrainQuantum callerQuantum;
+  private final AtomicInteger queueDepth;
+  private final AtomicLong droppedEventCount;
+  private final DrainTask drainTask;
+  private volatile UnaryOperator<StateEvent<S>> dequeueHandler;
 
   /**
    * The default {@link EventProcessingStrategy}, it transitions state atomically. All
@@ -38,80 +59,381 @@ public class DefaultEventStrategy<T, S> implements EventProcessingStrategy<T, S>
    * <p>
    * If the maxQueueSize is positive it will bound the queue's size and in the case where the
    * sustained rate of {@link StateEvent}s received is higher than the rate they are being processed
-   * (slow consumption), it will ultimately lead to {@link IllegalStateException}s being called back
-   * on {@link UnexpectedFlowListener#onExceptionDuringEventProcessing(StateEvent, StateMachine,
-   * Thread, Exception)} and the {@link StateEvent} will not be processed.
+   * (slow consumption), {@link StateEvent}s that do not fit in the queue are handled by a
+   * {@link BackpressurePolicy}, this constructor uses {@link BackpressurePolicy#DROP_NEWEST}.
+   * <p>
+   * At most one drain task is submitted to the executor at a time, so a burst of
+   * {@link StateEvent}s is processed by a single task rather than one task per
+   * {@link StateEvent}.
+   * <p>
+   * The depth of the queue is tracked as {@link StateEvent}s are queued and processed, so the
+   * eventQueue should not be shared with another {@link EventProcessingStrategy}.
    */
   public DefaultEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
       ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
       int maxQueueSize, Queue<EventMachinePair<T, S>> eventQueue) {
+    this(unmappedEventHandler, executor, unexpectedFlowListener, maxQueueSize, eventQueue,
+        BackpressurePolicy.DROP_NEWEST, Duration.ZERO);
+  }
+
+  /**
+   * As {@link #DefaultEventStrategy(BiConsumer, ExecutorService, UnexpectedFlowListener, int,
+   * Queue)} where the backpressurePolicy is applied when a bound queue is full, the blockTimeout is
+   * used by {@link BackpressurePolicy#BLOCK} and {@link BackpressurePolicy#CALLER_RUNS}.
+   */
+  public DefaultEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      int maxQueueSize, Queue<EventMachinePair<T, S>> eventQueue,
+      BackpressurePolicy backpressurePolicy, Duration blockTimeout) {
     this(unmappedEventHandler, executor, unexpectedFlowListener, new EventMachinePairPool<>(),
-        maxQueueSize, eventQueue);
+        maxQueueSize, eventQueue, backpressurePolicy, blockTimeout);
   }
 
   DefaultEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
       ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
       EventMachinePairPool<T, S> eventMachinePairPool, int maxQueueSize,
       Queue<EventMachinePair<T, S>> eventQueue) {
-    this.executor = executor;
+    this(unmappedEventHandler, executor, unexpectedFlowListener, eventMachinePairPool,
+        maxQueueSize, eventQueue, BackpressurePolicy.DROP_NEWEST, Duration.ZERO);
+  }
+
+  DefaultEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      EventMachinePairPool<T, S> eventMachinePairPool, int maxQueueSize,
+      Queue<EventMachinePair<T, S>> eventQueue, BackpressurePolicy backpressurePolicy,
+      Duration blockTimeout) {
+    this(unmappedEventHandler, executor, unexpectedFlowListener, eventMachinePairPool,
+        maxQueueSize, eventQueue, backpressurePolicy, blockTimeout, DrainQuantum.UNBOUNDED, null);
+  }
+
+  /**
+   * As {@link #DefaultEventStrategy(BiConsumer, ExecutorService, UnexpectedFlowListener, int,
+   * Queue, BackpressurePolicy, Duration)} where the drain task is bound by the drainQuantum and the
+   * releaseTask runs when every {@link StateMachine} that retained this strategy has released it.
+   * If the releaseTask is null the strategy owns nothing to release.
+   */
+  DefaultEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      EventMachinePairPool<T, S> eventMachinePairPool, int maxQueueSize,
+      Queue<EventMachinePair<T, S>> eventQueue, BackpressurePolicy backpressurePolicy,
+      Duration blockTimeout, DrainQuantum drainQuantum, Runnable releaseTask) {
+    this.references = new ReferenceCount(releaseTask);
     this.unexpectedFlowListener = unexpectedFlowListener;
     this.eventMachinePairPool = eventMachinePairPool;
     this.eventQueue = eventQueue;
     this.transitionTask = new TransitionTask<>(unmappedEventHandler);
     this.maxQueueSize = maxQueueSize;
+    this.backpressurePolicy = backpressurePolicy;
+    this.blockTimeoutNanos = blockTimeout.toNanos();
+    this.callerQuantum = new DrainQuantum(
+        maxQueueSize > 0 ? Math.min(maxQueueSize, drainQuantum.maxEvents())
+            : drainQuantum.maxEvents(), Math.min(blockTimeoutNanos, drainQuantum.maxNanos()));
+    this.queueDepth = new AtomicInteger();
+    this.droppedEventCount = new AtomicLong();
+    this.drainTask = new DrainTask(executor, drainQuantum) {
+      @Override
+      boolean processNext() {
+        EventMachinePair<T, S> consumedPair = eventQueue.poll();
+        if (consumedPair == null) {
+          return false;
+        }
+        queueDepth.decrementAndGet();
+        process(consumedPair);
+        return true;
+      }
+
+      @Override
+      boolean isEmpty() {
+        return eventQueue.isEmpty();
+      }
+
+      @Override
+      void onRejected(RejectedExecutionException e) {
+        if (backpressurePolicy != BackpressurePolicy.CALLER_RUNS || TimingWheel.isTimerThread()) {
+          throw e;
+        }
+        /* a drain task that is already scheduled processes the queued events, if this thread is
+          draining them what remains is drained by the next StateEvent that is fired */
+        if (!isDraining()) {
+          tryDrain(callerQuantum);
+        }
+      }
+    };
+    this.dequeueHandler = UnaryOperator.identity();
+  }
+
+  /**
+   * The dequeueHandler is called with each {@link StateEvent} that is taken off the queue, either
+   * to be processed or to be dropped, and returns the {@link StateEvent} that is processed or
+   * dropped in its place. It must be set before any {@link StateEvent}s are queued.
+   */
+  void setDequeueHandler(UnaryOperator<StateEvent<S>> dequeueHandler) {
+    this.dequeueHandler = dequeueHandler;
+  }
+
+  /**
+   * @return the pool of the objects that {@link StateEvent}s are queued in
+   */
+  public EventMachinePairPool<T, S> getEventMachinePairPool() {
+    return eventMachinePairPool;
   }
 
   @Override
   public int getEventQueueSize() {
-    return eventQueue.size();
+    return queueDepth.get();
+  }
+
+  @Override
+  public int getRemainingCapacity(GenericStateMachine<T, S> stateMachine) {
+    return maxQueueSize > 0 ? Math.max(0, maxQueueSize - queueDepth.get()) : Integer.MAX_VALUE;
+  }
+
+  @Override
+  public long getDroppedEventCount() {
+    return droppedEventCount.get();
   }
 
   @Override
   public void processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
-    int queueSize = getEventQueueSize();
-    if (maxQueueSize > 0 && queueSize >= maxQueueSize) {
-      unexpectedFlowListener.onExceptionDuringEventProcessing(stateEvent, stateMachine,
-          Thread.currentThread(), new IllegalStateException(
-              String.format("Queue size is maxed out at %s - dropping event", queueSize)));
-      return;
+    tryProcessEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    return enqueue(stateEvent, stateMachine, null);
+  }
+
+  @Override
+  public boolean processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    return enqueue(stateEvent, stateMachine, completion);
+  }
+
+  private boolean enqueue(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    if (!admit(stateEvent, stateMachine)) {
+      return false;
     }
+    EventMachinePair<T, S> inboundPair = newPair(stateEvent, stateMachine);
+    inboundPair.setCompletion(completion);
+    if (!eventQueue.offer(inboundPair)) {
+      rejectPair(inboundPair);
+      return false;
+    }
+    drainTask.schedule();
+    return true;
+  }
+
+  /**
+   * The batch is admitted with a single bound check and queued in one go, so it is processed in
+   * one drain. Any {@link StateEvent}s that do not fit in a bound queue are processed one at a time
+   * so that the {@link BackpressurePolicy} is applied to them.
+   */
+  @Override
+  public int processEvents(Collection<? extends StateEvent<S>> stateEvents,
+      GenericStateMachine<T, S> stateMachine) {
+    Iterator<? extends StateEvent<S>> iterator = stateEvents.iterator();
+    int accepted = admitBatch(stateEvents.size());
+    if (accepted > 0) {
+      List<EventMachinePair<T, S>> batch = new ArrayList<>(accepted);
+      for (int i = 0; i < accepted; i++) {
+        batch.add(newPair(iterator.next(), stateMachine));
+      }
+      accepted = offerBatch(batch);
+      if (accepted > 0) {
+        drainTask.schedule();
+      }
+    }
+    while (iterator.hasNext()) {
+      if (tryProcessEvent(iterator.next(), stateMachine)) {
+        accepted++;
+      }
+    }
+    return accepted;
+  }
+
+  /**
+   * A {@link ConcurrentLinkedQueue} links the whole batch with a single
+   * {@link Queue#addAll(Collection)}. Other queues can be bound and fail part way through an
+   * addAll, so the pairs are offered one at a time and the pairs that are not accepted are
+   * rejected like a single {@link StateEvent} that is not accepted.
+   *
+   * @return the number of pairs that were queued
+   */
+  private int offerBatch(List<EventMachinePair<T, S>> batch) {
+    if (eventQueue instanceof ConcurrentLinkedQueue) {
+      eventQueue.addAll(batch);
+      return batch.size();
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      if (!eventQueue.offer(batch.get(i))) {
+        for (int j = i; j < batch.size(); j++) {
+          rejectPair(batch.get(j));
+        }
+        return i;
+      }
+    }
+    return batch.size();
+  }
+
+  private void rejectPair(EventMachinePair<T, S> rejectedPair) {
+    StateEvent<S> stateEvent = rejectedPair.getStateEvent();
+    GenericStateMachine<T, S> stateMachine = rejectedPair.getStateMachine();
+    CompletableFuture<State<T, S>> completion = rejectedPair.getCompletion();
+    queueDepth.decrementAndGet();
+    eventMachinePairPool.give(rejectedPair);
+    drop(stateEvent, stateMachine);
+    if (completion != null) {
+      completion.completeExceptionally(new IllegalStateException(
+          "StateEvent [" + stateEvent.getName() + "] was not accepted by the event queue"));
+    }
+  }
+
+  private EventMachinePair<T, S> newPair(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
     EventMachinePair<T, S> inboundPair = this.eventMachinePairPool.take();
-    if (stateEvent.getPayload() != null) {
-      /* Use a safe copy of the StateEvent in case the client is
-        setting different payloads on the same event instance */
-      inboundPair.setEventMachinePair(new NamedStateEvent<>(stateEvent), stateMachine);
-    } else {
-      inboundPair.setEventMachinePair(stateEvent, stateMachine);
+    /* The payload is taken with the StateEvent in case the client is
+      setting different payloads on the same event instance */
+    inboundPair.setEventMachinePair(stateEvent, stateMachine);
+    return inboundPair;
+  }
+
+  /**
+   * Reserves room in the queue for as many of size {@link StateEvent}s as fit
+   *
+   * @return the number of {@link StateEvent}s that room was reserved for
+   */
+  private int admitBatch(int size) {
+    if (maxQueueSize <= 0) {
+      queueDepth.addAndGet(size);
+      return size;
     }
-    eventQueue.offer(inboundPair);
-    executor.execute(() -> {
-      while (!eventQueue.isEmpty()) {
-        EventMachinePair<T, S> consumedPair = eventQueue.poll();
-        StateEvent<S> event = consumedPair.getStateEvent();
-        GenericStateMachine<T, S> machine = consumedPair.getStateMachine();
-        try {
-          if (!stateMachine.isEnded()) {
-            transitionTask.execute(event, machine);
+    // only the room that is free is reserved, so concurrent fires never see a full queue that isn't
+    int queueSize;
+    int admitted;
+    do {
+      queueSize = queueDepth.get();
+      admitted = Math.min(size, maxQueueSize - queueSize);
+      if (admitted <= 0) {
+        return 0;
+      }
+    } while (!queueDepth.compareAndSet(queueSize, queueSize + admitted));
+    return admitted;
+  }
+
+  /**
+   * Reserves room in the queue for a {@link StateEvent}, applying the {@link BackpressurePolicy}
+   * if the queue is full.
+   */
+  private boolean admit(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    if (maxQueueSize <= 0) {
+      queueDepth.incrementAndGet();
+      return true;
+    }
+    if (tryAdmit()) {
+      return true;
+    }
+    switch (backpressurePolicy) {
+      case DROP_OLDEST:
+        EventMachinePair<T, S> oldestPair = eventQueue.poll();
+        if (oldestPair != null) {
+          // the received event takes the room of the oldest one so the depth is unchanged
+          StateEvent<S> oldestEvent = dequeueHandler.apply(oldestPair.getStateEvent());
+          CompletableFuture<State<T, S>> oldestCompletion = oldestPair.getCompletion();
+          drop(oldestEvent, oldestPair.getStateMachine());
+          eventMachinePairPool.give(oldestPair);
+          if (oldestCompletion != null) {
+            oldestCompletion.completeExceptionally(new IllegalStateException(
+                "StateEvent [" + oldestEvent.getName() + "] was dropped"));
           }
-        } catch (Exception e) {
-          unexpectedFlowListener.onExceptionDuringEventProcessing(event, machine,
-              Thread.currentThread(), e);
-        } finally {
-          eventMachinePairPool.give(consumedPair);
+          return true;
+        }
+        return tryAdmit() || drop(stateEvent, stateMachine);
+      case BLOCK:
+      case CALLER_RUNS:
+        if (TimingWheel.isTimerThread() || drainTask.isDraining()) {
+          /* a StateEvent fired by a timer must not hold up the shared timer thread and one that is
+            fired while the queue is drained would wait for itself */
+          return drop(stateEvent, stateMachine);
         }
+        return awaitAdmission(backpressurePolicy == BackpressurePolicy.CALLER_RUNS)
+            || drop(stateEvent, stateMachine);
+      case REJECT:
+        droppedEventCount.incrementAndGet();
+        return false;
+      default:
+        return drop(stateEvent, stateMachine);
+    }
+  }
+
+  private boolean tryAdmit() {
+    return admitBatch(1) == 1;
+  }
+
+  private boolean awaitAdmission(boolean callerRuns) {
+    long deadline = System.nanoTime() + blockTimeoutNanos;
+    do {
+      if (!callerRuns || !drainTask.tryDrain(callerQuantum)) {
+        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+      }
+      if (tryAdmit()) {
+        return true;
       }
-    });
+    } while (System.nanoTime() - deadline < 0);
+    return false;
   }
 
-  @Override
-  public void setStates(Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states) {
-    this.transitionTask.setStates(states);
+  private boolean drop(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    droppedEventCount.incrementAndGet();
+    unexpectedFlowListener.onEventDropped(stateEvent, stateMachine);
+    return false;
+  }
+
+  private void process(EventMachinePair<T, S> consumedPair) {
+    StateEvent<S> queuedEvent = consumedPair.getStateEvent();
+    StateEvent<S> dequeuedEvent = dequeueHandler.apply(queuedEvent);
+    StateEvent<S> event =
+        dequeuedEvent == queuedEvent ? consumedPair.getDeliveredEvent() : dequeuedEvent;
+    GenericStateMachine<T, S> machine = consumedPair.getStateMachine();
+    CompletableFuture<State<T, S>> completion = consumedPair.getCompletion();
+    try {
+      if (!machine.isEnded()) {
+        transitionTask.execute(event, machine, completion);
+      } else {
+        TransitionTask.fail(completion, new IllegalStateException("The state machine has ended"));
+      }
+    } catch (Exception e) {
+      unexpectedFlowListener.onExceptionDuringEventProcessing(event, machine,
+          Thread.currentThread(), e);
+      TransitionTask.fail(completion, e);
+    } finally {
+      eventMachinePairPool.give(consumedPair);
+    }
+  }
+
+  static <S> StateEvent<S> copyOf(StateEvent<S> stateEvent) {
+    StateEvent<S> identity = PooledStateEvent.identityOf(stateEvent);
+    StateEvent<S> copy = identity instanceof EnumStateEvent<S, ?> enumStateEvent
+        ? new EnumStateEvent<>(enumStateEvent) : new NamedStateEvent<>(identity);
+    copy.setPayload(stateEvent.getPayload());
+    return copy;
   }
 
   protected Queue<EventMachinePair<T, S>> getEventQueue() {
     return eventQueue;
   }
 
+  @Override
+  public void retain() {
+    references.retain();
+  }
+
+  @Override
+  public void release() {
+    references.release();
+  }
+
   @Override
   public UnexpectedFlowListener<T, S> getUnexpectedFlowListener() {
     return unexpectedFlowListener;
@@ -7,12 +7,17 @@ package com.webotech.statemachine.strategy;
 import com.webotech.statemachine.UnexpectedFlowListener;
 import com.webotech.statemachine.api.StateEvent;
 import com.webotech.statemachine.api.StateMachine;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class DefaultUnexpectedFlowListener<T, S> implements UnexpectedFlowListener<T, S> {
 
   private static final Logger logger = LogManager.getLogger(DefaultUnexpectedFlowListener.class);
+  private static final long DROP_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private final AtomicLong droppedSinceLog = new AtomicLong();
+  private final AtomicLong nextDropLogNanos = new AtomicLong(System.nanoTime());
 
   @Override
   public void onExceptionDuringEventProcessing(StateEvent<S> stateEvent,
@@ -30,4 +35,20 @@ public class DefaultUnexpectedFlowListener<T, S> implements UnexpectedFlowListen
   public void onEventBeforeMachineStart(StateEvent<S> stateEvent, StateMachine<T, S> stateMachine) {
     logger.warn("Event {} received before state machine has started", stateEvent);
   }
+
+  /**
+   * Logs at most one warning per second, with the number of {@link StateEvent}s dropped since the
+   * previous warning, so a full queue does not flood the log from the firing threads.
+   */
+  @Override
+  public void onEventDropped(StateEvent<S> stateEvent, StateMachine<T, S> stateMachine) {
+    droppedSinceLog.incrementAndGet();
+    long now = System.nanoTime();
+    long logAt = nextDropLogNanos.get();
+    if (now - logAt >= 0 && nextDropLogNanos.compareAndSet(logAt,
+        now + DROP_LOG_INTERVAL_NANOS)) {
+      logger.warn("Event {} dropped since the queue is full, {} dropped since the last warning",
+          stateEvent, droppedSinceLog.getAndSet(0));
+    }
+  }
 }
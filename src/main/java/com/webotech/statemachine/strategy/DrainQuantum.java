@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+/**
+ * Bounds how many {@link com.webotech.statemachine.api.StateEvent}s (maxEvents) a drain task
+ * processes, and for how long (maxNanos), before it is rescheduled behind the other tasks of its
+ * executor. So {@link com.webotech.statemachine.api.StateMachine}s that share an executor take
+ * turns and a busy one can not hold on to a thread.
+ */
+record DrainQuantum(int maxEvents, long maxNanos) {
+
+  static final DrainQuantum UNBOUNDED = new DrainQuantum(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+  /**
+   * @return a {@link DrainQuantum} that is weight times larger, for weighted round-robin
+   */
+  DrainQuantum weighted(int weight) {
+    if (weight <= 1) {
+      return this;
+    }
+    return new DrainQuantum((int) Math.min(Integer.MAX_VALUE, (long) maxEvents * weight),
+        maxNanos > Long.MAX_VALUE / weight ? Long.MAX_VALUE : maxNanos * weight);
+  }
+
+  boolean isTimed() {
+    return maxNanos != Long.MAX_VALUE;
+  }
+
+  /**
+   * @return the time a drain task starts, only read when the {@link DrainQuantum} is timed
+   */
+  long start() {
+    return isTimed() ? System.nanoTime() : 0;
+  }
+
+  /**
+   * @return true if a drain task that started at startNanos and has processed the number of
+   * events should be rescheduled
+   */
+  boolean isExhausted(int processed, long startNanos) {
+    return processed >= maxEvents || isTimed() && System.nanoTime() - startNanos >= maxNanos;
+  }
+}
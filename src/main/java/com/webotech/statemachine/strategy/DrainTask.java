@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The task that drains the queued {@link com.webotech.statemachine.api.StateEvent}s of a strategy
+ * on its executor. At most one drain task is scheduled at a time, so a burst of
+ * {@link com.webotech.statemachine.api.StateEvent}s is processed by a single task rather than one
+ * task per {@link com.webotech.statemachine.api.StateEvent}, and it is the only consumer of the
+ * queue.
+ */
+abstract class DrainTask implements Runnable {
+
+  private static final ThreadLocal<DrainTask> DRAINING = new ThreadLocal<>();
+  private final Executor executor;
+  private final DrainQuantum drainQuantum;
+  private final AtomicBoolean drainScheduled;
+
+  DrainTask(Executor executor, DrainQuantum drainQuantum) {
+    this.executor = executor;
+    this.drainQuantum = drainQuantum;
+    this.drainScheduled = new AtomicBoolean(false);
+  }
+
+  /**
+   * Processes the next queued {@link com.webotech.statemachine.api.StateEvent}
+   *
+   * @return false if there is nothing queued
+   */
+  abstract boolean processNext();
+
+  abstract boolean isEmpty();
+
+  /**
+   * Called when the drain task stops without rescheduling itself.
+   */
+  void onDrained() {
+    // nothing to do by default
+  }
+
+  /**
+   * Called when the executor does not accept the drain task, by then the drain task can be
+   * scheduled again. By default the exception is thrown.
+   */
+  void onRejected(RejectedExecutionException e) {
+    throw e;
+  }
+
+  /**
+   * Submits this task to the executor unless it is already scheduled.
+   */
+  void schedule() {
+    if (drainScheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        drainScheduled.set(false);
+        onRejected(e);
+      }
+    }
+  }
+
+  /**
+   * Drains on the calling thread, bound by the quantum, unless this task is already scheduled.
+   *
+   * @return false if this task is already scheduled
+   */
+  boolean tryDrain(DrainQuantum quantum) {
+    if (drainScheduled.compareAndSet(false, true)) {
+      drain(quantum);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the calling thread is draining this task, for example when a
+   * {@link com.webotech.statemachine.api.StateAction} fires a
+   * {@link com.webotech.statemachine.api.StateEvent} while it is processed
+   */
+  boolean isDraining() {
+    return DRAINING.get() == this;
+  }
+
+  @Override
+  public void run() {
+    drain(drainQuantum);
+  }
+
+  /**
+   * Processes queued events until the queue is empty or the quantum is exhausted, in which case
+   * this task is scheduled again behind the other tasks of the executor. The flag is cleared before
+   * the queue is checked again so that an event that is queued while the flag is being cleared is
+   * either drained here or schedules a new drain task.
+   */
+  private void drain(DrainQuantum quantum) {
+    DrainTask draining = DRAINING.get();
+    DRAINING.set(this);
+    try {
+      int processed = 0;
+      long startNanos = quantum.start();
+      boolean exhausted = false;
+      do {
+        try {
+          while (!exhausted && processNext()) {
+            exhausted = quantum.isExhausted(++processed, startNanos);
+          }
+        } finally {
+          drainScheduled.set(false);
+        }
+      } while (!exhausted && !isEmpty() && drainScheduled.compareAndSet(false, true));
+      if (exhausted && !isEmpty()) {
+        schedule();
+        return;
+      }
+      onDrained();
+    } finally {
+      DRAINING.set(draining);
+    }
+  }
+}
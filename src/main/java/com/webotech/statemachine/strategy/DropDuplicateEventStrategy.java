@@ -8,8 +8,10 @@ import com.webotech.statemachine.GenericStateMachine;
 import com.webotech.statemachine.UnexpectedFlowListener;
 import com.webotech.statemachine.api.State;
 import com.webotech.statemachine.api.StateEvent;
-import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -18,6 +20,8 @@ public class DropDuplicateEventStrategy<T, S> implements EventProcessingStrategy
   private static final Logger logger = LogManager.getLogger(DropDuplicateEventStrategy.class);
   public static final String EVENT_ALREADY_IN_QUEUE_WILL_DROP_IT = "Event [{}] already in queue, will drop it";
   private final DefaultEventStrategy<T, S> defaultStrategy;
+  private final Set<StateEvent<S>> queuedEvents;
+  private final AtomicLong duplicateEventCount;
 
   /**
    * An {@link EventProcessingStrategy} that transitions state atomically. Any {@link StateEvent}
@@ -25,6 +29,10 @@ public class DropDuplicateEventStrategy<T, S> implements EventProcessingStrategy
    * dropped. {@link StateEvent}s in the queue are processed in sequence, in
    * the order they were received.
    * <p>
+   * The {@link StateEvent}s in the queue are indexed as they are queued and taken off the queue,
+   * so checking for a duplicate takes constant time however long the queue is. Dropped duplicates
+   * are counted, see {@link #getDuplicateEventCount()}, and only logged at debug level.
+   * <p>
    * This {@link EventProcessingStrategy} is backed by an unbounded, lock-free and thread-safe
    * queue. In the case where the sustained rate of {@link StateEvent}s received is higher than the
    * rate they are being processed (slow consumption), it will ultimately lead to memory
@@ -32,6 +40,12 @@ public class DropDuplicateEventStrategy<T, S> implements EventProcessingStrategy
    */
   public DropDuplicateEventStrategy(DefaultEventStrategy<T, S> defaultEventStrategy) {
     this.defaultStrategy = defaultEventStrategy;
+    this.queuedEvents = ConcurrentHashMap.newKeySet();
+    this.duplicateEventCount = new AtomicLong();
+    this.defaultStrategy.setDequeueHandler(stateEvent -> {
+      queuedEvents.remove(stateEvent);
+      return stateEvent;
+    });
   }
 
   @Override
@@ -41,17 +55,59 @@ public class DropDuplicateEventStrategy<T, S> implements EventProcessingStrategy
 
   @Override
   public void processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
-    Queue<EventMachinePair<T, S>> eventQueue = defaultStrategy.getEventQueue();
-    if (eventQueue.stream().anyMatch(en -> en.getStateEvent().equals(stateEvent))) {
-      logger.info(EVENT_ALREADY_IN_QUEUE_WILL_DROP_IT, stateEvent);
-      return;
+    tryProcessEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    return processEvent(stateEvent, stateMachine, null);
+  }
+
+  @Override
+  public boolean processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    StateEvent<S> identity = PooledStateEvent.identityOf(stateEvent);
+    if (!queuedEvents.add(identity)) {
+      duplicateEventCount.incrementAndGet();
+      logger.debug(EVENT_ALREADY_IN_QUEUE_WILL_DROP_IT, stateEvent);
+      return false;
+    }
+    if (!defaultStrategy.processEvent(stateEvent, stateMachine, completion)) {
+      queuedEvents.remove(identity);
+      return false;
     }
-    defaultStrategy.processEvent(stateEvent, stateMachine);
+    return true;
+  }
+
+  /**
+   * @return the number of {@link StateEvent}s that were dropped because they were already queued
+   */
+  public long getDuplicateEventCount() {
+    return duplicateEventCount.get();
+  }
+
+  @Override
+  public int getRemainingCapacity(GenericStateMachine<T, S> stateMachine) {
+    return defaultStrategy.getRemainingCapacity(stateMachine);
+  }
+
+  /**
+   * @return the number of {@link StateEvent}s that were not queued, including duplicates
+   */
+  @Override
+  public long getDroppedEventCount() {
+    return defaultStrategy.getDroppedEventCount() + duplicateEventCount.get();
+  }
+
+  @Override
+  public void retain() {
+    defaultStrategy.retain();
   }
 
   @Override
-  public void setStates(Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states) {
-    defaultStrategy.setStates(states);
+  public void release() {
+    defaultStrategy.release();
   }
 
   @Override
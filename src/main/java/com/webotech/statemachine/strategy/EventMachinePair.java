@@ -5,32 +5,90 @@
 package com.webotech.statemachine.strategy;
 
 import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.api.State;
 import com.webotech.statemachine.api.StateEvent;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Encapsulates the {@link com.webotech.statemachine.api.StateEvent} and
  * {@link GenericStateMachine} objects that are exchanged between publisher
  * and consumer threads. This is intentionally mutable as it used for object pooling.
+ * <p>
+ * The payload of the {@link StateEvent} is taken when it is set, so the client can go on to set a
+ * different payload on the same {@link StateEvent} instance. It is delivered with a
+ * {@link PooledStateEvent} that is reused with this object, rather than with a copy of the
+ * {@link StateEvent}.
  */
 public class EventMachinePair<T, S> {
 
   private StateEvent<S> stateEvent;
+  private S payload;
+  private PooledStateEvent<S> pooledStateEvent;
   private GenericStateMachine<T, S> stateMachine;
+  private CompletableFuture<State<T, S>> completion;
 
   EventMachinePair() {
     super();
   }
 
+  /**
+   * A {@link PooledStateEvent} that is fired again, by a
+   * {@link com.webotech.statemachine.api.StateAction} it was delivered to, is unwrapped so that
+   * this object does not hold a view that is reused with another object.
+   */
   void setEventMachinePair(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
-    this.stateEvent = stateEvent;
+    this.stateEvent = PooledStateEvent.identityOf(stateEvent);
+    this.payload = stateEvent == null ? null : stateEvent.getPayload();
     this.stateMachine = stateMachine;
+    this.completion = null;
+  }
+
+  /**
+   * Sets the {@link CompletableFuture} that is completed when the {@link StateEvent} has been
+   * processed, see {@link com.webotech.statemachine.api.StateMachine#fireAsync(StateEvent)}
+   */
+  void setCompletion(CompletableFuture<State<T, S>> completion) {
+    this.completion = completion;
+  }
+
+  CompletableFuture<State<T, S>> getCompletion() {
+    return completion;
   }
 
   StateEvent<S> getStateEvent() {
     return stateEvent;
   }
 
+  /**
+   * @return the {@link StateEvent} with the payload it had when it was set, it is only valid until
+   * this object is reused
+   */
+  StateEvent<S> getDeliveredEvent() {
+    if (payload == null) {
+      return stateEvent;
+    }
+    if (pooledStateEvent == null) {
+      pooledStateEvent = new PooledStateEvent<>();
+    }
+    pooledStateEvent.set(stateEvent, payload);
+    return pooledStateEvent;
+  }
+
   GenericStateMachine<T, S> getStateMachine() {
     return stateMachine;
   }
+
+  /**
+   * Lets go of everything this object refers to, so that an object that waits to be reused does
+   * not keep an ended {@link GenericStateMachine}, a payload or a completion reachable.
+   */
+  void clear() {
+    this.stateEvent = null;
+    this.payload = null;
+    this.stateMachine = null;
+    this.completion = null;
+    if (pooledStateEvent != null) {
+      pooledStateEvent.set(null, null);
+    }
+  }
 }
@@ -4,33 +4,137 @@
 
 package com.webotech.statemachine.strategy;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * Simple (and naive) object pool - stores objects in an unbound thread-safe {@link Queue}
+ * A bounded, lock-free and thread-safe object pool that stores objects in a pre-allocated array,
+ * so taking objects from it and giving them back does not allocate. Objects are taken and given
+ * with a compare-and-set on the head or tail sequence, each slot has its own sequence that tells
+ * whether it holds an object for the current lap of the array.
+ * <p>
+ * When the pool is empty a new object is returned (a miss) and when it is full an object that is
+ * given back is left for the garbage collector (an overflow), so the pool never retains more than
+ * its capacity after a burst. In a steady state every take is a hit, the counters can be used to
+ * check that processing is garbage-free.
  */
 public class EventMachinePairPool<T, S> {
 
-  private final Queue<EventMachinePair<T, S>> pool = new ConcurrentLinkedQueue<>();
+  static final int DEFAULT_CAPACITY = 1024;
+  private final EventMachinePair<T, S>[] pairs;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong head;
+  private final AtomicLong tail;
+  private final AtomicLong hitCount;
+  private final AtomicLong missCount;
+  private final AtomicLong overflowCount;
+
+  public EventMachinePairPool() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * The capacity is rounded up to a power of two, if it is not positive {@link #DEFAULT_CAPACITY}
+   * is used.
+   */
+  public EventMachinePairPool(int capacity) {
+    int size = RingBufferEventStrategy.capacityFor(capacity);
+    @SuppressWarnings("unchecked")
+    EventMachinePair<T, S>[] pairs = (EventMachinePair<T, S>[]) new EventMachinePair<?, ?>[size];
+    this.pairs = pairs;
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      this.sequences.set(i, i);
+    }
+    this.mask = size - 1;
+    this.head = new AtomicLong();
+    this.tail = new AtomicLong();
+    this.hitCount = new AtomicLong();
+    this.missCount = new AtomicLong();
+    this.overflowCount = new AtomicLong();
+  }
 
   /**
    * Takes an object out of the pool or returns a new one if the pool is empty
    */
   EventMachinePair<T, S> take() {
-    EventMachinePair<T, S> eventMachinePair = pool.poll();
-    if (eventMachinePair == null) {
-      eventMachinePair = new EventMachinePair<>();
+    long sequence = head.get();
+    while (true) {
+      int index = (int) sequence & mask;
+      long difference = sequences.get(index) - (sequence + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(sequence, sequence + 1)) {
+          EventMachinePair<T, S> eventMachinePair = pairs[index];
+          pairs[index] = null;
+          sequences.set(index, sequence + pairs.length);
+          hitCount.incrementAndGet();
+          return eventMachinePair;
+        }
+        sequence = head.get();
+      } else if (difference < 0) {
+        missCount.incrementAndGet();
+        return new EventMachinePair<>();
+      } else {
+        sequence = head.get();
+      }
     }
-    return eventMachinePair;
   }
 
   /**
-   * Resets the state of an object and gives it back to the pool
+   * Gives an object back to the pool, it is cleared before it is published and dropped if the
+   * pool is full
    */
   void give(EventMachinePair<T, S> eventMachinePair) {
-    if (eventMachinePair != null) {
-      pool.offer(eventMachinePair);
+    if (eventMachinePair == null) {
+      return;
+    }
+    eventMachinePair.clear();
+    long sequence = tail.get();
+    while (true) {
+      int index = (int) sequence & mask;
+      long difference = sequences.get(index) - sequence;
+      if (difference == 0) {
+        if (tail.compareAndSet(sequence, sequence + 1)) {
+          pairs[index] = eventMachinePair;
+          sequences.set(index, sequence + 1);
+          return;
+        }
+        sequence = tail.get();
+      } else if (difference < 0) {
+        overflowCount.incrementAndGet();
+        return;
+      } else {
+        sequence = tail.get();
+      }
     }
   }
+
+  /**
+   * @return the maximum number of objects that the pool holds
+   */
+  public int getCapacity() {
+    return pairs.length;
+  }
+
+  /**
+   * @return the number of objects that were taken out of the pool
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return the number of objects that were allocated because the pool was empty
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return the number of objects that were dropped because the pool was full
+   */
+  public long getOverflowCount() {
+    return overflowCount.get();
+  }
 }
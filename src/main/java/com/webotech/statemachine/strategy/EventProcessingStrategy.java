@@ -8,7 +8,9 @@ import com.webotech.statemachine.GenericStateMachine;
 import com.webotech.statemachine.UnexpectedFlowListener;
 import com.webotech.statemachine.api.State;
 import com.webotech.statemachine.api.StateEvent;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Encapsulates strategies for processing state machine transitions.
@@ -33,8 +35,133 @@ public interface EventProcessingStrategy<T, S> {
   /**
    * Sets the {@link Map} of states/event that are configured in the
    * {@link com.webotech.statemachine.api.StateMachine}
+   *
+   * @deprecated transitions are resolved with the {@link com.webotech.statemachine.TransitionTable}
+   * of the {@link GenericStateMachine} that the {@link StateEvent} is processed for, see
+   * {@link GenericStateMachine#getTransitionTable()}, so the states are not needed and this does
+   * nothing.
    */
-  void setStates(Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states);
+  @Deprecated
+  default void setStates(Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states) {
+    // the states are compiled into the TransitionTable of each GenericStateMachine
+  }
+
+  /**
+   * As {@link #processEvent(StateEvent, GenericStateMachine)} where the caller is told if the
+   * stateEvent was accepted. By default every stateEvent is accepted, strategies with a bound queue
+   * override it.
+   *
+   * @return false if the stateEvent was not accepted for processing, for example when it is
+   * dropped or rejected since the queue is full
+   */
+  default boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    processEvent(stateEvent, stateMachine);
+    return true;
+  }
+
+  /**
+   * As {@link #tryProcessEvent(StateEvent, GenericStateMachine)} where the completion is completed
+   * when the {@link StateEvent} has been processed, with the {@link State} that was transitioned to,
+   * or exceptionally if it could not be processed. It is used by
+   * {@link com.webotech.statemachine.api.StateMachine#fireAsync(StateEvent)}, by default it is not
+   * supported.
+   *
+   * @return true if the {@link StateEvent} was accepted for processing
+   */
+  default boolean processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    completion.completeExceptionally(new UnsupportedOperationException(
+        getClass().getSimpleName() + " does not support completing processed events"));
+    return false;
+  }
+
+  /**
+   * Processes a batch of {@link StateEvent}s in the order of the {@link Collection}'s iterator.
+   * Implementations can override it to queue the batch in one go.
+   *
+   * @return the number of stateEvents that were accepted for processing
+   */
+  default int processEvents(Collection<? extends StateEvent<S>> stateEvents,
+      GenericStateMachine<T, S> stateMachine) {
+    int accepted = 0;
+    for (StateEvent<S> stateEvent : stateEvents) {
+      if (tryProcessEvent(stateEvent, stateMachine)) {
+        accepted++;
+      }
+    }
+    return accepted;
+  }
+
+  /**
+   * @return how many more {@link StateEvent}s for the stateMachine fit in the queue before it is
+   * full, {@link Integer#MAX_VALUE} if the queue is not bound. It can be used to request
+   * {@link StateEvent}s from a source at the rate they can be queued.
+   */
+  default int getRemainingCapacity(GenericStateMachine<T, S> stateMachine) {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * @return the number of {@link StateEvent}s that were not processed because the queue was full.
+   */
+  default long getDroppedEventCount() {
+    return 0;
+  }
+
+  /**
+   * {@link StateEvent}s that are scheduled, with
+   * {@link com.webotech.statemachine.api.StateMachine#fireAfter(java.time.Duration, StateEvent)} or
+   * by a state timeout, are fired on the thread of the shared
+   * {@link com.webotech.statemachine.util.TimingWheel}.
+   *
+   * @return false if the strategy can not be fired from that thread, for example because it
+   * processes {@link StateEvent}s on the firing thread and is not thread-safe
+   */
+  default boolean supportsScheduledEvents() {
+    return true;
+  }
+
+  /**
+   * Called by each {@link com.webotech.statemachine.api.StateMachine} that is built with this
+   * strategy.
+   *
+   * @throws IllegalStateException if the strategy has been released
+   */
+  default void retain() {
+    // nothing to count by default
+  }
+
+  /**
+   * Called by a {@link GenericStateMachine} once it has ended, either by a transition or by
+   * {@link com.webotech.statemachine.api.StateMachine#stop()}, so the strategy can let go of what it
+   * holds for it. {@link StateEvent}s can still be queued for it.
+   */
+  default void onEnded(GenericStateMachine<T, S> stateMachine) {
+    // nothing is held per state machine by default
+  }
+
+  /**
+   * Called by a {@link com.webotech.statemachine.api.StateMachine} when it is stopped gracefully,
+   * once every {@link com.webotech.statemachine.api.StateMachine} that retained this strategy has
+   * released it, the resources the strategy owns (like an executor that was created by
+   * {@link EventProcessingStrategyFactory}) are released. An executor that was supplied is not shut
+   * down.
+   */
+  default void release() {
+    // nothing to release by default
+  }
+
+  /**
+   * The {@link StateEvent} that is delivered to a {@link com.webotech.statemachine.api.StateAction}
+   * can be a view that is reused once the action returns, see
+   * {@link com.webotech.statemachine.api.StateAction}.
+   *
+   * @return the stateEvent, or a copy of it that stays valid after the action returns
+   */
+  static <S> StateEvent<S> detach(StateEvent<S> stateEvent) {
+    return PooledStateEvent.detach(stateEvent);
+  }
 
   /**
    * @return the {@link UnexpectedFlowListener} so it can be shared with other subsystems.
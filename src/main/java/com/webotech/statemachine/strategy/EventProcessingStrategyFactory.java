@@ -8,11 +8,20 @@ import com.webotech.statemachine.UnexpectedFlowListener;
 import com.webotech.statemachine.api.StateEvent;
 import com.webotech.statemachine.api.StateMachine;
 import com.webotech.statemachine.util.Threads;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -45,9 +54,160 @@ public class EventProcessingStrategyFactory {
     return new DropDuplicateEventStrategy<>(newDefaultStrategy(config));
   }
 
+  @SuppressWarnings("unchecked")
+  public static <T, S> EventProcessingStrategy<T, S> createConflatingStrategy() {
+    return createConflatingStrategy(basicConfig);
+  }
+
+  public static <T, S> EventProcessingStrategy<T, S> createConflatingStrategy(
+      Config<T, S> config) {
+    return new ConflatingEventStrategy<>(newDefaultStrategy(config));
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T, S> EventProcessingStrategy<T, S> createPriorityLaneStrategy() {
+    return createPriorityLaneStrategy(basicConfig);
+  }
+
+  /**
+   * Creates a {@link PriorityLaneEventStrategy} with the priority lanes of the {@link Config}, the
+   * max queue size bounds its default lane. The event queue and backpressure policy of the
+   * {@link Config} are not used.
+   */
+  public static <T, S> EventProcessingStrategy<T, S> createPriorityLaneStrategy(
+      Config<T, S> config) {
+    SharedExecutor sharedExecutor = config.shareExecutor();
+    return new PriorityLaneEventStrategy<>(config.getUnmappedEventHandler(),
+        sharedExecutor.executor(), config.getUnexpectedFlowListener(),
+        new EventMachinePairPool<>(config.getPoolCapacity()), config.getMaxQueueSize(),
+        config.getPriorityLanes(), config.getDrainQuantum(), sharedExecutor.releaseTask());
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T, S> EventProcessingStrategy<T, S> createDedicatedThreadStrategy() {
+    return createDedicatedThreadStrategy(basicConfig);
+  }
+
+  /**
+   * Creates a {@link DedicatedThreadEventStrategy} with its own consumer thread that is named with
+   * the thread name of the {@link Config} and waits with a new instance of its
+   * {@link IdleStrategy}. The executor and event queue of the {@link Config} are not used.
+   */
+  public static <T, S> EventProcessingStrategy<T, S> createDedicatedThreadStrategy(
+      Config<T, S> config) {
+    return new DedicatedThreadEventStrategy<>(config.getUnmappedEventHandler(),
+        config.newThreadFactory(), config.getUnexpectedFlowListener(),
+        new EventMachinePairPool<>(config.getPoolCapacity()), config.getMaxQueueSize(),
+        config.newIdleStrategy());
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T, S> EventProcessingStrategy<T, S> createCallingThreadStrategy() {
+    return createCallingThreadStrategy(basicConfig);
+  }
+
+  /**
+   * Creates a {@link CallingThreadEventStrategy} that processes {@link StateEvent}s on the thread
+   * that fires them. Only the unmapped event handler and unexpected flow listener of the
+   * {@link Config} are used.
+   */
+  public static <T, S> EventProcessingStrategy<T, S> createCallingThreadStrategy(
+      Config<T, S> config) {
+    return new CallingThreadEventStrategy<>(config.getUnmappedEventHandler(),
+        config.getUnexpectedFlowListener());
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T, S> EventProcessingStrategy<T, S> createRingBufferStrategy() {
+    return createRingBufferStrategy(basicConfig);
+  }
+
+  /**
+   * Creates a {@link RingBufferEventStrategy}, its capacity is the max queue size of the
+   * {@link Config} (rounded up to a power of two). The event queue of the {@link Config} is not
+   * used.
+   */
+  public static <T, S> EventProcessingStrategy<T, S> createRingBufferStrategy(
+      Config<T, S> config) {
+    SharedExecutor sharedExecutor = config.shareExecutor();
+    return new RingBufferEventStrategy<>(config.getUnmappedEventHandler(),
+        sharedExecutor.executor(), config.getUnexpectedFlowListener(), config.getMaxQueueSize(),
+        config.getDrainQuantum(), sharedExecutor.releaseTask());
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T, S> EventProcessingStrategy<T, S> createShardedStrategy() {
+    return createShardedStrategy(new Config<>());
+  }
+
+  /**
+   * Creates a {@link ShardedEventStrategy} that is intended to be shared by many
+   * {@link StateMachine}s. Each shard is a {@link DefaultEventStrategy} with its own queue and its
+   * own single thread executor, the number of shards is the shard count of the {@link Config}. The
+   * executor and event queue of the {@link Config} are not used.
+   */
+  public static <T, S> EventProcessingStrategy<T, S> createShardedStrategy(Config<T, S> config) {
+    List<DefaultEventStrategy<T, S>> shards = new ArrayList<>();
+    for (int i = 0; i < config.getShardCount(); i++) {
+      ExecutorService executor = config.newExecutor();
+      shards.add(new DefaultEventStrategy<>(config.getUnmappedEventHandler(), executor,
+          config.getUnexpectedFlowListener(), new EventMachinePairPool<>(config.getPoolCapacity()),
+          config.getMaxQueueSize(), new ConcurrentLinkedQueue<>(), config.getBackpressurePolicy(),
+          config.getBlockTimeout(), config.getDrainQuantum(), executor::shutdown));
+    }
+    return new ShardedEventStrategy<>(shards);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T, S> EventProcessingStrategy<T, S> createMailboxStrategy() {
+    return createMailboxStrategy(basicConfig);
+  }
+
+  /**
+   * Creates a {@link MailboxEventStrategy} that is intended to be shared by many
+   * {@link StateMachine}s, each with its own mailbox. Unless the {@link Config} has an executor,
+   * all the strategies created with the same {@link Config} share a work-stealing
+   * {@link ForkJoinPool} in async mode with a thread per available processor. The max queue size
+   * bounds each mailbox, the event queue of the {@link Config} is not used.
+   */
+  public static <T, S> EventProcessingStrategy<T, S> createMailboxStrategy(Config<T, S> config) {
+    SharedExecutor sharedExecutor = config.shareWorkStealingExecutor();
+    return new MailboxEventStrategy<>(config.getUnmappedEventHandler(), sharedExecutor.executor(),
+        config.getUnexpectedFlowListener(), new EventMachinePairPool<>(config.getPoolCapacity()),
+        config.getMaxQueueSize(), config.getDrainQuantum(), config.getDrainWeigher(),
+        sharedExecutor.releaseTask());
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T, S> EventProcessingStrategy<T, S> createVirtualThreadStrategy() {
+    return createVirtualThreadStrategy(basicConfig);
+  }
+
+  /**
+   * Creates a {@link DefaultEventStrategy} that processes the {@link StateEvent}s of each
+   * {@link StateMachine} on a virtual thread, so a very large number of mostly idle
+   * {@link StateMachine}s do not need a platform thread each and {@link StateEvent}s can be
+   * processed with blocking I/O. Unless the {@link Config} has an executor, all the strategies
+   * created with the same {@link Config} share an executor that starts a new virtual thread for
+   * each task. It needs Java 21 or later.
+   *
+   * @throws UnsupportedOperationException if virtual threads are not supported
+   */
+  public static <T, S> EventProcessingStrategy<T, S> createVirtualThreadStrategy(
+      Config<T, S> config) {
+    SharedExecutor sharedExecutor = config.shareVirtualThreadExecutor();
+    return new DefaultEventStrategy<>(config.getUnmappedEventHandler(), sharedExecutor.executor(),
+        config.getUnexpectedFlowListener(), new EventMachinePairPool<>(config.getPoolCapacity()),
+        config.getMaxQueueSize(), config.getEventQueue(), config.getBackpressurePolicy(),
+        config.getBlockTimeout(), config.getDrainQuantum(), sharedExecutor.releaseTask());
+  }
+
   private static <T, S> DefaultEventStrategy<T, S> newDefaultStrategy(Config<T, S> config) {
-    return new DefaultEventStrategy<>(config.getUnmappedEventHandler(), config.getExecutor(),
-        config.getUnexpectedFlowListener(), config.getMaxQueueSize(), config.getEventQueue());
+    SharedExecutor sharedExecutor = config.shareExecutor();
+    return new DefaultEventStrategy<>(config.getUnmappedEventHandler(), sharedExecutor.executor(),
+        config.getUnexpectedFlowListener(), new EventMachinePairPool<>(config.getPoolCapacity()),
+        config.getMaxQueueSize(), config.getEventQueue(), config.getBackpressurePolicy(),
+        config.getBlockTimeout(), config.getDrainQuantum(), sharedExecutor.releaseTask());
   }
 
   /**
@@ -62,10 +222,21 @@ public class EventProcessingStrategyFactory {
     private static final String LOG_UNHANDLED_EXCEPTION = "Unhandled exception in thread {}";
     private BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler;
     private ExecutorService executor;
+    private SharedExecutor sharedExecutor;
+    private SharedExecutor sharedVirtualThreadExecutor;
+    private SharedExecutor sharedWorkStealingExecutor;
     private UnexpectedFlowListener<T, S> unexpectedFlowListener;
     private int maxQueueSize = -1;
     private String threadName;
+    private int shardCount = Runtime.getRuntime().availableProcessors();
     private Queue<EventMachinePair<T, S>> eventQueue;
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.DROP_NEWEST;
+    private Duration blockTimeout = Duration.ofSeconds(1);
+    private int poolCapacity = EventMachinePairPool.DEFAULT_CAPACITY;
+    private Supplier<? extends IdleStrategy> idleStrategySupplier = BackoffIdleStrategy::new;
+    private DrainQuantum drainQuantum = DrainQuantum.UNBOUNDED;
+    private ToIntFunction<? super StateMachine<T, S>> drainWeigher = stateMachine -> 1;
+    private final List<List<StateEvent<S>>> priorityLanes = new ArrayList<>();
 
     public Config<T, S> withExecutor(ExecutorService executor) {
       this.executor = executor;
@@ -87,7 +258,9 @@ public class EventProcessingStrategyFactory {
     /**
      * <b>Note</b> the event queue used in the {@link DefaultEventStrategy} and
      * {@link DropDuplicateEventStrategy} should be a thread-safe implementation for generic use
-     * since typically events are fired by threads owned by third party subsystems.
+     * since typically events are fired by threads owned by third party subsystems. A queue can
+     * only be used by one {@link EventProcessingStrategy}, if it is not set each strategy that is
+     * created with this {@link Config} has its own queue.
      */
     public Config<T, S> withEventQueue(Queue<EventMachinePair<T, S>> eventQueue) {
       this.eventQueue = eventQueue;
@@ -99,6 +272,98 @@ public class EventProcessingStrategyFactory {
       return this;
     }
 
+    /**
+     * The {@link BackpressurePolicy} that is applied when a bound queue is full (see
+     * {@link #withMaxQueueSize(int)}), the default is {@link BackpressurePolicy#DROP_NEWEST}. The
+     * {@link RingBufferEventStrategy} always drops the newest event.
+     */
+    public Config<T, S> withBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+      this.backpressurePolicy = backpressurePolicy;
+      return this;
+    }
+
+    /**
+     * How long a thread firing an event waits for room in a full queue when the
+     * {@link BackpressurePolicy} is {@link BackpressurePolicy#BLOCK} or
+     * {@link BackpressurePolicy#CALLER_RUNS}, the default is 1 second.
+     */
+    public Config<T, S> withBlockTimeout(Duration blockTimeout) {
+      this.blockTimeout = blockTimeout;
+      return this;
+    }
+
+    /**
+     * The number of shards (each with its own thread) of a {@link ShardedEventStrategy}, the
+     * default is the number of available processors.
+     */
+    public Config<T, S> withShardCount(int shardCount) {
+      if (shardCount < 1) {
+        throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+      }
+      this.shardCount = shardCount;
+      return this;
+    }
+
+    /**
+     * Adds a priority lane to a {@link PriorityLaneEventStrategy} for the stateEvents, each lane
+     * that is added has a lower priority than the lanes added before it.
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public final Config<T, S> withPriorityLane(StateEvent<S>... stateEvents) {
+      this.priorityLanes.add(List.of(stateEvents));
+      return this;
+    }
+
+    /**
+     * The capacity of the {@link EventMachinePairPool} of each {@link DefaultEventStrategy} (or
+     * shard) and {@link PriorityLaneEventStrategy}, the default is
+     * {@link EventMachinePairPool#DEFAULT_CAPACITY}. It should be at least the number of
+     * {@link StateEvent}s that are typically queued, so queueing them does not allocate.
+     */
+    public Config<T, S> withPoolCapacity(int poolCapacity) {
+      this.poolCapacity = poolCapacity;
+      return this;
+    }
+
+    /**
+     * Supplies the {@link IdleStrategy} of a {@link DedicatedThreadEventStrategy}, an
+     * {@link IdleStrategy} is stateful so it should supply a new instance each time, for example
+     * {@code BusySpinIdleStrategy::new}. The default is {@link BackoffIdleStrategy}.
+     */
+    public Config<T, S> withIdleStrategy(Supplier<? extends IdleStrategy> idleStrategySupplier) {
+      this.idleStrategySupplier = idleStrategySupplier;
+      return this;
+    }
+
+    /**
+     * Bounds the drain task of a strategy (or a mailbox of a {@link MailboxEventStrategy}) to
+     * process at most maxEvents {@link StateEvent}s, or to process them for at most maxTime, before
+     * it is rescheduled behind the other tasks of its executor. So {@link StateMachine}s that share
+     * an executor take turns and a busy one can not starve the others, at the cost of a task
+     * hand-off per quantum. By default a drain task runs until its queue is empty. It is not used by
+     * the {@link DedicatedThreadEventStrategy} and {@link CallingThreadEventStrategy}.
+     */
+    public Config<T, S> withDrainQuantum(int maxEvents, Duration maxTime) {
+      if (maxEvents < 1 || maxTime.isNegative() || maxTime.isZero()) {
+        throw new IllegalArgumentException(
+            "Drain quantum must be positive: " + maxEvents + " events, " + maxTime);
+      }
+      this.drainQuantum = new DrainQuantum(maxEvents, maxTime.toNanos());
+      return this;
+    }
+
+    /**
+     * The weight of each {@link StateMachine} that uses a {@link MailboxEventStrategy}, the drain
+     * quantum (see {@link #withDrainQuantum(int, Duration)}) of its mailbox is multiplied by its
+     * weight so the mailboxes are drained by weighted round-robin. The weigher is called once when
+     * the mailbox is created, the default weight is 1.
+     */
+    public Config<T, S> withDrainWeight(ToIntFunction<? super StateMachine<T, S>> drainWeigher) {
+      this.drainWeigher = drainWeigher;
+      return this;
+    }
+
     public Config<T, S> withThreadName(String threadName) {
       this.threadName = threadName;
       return this;
@@ -113,12 +378,101 @@ public class EventProcessingStrategyFactory {
     }
 
     ExecutorService getExecutor() {
-      if (executor == null) {
-        executor = Executors.newSingleThreadExecutor(
-            Threads.newNamedDaemonThreadFactory(threadName == null ? "state-machine" : threadName,
-                (t, e) -> logger.error(LOG_UNHANDLED_EXCEPTION, t.getName(), e)));
+      return shareExecutor().executor();
+    }
+
+    /**
+     * Unless this {@link Config} has an executor, the strategies created with it share a single
+     * thread executor that is shut down when they have all been released (see
+     * {@link EventProcessingStrategy#release()}), a new one is created for the strategies that are
+     * created after that.
+     *
+     * @return the retained {@link SharedExecutor}
+     */
+    synchronized SharedExecutor shareExecutor() {
+      if (executor != null) {
+        return SharedExecutor.unowned(executor);
       }
-      return executor;
+      sharedExecutor = SharedExecutor.retain(sharedExecutor, this::newExecutor);
+      return sharedExecutor;
+    }
+
+    ExecutorService newExecutor() {
+      return Executors.newSingleThreadExecutor(newThreadFactory());
+    }
+
+    ThreadFactory newThreadFactory() {
+      return Threads.newNamedDaemonThreadFactory(threadName == null ? "state-machine" : threadName,
+          (t, e) -> logger.error(LOG_UNHANDLED_EXCEPTION, t.getName(), e));
+    }
+
+    IdleStrategy newIdleStrategy() {
+      return idleStrategySupplier.get();
+    }
+
+    ExecutorService getVirtualThreadExecutor() {
+      return shareVirtualThreadExecutor().executor();
+    }
+
+    /**
+     * As {@link #shareExecutor()} for an executor that starts a new virtual thread for each task.
+     */
+    synchronized SharedExecutor shareVirtualThreadExecutor() {
+      if (executor != null) {
+        return SharedExecutor.unowned(executor);
+      }
+      sharedVirtualThreadExecutor = SharedExecutor.retain(sharedVirtualThreadExecutor,
+          () -> Threads.newNamedVirtualThreadPerTaskExecutor(
+              threadName == null ? "state-machine" : threadName,
+              (t, e) -> logger.error(LOG_UNHANDLED_EXCEPTION, t.getName(), e)));
+      return sharedVirtualThreadExecutor;
+    }
+
+    ExecutorService getWorkStealingExecutor() {
+      return shareWorkStealingExecutor().executor();
+    }
+
+    /**
+     * As {@link #shareExecutor()} for a work-stealing {@link ForkJoinPool} in async mode.
+     */
+    synchronized SharedExecutor shareWorkStealingExecutor() {
+      if (executor != null) {
+        return SharedExecutor.unowned(executor);
+      }
+      sharedWorkStealingExecutor = SharedExecutor.retain(sharedWorkStealingExecutor,
+          this::newWorkStealingExecutor);
+      return sharedWorkStealingExecutor;
+    }
+
+    private ExecutorService newWorkStealingExecutor() {
+      String name = threadName == null ? "state-machine" : threadName;
+      AtomicInteger threadNumber = new AtomicInteger();
+      return new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+            .newThread(pool);
+        thread.setName(name + "-" + threadNumber.getAndIncrement());
+        return thread;
+      }, (t, e) -> logger.error(LOG_UNHANDLED_EXCEPTION, t.getName(), e), true);
+    }
+
+    DrainQuantum getDrainQuantum() {
+      return drainQuantum;
+    }
+
+    ToIntFunction<? super StateMachine<T, S>> getDrainWeigher() {
+      return drainWeigher;
+    }
+
+    List<List<StateEvent<S>>> getPriorityLanes() {
+      return priorityLanes;
+    }
+
+    int getPoolCapacity() {
+      return poolCapacity;
+    }
+
+    int getShardCount() {
+      return shardCount;
     }
 
     UnexpectedFlowListener<T, S> getUnexpectedFlowListener() {
@@ -132,13 +486,21 @@ public class EventProcessingStrategyFactory {
       return maxQueueSize;
     }
 
+    BackpressurePolicy getBackpressurePolicy() {
+      return backpressurePolicy;
+    }
+
+    Duration getBlockTimeout() {
+      return blockTimeout;
+    }
+
     String getThreadName() {
       return threadName;
     }
 
     Queue<EventMachinePair<T, S>> getEventQueue() {
       if (eventQueue == null) {
-        eventQueue = new ConcurrentLinkedQueue<>();
+        return new ConcurrentLinkedQueue<>();
       }
       return eventQueue;
     }
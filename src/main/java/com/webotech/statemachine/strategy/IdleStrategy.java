@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+/**
+ * How a consumer thread waits when there are no {@link com.webotech.statemachine.api.StateEvent}s
+ * to process, see {@link DedicatedThreadEventStrategy}. Waiting with less latency costs more CPU,
+ * from busy spinning which burns a core to blocking which wakes up in the order of tens of
+ * microseconds.
+ * <p>
+ * An {@link IdleStrategy} is stateful and is only used by one thread, so each consumer thread
+ * needs its own instance.
+ */
+public interface IdleStrategy {
+
+  /**
+   * Called in each iteration of a consumer thread's loop with the number of
+   * {@link com.webotech.statemachine.api.StateEvent}s it processed, when it is positive the
+   * {@link IdleStrategy} is reset and it returns straight away, otherwise it waits.
+   */
+  void idle(int workCount);
+
+  /**
+   * @return true if the thread can be parked while it waits, in which case it is unparked as soon
+   * as there is something to process
+   */
+  default boolean isParking() {
+    return false;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+
+public class MailboxEventStrategy<T, S> implements EventProcessingStrategy<T, S> {
+
+  private final Map<GenericStateMachine<T, S>, Mailbox> mailboxes;
+  private final ExecutorService executor;
+  private final ReferenceCount references;
+  private final DrainQuantum drainQuantum;
+  private final ToIntFunction<? super StateMachine<T, S>> drainWeigher;
+  private final TransitionTask<T, S> transitionTask;
+  private final UnexpectedFlowListener<T, S> unexpectedFlowListener;
+  private final EventMachinePairPool<T, S> eventMachinePairPool;
+  private final int maxQueueSize;
+  private final AtomicInteger queueDepth;
+  private final AtomicLong droppedEventCount;
+
+  /**
+   * An {@link EventProcessingStrategy} that is shared by many {@link StateMachine}s, each
+   * {@link StateMachine} has its own mailbox that its {@link StateEvent}s are queued in. A mailbox
+   * with queued {@link StateEvent}s is scheduled as a drain task on the executor, there is at most
+   * one drain task per mailbox so the {@link StateEvent}s of a {@link StateMachine} transition
+   * state atomically and are processed in sequence, in the order they were received, while
+   * different {@link StateMachine}s are processed in parallel.
+   * <p>
+   * It is intended to be used with a work-stealing {@link java.util.concurrent.ForkJoinPool} in
+   * async mode (as created by
+   * {@link EventProcessingStrategyFactory#createMailboxStrategy(EventProcessingStrategyFactory.Config)}),
+   * so a large number of {@link StateMachine}s can use all the cores without a thread each.
+   * <p>
+   * If maxQueueSize is positive it bounds each mailbox, {@link StateEvent}s that do not fit are
+   * dropped as in {@link BackpressurePolicy#DROP_NEWEST}. The mailbox of a {@link StateMachine} is
+   * removed once it has ended.
+   */
+  public MailboxEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      int maxQueueSize) {
+    this(unmappedEventHandler, executor, unexpectedFlowListener, new EventMachinePairPool<>(),
+        maxQueueSize);
+  }
+
+  MailboxEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      EventMachinePairPool<T, S> eventMachinePairPool, int maxQueueSize) {
+    this(unmappedEventHandler, executor, unexpectedFlowListener, eventMachinePairPool,
+        maxQueueSize, DrainQuantum.UNBOUNDED, stateMachine -> 1, null);
+  }
+
+  /**
+   * As {@link #MailboxEventStrategy(BiConsumer, ExecutorService, UnexpectedFlowListener, int)}
+   * where the drain task of a mailbox is bound by the drainQuantum multiplied by the weight of its
+   * {@link StateMachine}, so that mailboxes are drained by weighted round-robin. The releaseTask
+   * runs when every {@link StateMachine} that retained this strategy has released it, if it is null
+   * the strategy owns nothing to release.
+   */
+  MailboxEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      EventMachinePairPool<T, S> eventMachinePairPool, int maxQueueSize,
+      DrainQuantum drainQuantum, ToIntFunction<? super StateMachine<T, S>> drainWeigher,
+      Runnable releaseTask) {
+    this.mailboxes = new ConcurrentHashMap<>();
+    this.executor = executor;
+    this.references = new ReferenceCount(releaseTask);
+    this.drainQuantum = drainQuantum;
+    this.drainWeigher = drainWeigher;
+    this.transitionTask = new TransitionTask<>(unmappedEventHandler);
+    this.unexpectedFlowListener = unexpectedFlowListener;
+    this.eventMachinePairPool = eventMachinePairPool;
+    this.maxQueueSize = maxQueueSize;
+    this.queueDepth = new AtomicInteger();
+    this.droppedEventCount = new AtomicLong();
+  }
+
+  /**
+   * @return the number of {@link StateEvent}s queued in all the mailboxes
+   */
+  @Override
+  public int getEventQueueSize() {
+    return queueDepth.get();
+  }
+
+  /**
+   * @return the room in the mailbox of the stateMachine
+   */
+  @Override
+  public int getRemainingCapacity(GenericStateMachine<T, S> stateMachine) {
+    if (maxQueueSize <= 0) {
+      return Integer.MAX_VALUE;
+    }
+    Mailbox mailbox = mailboxes.get(stateMachine);
+    return mailbox == null ? maxQueueSize : Math.max(0, maxQueueSize - mailbox.depth.get());
+  }
+
+  @Override
+  public long getDroppedEventCount() {
+    return droppedEventCount.get();
+  }
+
+  /**
+   * @return the number of {@link StateMachine}s that have a mailbox
+   */
+  public int getMailboxCount() {
+    return mailboxes.size();
+  }
+
+  @Override
+  public void processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    tryProcessEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    return processEvent(stateEvent, stateMachine, null);
+  }
+
+  @Override
+  public boolean processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    Mailbox mailbox = mailboxes.get(stateMachine);
+    if (mailbox == null) {
+      mailbox = mailboxes.computeIfAbsent(stateMachine, Mailbox::new);
+    }
+    if (mailbox.depth.incrementAndGet() > maxQueueSize && maxQueueSize > 0) {
+      mailbox.depth.decrementAndGet();
+      droppedEventCount.incrementAndGet();
+      unexpectedFlowListener.onEventDropped(stateEvent, stateMachine);
+      return false;
+    }
+    EventMachinePair<T, S> inboundPair = this.eventMachinePairPool.take();
+    /* The payload is taken with the StateEvent in case the client is
+      setting different payloads on the same event instance */
+    inboundPair.setEventMachinePair(stateEvent, stateMachine);
+    inboundPair.setCompletion(completion);
+    queueDepth.incrementAndGet();
+    mailbox.queue.offer(inboundPair);
+    mailbox.schedule();
+    return true;
+  }
+
+  private void process(EventMachinePair<T, S> consumedPair) {
+    StateEvent<S> event = consumedPair.getDeliveredEvent();
+    GenericStateMachine<T, S> machine = consumedPair.getStateMachine();
+    CompletableFuture<State<T, S>> completion = consumedPair.getCompletion();
+    try {
+      if (!machine.isEnded()) {
+        transitionTask.execute(event, machine, completion);
+      } else {
+        TransitionTask.fail(completion, new IllegalStateException("The state machine has ended"));
+      }
+    } catch (Exception e) {
+      unexpectedFlowListener.onExceptionDuringEventProcessing(event, machine,
+          Thread.currentThread(), e);
+      TransitionTask.fail(completion, e);
+    } finally {
+      eventMachinePairPool.give(consumedPair);
+    }
+  }
+
+  /**
+   * Removes the mailbox of the stateMachine, a drain task that is scheduled still drains the
+   * {@link StateEvent}s that are queued in it.
+   */
+  @Override
+  public void onEnded(GenericStateMachine<T, S> stateMachine) {
+    mailboxes.remove(stateMachine);
+  }
+
+  @Override
+  public void retain() {
+    references.retain();
+  }
+
+  @Override
+  public void release() {
+    references.release();
+  }
+
+  @Override
+  public UnexpectedFlowListener<T, S> getUnexpectedFlowListener() {
+    return unexpectedFlowListener;
+  }
+
+  /**
+   * The queue of a {@link StateMachine}, it is its own drain task. Once it is drained the mailbox
+   * of a {@link StateMachine} that has ended is removed.
+   */
+  private final class Mailbox extends DrainTask {
+
+    private final GenericStateMachine<T, S> stateMachine;
+    private final Queue<EventMachinePair<T, S>> queue;
+    private final AtomicInteger depth;
+
+    private Mailbox(GenericStateMachine<T, S> stateMachine) {
+      super(executor, drainQuantum.weighted(drainWeigher.applyAsInt(stateMachine)));
+      this.stateMachine = stateMachine;
+      this.queue = new ConcurrentLinkedQueue<>();
+      this.depth = new AtomicInteger();
+    }
+
+    @Override
+    boolean processNext() {
+      EventMachinePair<T, S> consumedPair = queue.poll();
+      if (consumedPair == null) {
+        return false;
+      }
+      depth.decrementAndGet();
+      queueDepth.decrementAndGet();
+      process(consumedPair);
+      return true;
+    }
+
+    @Override
+    boolean isEmpty() {
+      return queue.isEmpty();
+    }
+
+    @Override
+    void onDrained() {
+      if (stateMachine.isEnded()) {
+        mailboxes.remove(stateMachine, this);
+      }
+    }
+  }
+}
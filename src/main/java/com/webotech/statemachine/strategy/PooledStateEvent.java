@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import com.webotech.statemachine.api.StateEvent;
+
+/**
+ * A view of a {@link StateEvent} with the payload it had when it was fired. It is owned by an
+ * {@link EventMachinePair} and reused with it, so a payload can be delivered to the
+ * {@link com.webotech.statemachine.api.StateAction}s without allocating a copy of the
+ * {@link StateEvent}. It is only valid until the {@link EventMachinePair} is reused, so it is
+ * unwrapped when it is fired again, see {@link #identityOf(StateEvent)} and
+ * {@link #detach(StateEvent)}.
+ * <p>
+ * It is {@link #equals(Object)} to another {@link PooledStateEvent} of an equal
+ * {@link StateEvent}, not to the {@link StateEvent} itself, so that equality is symmetric.
+ */
+final class PooledStateEvent<S> implements StateEvent<S> {
+
+  private StateEvent<S> stateEvent;
+  private S payload;
+
+  void set(StateEvent<S> stateEvent, S payload) {
+    this.stateEvent = stateEvent;
+    this.payload = payload;
+  }
+
+  /**
+   * @return the {@link StateEvent} that is used to look up transitions, it is the stateEvent itself
+   * unless it is a {@link PooledStateEvent}
+   */
+  static <S> StateEvent<S> identityOf(StateEvent<S> stateEvent) {
+    return stateEvent instanceof PooledStateEvent<S> pooled ? pooled.stateEvent : stateEvent;
+  }
+
+  /**
+   * @return the stateEvent, or a copy of it if it is a {@link PooledStateEvent} so that it stays
+   * valid after the {@link EventMachinePair} that owns it is reused
+   */
+  static <S> StateEvent<S> detach(StateEvent<S> stateEvent) {
+    if (stateEvent instanceof PooledStateEvent<S> pooled) {
+      PooledStateEvent<S> detached = new PooledStateEvent<>();
+      detached.set(pooled.stateEvent, pooled.payload);
+      return detached;
+    }
+    return stateEvent;
+  }
+
+  @Override
+  public String getName() {
+    return stateEvent.getName();
+  }
+
+  @Override
+  public S getPayload() {
+    return payload;
+  }
+
+  @Override
+  public void setPayload(S payload) {
+    this.payload = payload;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    return o instanceof PooledStateEvent<?> other && stateEvent.equals(other.stateEvent);
+  }
+
+  @Override
+  public int hashCode() {
+    return stateEvent.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return stateEvent.toString();
+  }
+}
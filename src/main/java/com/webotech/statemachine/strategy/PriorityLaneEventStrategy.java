@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+public class PriorityLaneEventStrategy<T, S> implements EventProcessingStrategy<T, S> {
+
+  private final Queue<EventMachinePair<T, S>>[] lanes;
+  private final Map<StateEvent<S>, Integer> laneByEvent;
+  private final int defaultLane;
+  private final ReferenceCount references;
+  private final TransitionTask<T, S> transitionTask;
+  private final UnexpectedFlowListener<T, S> unexpectedFlowListener;
+  private final EventMachinePairPool<T, S> eventMachinePairPool;
+  private final int maxQueueSize;
+  private final AtomicInteger queueDepth;
+  private final AtomicInteger defaultLaneDepth;
+  private final AtomicLong droppedEventCount;
+  private final DrainTask drainTask;
+
+  /**
+   * An {@link EventProcessingStrategy} that transitions state atomically where some
+   * {@link StateEvent}s, like those that stop a {@link StateMachine} or report an error, must not
+   * wait behind the {@link StateEvent}s that are already queued.
+   * <p>
+   * The {@link StateEvent}s are queued in lanes, priorityLanes lists the {@link StateEvent}s of
+   * each priority lane, highest priority first. All other {@link StateEvent}s are queued in a
+   * default lane that has the lowest priority. The {@link StateEvent}s in a higher lane are always
+   * processed before those in a lower lane and the {@link StateEvent}s in a lane are processed in
+   * sequence, in the order they were received.
+   * <p>
+   * Each lane is backed by a lock-free and thread-safe queue. If maxQueueSize is positive it bounds
+   * the default lane, {@link StateEvent}s that do not fit are dropped as in
+   * {@link BackpressurePolicy#DROP_NEWEST}. The priority lanes are not bound so a priority
+   * {@link StateEvent} is never dropped.
+   */
+  public PriorityLaneEventStrategy(
+      BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      int maxQueueSize, List<? extends Collection<StateEvent<S>>> priorityLanes) {
+    this(unmappedEventHandler, executor, unexpectedFlowListener, new EventMachinePairPool<>(),
+        maxQueueSize, priorityLanes);
+  }
+
+  PriorityLaneEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      EventMachinePairPool<T, S> eventMachinePairPool, int maxQueueSize,
+      List<? extends Collection<StateEvent<S>>> priorityLanes) {
+    this(unmappedEventHandler, executor, unexpectedFlowListener, eventMachinePairPool,
+        maxQueueSize, priorityLanes, DrainQuantum.UNBOUNDED, null);
+  }
+
+  /**
+   * As {@link #PriorityLaneEventStrategy(BiConsumer, ExecutorService, UnexpectedFlowListener, int,
+   * List)} where the drain task is bound by the drainQuantum and the releaseTask runs when every
+   * {@link StateMachine} that retained this strategy has released it. If the releaseTask is null
+   * the strategy owns nothing to release.
+   */
+  PriorityLaneEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      EventMachinePairPool<T, S> eventMachinePairPool, int maxQueueSize,
+      List<? extends Collection<StateEvent<S>>> priorityLanes, DrainQuantum drainQuantum,
+      Runnable releaseTask) {
+    this.defaultLane = priorityLanes.size();
+    @SuppressWarnings("unchecked")
+    Queue<EventMachinePair<T, S>>[] lanes =
+        (Queue<EventMachinePair<T, S>>[]) new Queue<?>[defaultLane + 1];
+    this.lanes = lanes;
+    this.laneByEvent = new HashMap<>();
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new ConcurrentLinkedQueue<>();
+    }
+    for (int i = 0; i < defaultLane; i++) {
+      for (StateEvent<S> stateEvent : priorityLanes.get(i)) {
+        if (laneByEvent.putIfAbsent(stateEvent, i) != null) {
+          throw new IllegalStateException(
+              "StateEvent " + stateEvent + " is in more than one priority lane");
+        }
+      }
+    }
+    this.references = new ReferenceCount(releaseTask);
+    this.unexpectedFlowListener = unexpectedFlowListener;
+    this.transitionTask = new TransitionTask<>(unmappedEventHandler);
+    this.eventMachinePairPool = eventMachinePairPool;
+    this.maxQueueSize = maxQueueSize;
+    this.queueDepth = new AtomicInteger();
+    this.defaultLaneDepth = new AtomicInteger();
+    this.droppedEventCount = new AtomicLong();
+    this.drainTask = new DrainTask(executor, drainQuantum) {
+      @Override
+      boolean processNext() {
+        EventMachinePair<T, S> consumedPair = pollHighestLane();
+        if (consumedPair == null) {
+          return false;
+        }
+        process(consumedPair);
+        return true;
+      }
+
+      @Override
+      boolean isEmpty() {
+        return areLanesEmpty();
+      }
+    };
+  }
+
+  /**
+   * @return the lane that the stateEvent is queued in, 0 is the highest priority
+   */
+  int laneFor(StateEvent<S> stateEvent) {
+    return laneByEvent.getOrDefault(PooledStateEvent.identityOf(stateEvent), defaultLane);
+  }
+
+  /**
+   * @return the pool of the objects that {@link StateEvent}s are queued in
+   */
+  public EventMachinePairPool<T, S> getEventMachinePairPool() {
+    return eventMachinePairPool;
+  }
+
+  /**
+   * @return the number of lanes, including the default lane
+   */
+  public int getLaneCount() {
+    return lanes.length;
+  }
+
+  @Override
+  public int getEventQueueSize() {
+    return queueDepth.get();
+  }
+
+  /**
+   * @return the room in the default lane, the priority lanes are not bound
+   */
+  @Override
+  public int getRemainingCapacity(GenericStateMachine<T, S> stateMachine) {
+    return maxQueueSize > 0 ? Math.max(0, maxQueueSize - defaultLaneDepth.get())
+        : Integer.MAX_VALUE;
+  }
+
+  @Override
+  public long getDroppedEventCount() {
+    return droppedEventCount.get();
+  }
+
+  @Override
+  public void processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    tryProcessEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    return processEvent(stateEvent, stateMachine, null);
+  }
+
+  @Override
+  public boolean processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    int lane = laneFor(stateEvent);
+    if (lane == defaultLane && defaultLaneDepth.incrementAndGet() > maxQueueSize
+        && maxQueueSize > 0) {
+      defaultLaneDepth.decrementAndGet();
+      droppedEventCount.incrementAndGet();
+      unexpectedFlowListener.onEventDropped(stateEvent, stateMachine);
+      return false;
+    }
+    EventMachinePair<T, S> inboundPair = this.eventMachinePairPool.take();
+    /* The payload is taken with the StateEvent in case the client is
+      setting different payloads on the same event instance */
+    inboundPair.setEventMachinePair(stateEvent, stateMachine);
+    inboundPair.setCompletion(completion);
+    queueDepth.incrementAndGet();
+    lanes[lane].offer(inboundPair);
+    drainTask.schedule();
+    return true;
+  }
+
+  /**
+   * The highest lane with a queued event is polled before each event is processed.
+   */
+  private EventMachinePair<T, S> pollHighestLane() {
+    for (int i = 0; i < lanes.length; i++) {
+      EventMachinePair<T, S> consumedPair = lanes[i].poll();
+      if (consumedPair != null) {
+        queueDepth.decrementAndGet();
+        if (i == defaultLane) {
+          defaultLaneDepth.decrementAndGet();
+        }
+        return consumedPair;
+      }
+    }
+    return null;
+  }
+
+  private boolean areLanesEmpty() {
+    for (Queue<EventMachinePair<T, S>> lane : lanes) {
+      if (!lane.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void process(EventMachinePair<T, S> consumedPair) {
+    StateEvent<S> event = consumedPair.getDeliveredEvent();
+    GenericStateMachine<T, S> machine = consumedPair.getStateMachine();
+    CompletableFuture<State<T, S>> completion = consumedPair.getCompletion();
+    try {
+      if (!machine.isEnded()) {
+        transitionTask.execute(event, machine, completion);
+      } else {
+        TransitionTask.fail(completion, new IllegalStateException("The state machine has ended"));
+      }
+    } catch (Exception e) {
+      unexpectedFlowListener.onExceptionDuringEventProcessing(event, machine,
+          Thread.currentThread(), e);
+      TransitionTask.fail(completion, e);
+    } finally {
+      eventMachinePairPool.give(consumedPair);
+    }
+  }
+
+  @Override
+  public void retain() {
+    references.retain();
+  }
+
+  @Override
+  public void release() {
+    references.release();
+  }
+
+  @Override
+  public UnexpectedFlowListener<T, S> getUnexpectedFlowListener() {
+    return unexpectedFlowListener;
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+/**
+ * Counts the references to a resource that is shared, like an executor. When the last reference
+ * is released the release task runs and the resource can not be retained again. If there is no
+ * release task the resource is not owned, it is counted but never released.
+ */
+final class ReferenceCount {
+
+  private final Runnable releaseTask;
+  private int references;
+  private boolean released;
+
+  ReferenceCount() {
+    this(null);
+  }
+
+  ReferenceCount(Runnable releaseTask) {
+    this.releaseTask = releaseTask;
+  }
+
+  /**
+   * @throws IllegalStateException if the resource has been released
+   */
+  void retain() {
+    if (!tryRetain()) {
+      throw new IllegalStateException("It has been released");
+    }
+  }
+
+  /**
+   * @return false if the resource has been released
+   */
+  synchronized boolean tryRetain() {
+    if (released) {
+      return false;
+    }
+    references++;
+    return true;
+  }
+
+  void release() {
+    synchronized (this) {
+      if (references == 0 || --references > 0 || releaseTask == null) {
+        return;
+      }
+      released = true;
+    }
+    releaseTask.run();
+  }
+
+  boolean isOwned() {
+    return releaseTask != null;
+  }
+}
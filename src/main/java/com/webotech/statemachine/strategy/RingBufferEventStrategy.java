@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+public class RingBufferEventStrategy<T, S> implements EventProcessingStrategy<T, S> {
+
+  static final int DEFAULT_CAPACITY = 1024;
+  private final EventMachinePair<T, S>[] slots;
+  private final AtomicLongArray published;
+  private final int mask;
+  private final AtomicLong claimSequence;
+  private final AtomicLong consumeSequence;
+  private final ReferenceCount references;
+  private final TransitionTask<T, S> transitionTask;
+  private final UnexpectedFlowListener<T, S> unexpectedFlowListener;
+  private final AtomicLong droppedEventCount;
+  private final DrainTask drainTask;
+
+  /**
+   * An {@link EventProcessingStrategy} that transitions state atomically and processes all
+   * {@link StateEvent}s in sequence, in the order they were received.
+   * <p>
+   * It is backed by a fixed size ring buffer of pre-allocated slots, so unlike the
+   * {@link DefaultEventStrategy} no objects are allocated when a {@link StateEvent} (with no
+   * payload) is queued. Many threads can fire {@link StateEvent}s, each one claims the next
+   * sequence of the ring buffer and publishes the {@link StateEvent} in its slot. A single drain
+   * task consumes the slots in sequence order.
+   * <p>
+   * The capacity is rounded up to a power of two, if it is not positive {@link #DEFAULT_CAPACITY}
+   * is used. When the ring buffer is full the received {@link StateEvent} is dropped, as in
+   * {@link BackpressurePolicy#DROP_NEWEST}.
+   */
+  public RingBufferEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      int capacity) {
+    this(unmappedEventHandler, executor, unexpectedFlowListener, capacity, DrainQuantum.UNBOUNDED,
+        null);
+  }
+
+  /**
+   * As {@link #RingBufferEventStrategy(BiConsumer, ExecutorService, UnexpectedFlowListener, int)}
+   * where the drain task is bound by the drainQuantum and the releaseTask runs when every
+   * {@link StateMachine} that retained this strategy has released it. If the releaseTask is null
+   * the strategy owns nothing to release.
+   */
+  RingBufferEventStrategy(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler,
+      ExecutorService executor, UnexpectedFlowListener<T, S> unexpectedFlowListener,
+      int capacity, DrainQuantum drainQuantum, Runnable releaseTask) {
+    int size = capacityFor(capacity);
+    @SuppressWarnings("unchecked")
+    EventMachinePair<T, S>[] slots = (EventMachinePair<T, S>[]) new EventMachinePair<?, ?>[size];
+    this.slots = slots;
+    this.published = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      this.slots[i] = new EventMachinePair<>();
+      this.published.set(i, -1);
+    }
+    this.mask = size - 1;
+    this.claimSequence = new AtomicLong();
+    this.consumeSequence = new AtomicLong();
+    this.references = new ReferenceCount(releaseTask);
+    this.unexpectedFlowListener = unexpectedFlowListener;
+    this.transitionTask = new TransitionTask<>(unmappedEventHandler);
+    this.droppedEventCount = new AtomicLong();
+    this.drainTask = new DrainTask(executor, drainQuantum) {
+      @Override
+      boolean processNext() {
+        return processNextSlot();
+      }
+
+      @Override
+      boolean isEmpty() {
+        return !isNextPublished();
+      }
+    };
+  }
+
+  static int capacityFor(int capacity) {
+    if (capacity <= 0) {
+      return DEFAULT_CAPACITY;
+    }
+    if (capacity > 1 << 30) {
+      throw new IllegalArgumentException("Capacity " + capacity + " is too large");
+    }
+    return capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+  }
+
+  /**
+   * @return the number of slots in the ring buffer
+   */
+  public int getCapacity() {
+    return slots.length;
+  }
+
+  @Override
+  public int getEventQueueSize() {
+    return (int) (claimSequence.get() - consumeSequence.get());
+  }
+
+  @Override
+  public int getRemainingCapacity(GenericStateMachine<T, S> stateMachine) {
+    return Math.max(0, slots.length - getEventQueueSize());
+  }
+
+  @Override
+  public long getDroppedEventCount() {
+    return droppedEventCount.get();
+  }
+
+  @Override
+  public void processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    tryProcessEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    return processEvent(stateEvent, stateMachine, null);
+  }
+
+  @Override
+  public boolean processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    long sequence;
+    do {
+      sequence = claimSequence.get();
+      if (sequence - consumeSequence.get() >= slots.length) {
+        droppedEventCount.incrementAndGet();
+        unexpectedFlowListener.onEventDropped(stateEvent, stateMachine);
+        return false;
+      }
+    } while (!claimSequence.compareAndSet(sequence, sequence + 1));
+    publish(sequence, stateEvent, stateMachine, completion);
+    drainTask.schedule();
+    return true;
+  }
+
+  /**
+   * Claims the sequences for the batch with a single compare-and-set, {@link StateEvent}s that do
+   * not fit in the ring buffer are dropped.
+   */
+  @Override
+  public int processEvents(Collection<? extends StateEvent<S>> stateEvents,
+      GenericStateMachine<T, S> stateMachine) {
+    long sequence;
+    int claimed;
+    do {
+      sequence = claimSequence.get();
+      claimed = (int) Math.min(stateEvents.size(),
+          slots.length - (sequence - consumeSequence.get()));
+    } while (claimed > 0 && !claimSequence.compareAndSet(sequence, sequence + claimed));
+    Iterator<? extends StateEvent<S>> iterator = stateEvents.iterator();
+    for (int i = 0; i < claimed; i++) {
+      publish(sequence + i, iterator.next(), stateMachine, null);
+    }
+    if (claimed > 0) {
+      drainTask.schedule();
+    }
+    while (iterator.hasNext()) {
+      StateEvent<S> stateEvent = iterator.next();
+      droppedEventCount.incrementAndGet();
+      unexpectedFlowListener.onEventDropped(stateEvent, stateMachine);
+    }
+    return Math.max(claimed, 0);
+  }
+
+  private void publish(long sequence, StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine, CompletableFuture<State<T, S>> completion) {
+    int index = (int) sequence & mask;
+    /* The payload is taken with the StateEvent in case the client is
+      setting different payloads on the same event instance */
+    slots[index].setEventMachinePair(stateEvent, stateMachine);
+    slots[index].setCompletion(completion);
+    published.set(index, sequence);
+  }
+
+  /**
+   * The {@link DrainTask} is the only consumer, so the slot of the next sequence is consumed once
+   * it has been published.
+   *
+   * @return false if the next sequence has not been published
+   */
+  private boolean processNextSlot() {
+    long sequence = consumeSequence.get();
+    int index = (int) sequence & mask;
+    if (published.get(index) != sequence) {
+      return false;
+    }
+    process(slots[index]);
+    consumeSequence.set(sequence + 1);
+    return true;
+  }
+
+  private boolean isNextPublished() {
+    long sequence = consumeSequence.get();
+    return published.get((int) sequence & mask) == sequence;
+  }
+
+  private void process(EventMachinePair<T, S> slot) {
+    StateEvent<S> event = slot.getDeliveredEvent();
+    GenericStateMachine<T, S> machine = slot.getStateMachine();
+    CompletableFuture<State<T, S>> completion = slot.getCompletion();
+    try {
+      if (!machine.isEnded()) {
+        transitionTask.execute(event, machine, completion);
+      } else {
+        TransitionTask.fail(completion, new IllegalStateException("The state machine has ended"));
+      }
+    } catch (Exception e) {
+      unexpectedFlowListener.onExceptionDuringEventProcessing(event, machine,
+          Thread.currentThread(), e);
+      TransitionTask.fail(completion, e);
+    } finally {
+      slot.clear();
+    }
+  }
+
+  @Override
+  public void retain() {
+    references.retain();
+  }
+
+  @Override
+  public void release() {
+    references.release();
+  }
+
+  @Override
+  public UnexpectedFlowListener<T, S> getUnexpectedFlowListener() {
+    return unexpectedFlowListener;
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class ShardedEventStrategy<T, S> implements EventProcessingStrategy<T, S> {
+
+  private final EventProcessingStrategy<T, S>[] shards;
+
+  /**
+   * An {@link EventProcessingStrategy} that is shared by many
+   * {@link com.webotech.statemachine.api.StateMachine}s. Each
+   * {@link com.webotech.statemachine.api.StateMachine} is pinned to one of the shards by its
+   * identity hash code, so when each shard processes {@link StateEvent}s in sequence on its own
+   * thread (as the shards created by
+   * {@link EventProcessingStrategyFactory#createShardedStrategy(EventProcessingStrategyFactory.Config)}
+   * do) the {@link StateEvent}s of a {@link com.webotech.statemachine.api.StateMachine} are
+   * processed in the order they were received while different
+   * {@link com.webotech.statemachine.api.StateMachine}s are processed in parallel.
+   * <p>
+   * Note that {@link #getEventQueueSize()} is the number of {@link StateEvent}s queued in all the
+   * shards.
+   */
+  public ShardedEventStrategy(List<? extends EventProcessingStrategy<T, S>> shards) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("At least one shard is needed");
+    }
+    @SuppressWarnings("unchecked")
+    EventProcessingStrategy<T, S>[] shardArray =
+        (EventProcessingStrategy<T, S>[]) shards.toArray(new EventProcessingStrategy<?, ?>[0]);
+    this.shards = shardArray;
+  }
+
+  /**
+   * @return the number of shards
+   */
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  /**
+   * @return the shard that processes the {@link StateEvent}s of the stateMachine
+   */
+  EventProcessingStrategy<T, S> shardFor(GenericStateMachine<T, S> stateMachine) {
+    int hash = System.identityHashCode(stateMachine);
+    return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+  }
+
+  @Override
+  public int getEventQueueSize() {
+    int size = 0;
+    for (EventProcessingStrategy<T, S> shard : shards) {
+      size += shard.getEventQueueSize();
+    }
+    return size;
+  }
+
+  @Override
+  public void processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine) {
+    shardFor(stateMachine).processEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean tryProcessEvent(StateEvent<S> stateEvent,
+      GenericStateMachine<T, S> stateMachine) {
+    return shardFor(stateMachine).tryProcessEvent(stateEvent, stateMachine);
+  }
+
+  @Override
+  public boolean processEvent(StateEvent<S> stateEvent, GenericStateMachine<T, S> stateMachine,
+      CompletableFuture<State<T, S>> completion) {
+    return shardFor(stateMachine).processEvent(stateEvent, stateMachine, completion);
+  }
+
+  @Override
+  public int processEvents(Collection<? extends StateEvent<S>> stateEvents,
+      GenericStateMachine<T, S> stateMachine) {
+    return shardFor(stateMachine).processEvents(stateEvents, stateMachine);
+  }
+
+  @Override
+  public int getRemainingCapacity(GenericStateMachine<T, S> stateMachine) {
+    return shardFor(stateMachine).getRemainingCapacity(stateMachine);
+  }
+
+  @Override
+  public long getDroppedEventCount() {
+    long count = 0;
+    for (EventProcessingStrategy<T, S> shard : shards) {
+      count += shard.getDroppedEventCount();
+    }
+    return count;
+  }
+
+  @Override
+  public boolean supportsScheduledEvents() {
+    for (EventProcessingStrategy<T, S> shard : shards) {
+      if (!shard.supportsScheduledEvents()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void onEnded(GenericStateMachine<T, S> stateMachine) {
+    shardFor(stateMachine).onEnded(stateMachine);
+  }
+
+  @Override
+  public void retain() {
+    for (EventProcessingStrategy<T, S> shard : shards) {
+      shard.retain();
+    }
+  }
+
+  @Override
+  public void release() {
+    for (EventProcessingStrategy<T, S> shard : shards) {
+      shard.release();
+    }
+  }
+
+  @Override
+  public UnexpectedFlowListener<T, S> getUnexpectedFlowListener() {
+    return shards[0].getUnexpectedFlowListener();
+  }
+}
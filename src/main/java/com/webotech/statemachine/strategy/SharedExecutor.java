@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * An executor that is shared by the {@link EventProcessingStrategy}s created with a
+ * {@link EventProcessingStrategyFactory.Config}, each of them retains it. When it is owned it is
+ * shut down once they have all released it.
+ */
+record SharedExecutor(ExecutorService executor, ReferenceCount references) {
+
+  static SharedExecutor unowned(ExecutorService executor) {
+    return new SharedExecutor(executor, new ReferenceCount());
+  }
+
+  /**
+   * Retains the sharedExecutor, if it is null or it has been released a new owned executor is
+   * created and retained.
+   *
+   * @return the retained {@link SharedExecutor}
+   */
+  static SharedExecutor retain(SharedExecutor sharedExecutor,
+      Supplier<ExecutorService> executorSupplier) {
+    SharedExecutor retained = sharedExecutor;
+    while (retained == null || !retained.references.tryRetain()) {
+      ExecutorService executor = executorSupplier.get();
+      retained = new SharedExecutor(executor, new ReferenceCount(executor::shutdown));
+    }
+    return retained;
+  }
+
+  void release() {
+    references.release();
+  }
+
+  /**
+   * @return the task that releases this {@link SharedExecutor}, or null if its executor is not
+   * owned so it is never released
+   */
+  Runnable releaseTask() {
+    return references.isOwned() ? this::release : null;
+  }
+}
@@ -5,10 +5,12 @@
 package com.webotech.statemachine.strategy;
 
 import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.TransitionTable;
 import com.webotech.statemachine.api.State;
 import com.webotech.statemachine.api.StateEvent;
 import com.webotech.statemachine.api.StateMachine;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 
 /**
@@ -17,37 +19,96 @@ import java.util.function.BiConsumer;
 public class TransitionTask<T, S> {
 
   private final BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler;
-  private Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states;
 
   public TransitionTask(BiConsumer<StateEvent<S>, StateMachine<T, S>> unmappedEventHandler) {
     this.unmappedEventHandler = unmappedEventHandler;
   }
 
+  /**
+   * @deprecated transitions are resolved with the {@link TransitionTable} of the
+   * {@link GenericStateMachine} that is transitioned, so this does nothing.
+   */
+  @Deprecated
+  public void setStates(Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states) {
+    // the states are compiled into the TransitionTable of each GenericStateMachine
+  }
+
   void execute(StateEvent<S> event, GenericStateMachine<T, S> machine) {
-    State<T, S> toState = states.get(machine.getCurrentState()).get(event);
-    if (toState == null) {
+    execute(event, machine, null);
+  }
+
+  /**
+   * As {@link #execute(StateEvent, GenericStateMachine)} where the completion (if it is not null)
+   * is completed with the {@link State} that is transitioned to once the
+   * {@link com.webotech.statemachine.api.StateMachineListener} has been notified, or exceptionally
+   * if the event is not mapped.
+   */
+  void execute(StateEvent<S> event, GenericStateMachine<T, S> machine,
+      CompletableFuture<State<T, S>> completion) {
+    StateEvent<S> identity = PooledStateEvent.identityOf(event);
+    if (machine.isStaleTimeout(identity)) {
+      complete(completion, machine.getCurrentState());
+      return;
+    }
+    if (identity == machine.getStopEvent()) {
+      end(event, machine, completion);
+      return;
+    }
+    TransitionTable<T, S> transitionTable = machine.getTransitionTable();
+    int toStateId = transitionTable.getTransition(machine.getCurrentStateId(),
+        transitionTable.getEventId(identity));
+    if (toStateId == TransitionTable.NO_ID) {
       unmappedEventHandler.accept(event, machine);
+      fail(completion, new IllegalStateException(
+          "StateEvent [" + event.getName() + "] is not mapped for state [" + machine
+              .getCurrentState().getName() + "]"));
       return;
     }
+    State<T, S> toState = transitionTable.getState(toStateId);
     if (machine.getNoopState().equals(toState)) {
       // No transition but notify the listener so it can tell a StateEvent was received
       machine.notifyStateMachineListener(false, machine.getCurrentState(), event, toState);
       machine.notifyStateMachineListener(true, machine.getCurrentState(), event, toState);
+      complete(completion, machine.getCurrentState());
       return;
     }
     State<T, S> fromState = machine.getCurrentState();
     machine.notifyStateMachineListener(false, fromState, event, toState);
     machine.getCurrentState().onExit(event, machine);
-    machine.updateCurrentState(toState);
+    machine.updateCurrentState(toStateId);
     machine.getCurrentState().onEntry(event, machine);
     machine.notifyStateMachineListener(true, fromState, event, toState);
-    if (states.get(toState) == null || machine.getEndState()
-        .equals(states.get(toState).get(machine.getImmediateEvent()))) {
+    complete(completion, toState);
+    if (transitionTable.isEndOnEntry(toStateId)) {
       machine.stop();
     }
   }
 
-  public void setStates(Map<State<T, S>, Map<StateEvent<S>, State<T, S>>> states) {
-    this.states = states;
+  /**
+   * Transitions to the end {@link State} whatever the current {@link State} is, for the stop
+   * {@link StateEvent} of {@link StateMachine#stopGracefully(java.time.Duration)}.
+   */
+  private void end(StateEvent<S> event, GenericStateMachine<T, S> machine,
+      CompletableFuture<State<T, S>> completion) {
+    State<T, S> fromState = machine.getCurrentState();
+    State<T, S> endState = machine.getEndState();
+    machine.notifyStateMachineListener(false, fromState, event, endState);
+    fromState.onExit(event, machine);
+    machine.updateCurrentState(endState);
+    endState.onEntry(event, machine);
+    machine.notifyStateMachineListener(true, fromState, event, endState);
+    complete(completion, endState);
+  }
+
+  static <T, S> void complete(CompletableFuture<State<T, S>> completion, State<T, S> state) {
+    if (completion != null) {
+      completion.complete(state);
+    }
+  }
+
+  static <T, S> void fail(CompletableFuture<State<T, S>> completion, Throwable throwable) {
+    if (completion != null) {
+      completion.completeExceptionally(throwable);
+    }
   }
 }
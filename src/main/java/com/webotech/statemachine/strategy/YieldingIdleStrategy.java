@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+/**
+ * An {@link IdleStrategy} that busy spins for a number of iterations and then yields the CPU to
+ * other threads each time it is idle.
+ */
+public final class YieldingIdleStrategy implements IdleStrategy {
+
+  static final int DEFAULT_SPINS = 100;
+  private final int maxSpins;
+  private int spins;
+
+  public YieldingIdleStrategy() {
+    this(DEFAULT_SPINS);
+  }
+
+  public YieldingIdleStrategy(int maxSpins) {
+    this.maxSpins = maxSpins;
+  }
+
+  @Override
+  public void idle(int workCount) {
+    if (workCount > 0) {
+      spins = 0;
+    } else if (spins < maxSpins) {
+      spins++;
+      Thread.onSpinWait();
+    } else {
+      Thread.yield();
+    }
+  }
+}
@@ -5,6 +5,7 @@
 package com.webotech.statemachine.util;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -23,6 +24,39 @@ public final class Threads {
     return new NamedDaemonThreadFactory(threadName);
   }
 
+  /**
+   * @return true if virtual threads are supported, they need Java 21 or later
+   */
+  public static boolean isVirtualThreadSupported() {
+    return VirtualThreads.isSupported();
+  }
+
+  /**
+   * The virtual thread counterpart of {@link #newNamedDaemonThreadFactory(String,
+   * UncaughtExceptionHandler)}, threads are named threadName-n so that they can be identified in
+   * thread dumps.
+   *
+   * @throws UnsupportedOperationException if virtual threads are not supported
+   */
+  public static ThreadFactory newNamedVirtualThreadFactory(final String threadName,
+      UncaughtExceptionHandler uncaughtExceptionHandler) {
+    return VirtualThreads.newThreadFactory(threadName, uncaughtExceptionHandler);
+  }
+
+  public static ThreadFactory newNamedVirtualThreadFactory(final String threadName) {
+    return VirtualThreads.newThreadFactory(threadName, null);
+  }
+
+  /**
+   * @return an {@link ExecutorService} that runs each task on a new virtual thread
+   * @throws UnsupportedOperationException if virtual threads are not supported
+   */
+  public static ExecutorService newNamedVirtualThreadPerTaskExecutor(final String threadName,
+      UncaughtExceptionHandler uncaughtExceptionHandler) {
+    return VirtualThreads.newThreadPerTaskExecutor(
+        VirtualThreads.newThreadFactory(threadName, uncaughtExceptionHandler));
+  }
+
   private static class NamedDaemonThreadFactory implements ThreadFactory {
 
     private static final String DASH_FORMAT = "%s-%s";
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.util;
+
+import com.webotech.statemachine.api.ScheduledEvent;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A hashed timing wheel that runs tasks after a delay. Time is divided into ticks and the wheel
+ * has a bucket for each tick of a revolution, a task is put in the bucket of the tick that it is
+ * due in and a count of the revolutions it has to wait. So scheduling and cancelling a task takes
+ * constant time however many tasks are pending, unlike a binary heap of tasks in a
+ * {@link java.util.concurrent.ScheduledExecutorService}.
+ * <p>
+ * A single thread advances the wheel and runs the tasks that are due, so tasks should be quick,
+ * like firing a {@link com.webotech.statemachine.api.StateEvent}. Tasks run no earlier than their
+ * delay and up to a tick later. Tasks are scheduled and cancelled on any thread, they are handed
+ * to the wheel's thread with lock-free queues. A task must not block or run a transition since
+ * that holds up every other task, see {@link #isTimerThread()}.
+ */
+public final class TimingWheel implements AutoCloseable {
+
+  private static final Logger logger = LogManager.getLogger(TimingWheel.class);
+  private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+  private static final ThreadLocal<Boolean> TIMER_THREAD = ThreadLocal.withInitial(() -> false);
+  private static final Consumer<Runnable> RUN = Runnable::run;
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final long startNanos;
+  private final Queue<Timeout> scheduledTimeouts;
+  private final Queue<Timeout> cancelledTimeouts;
+  private final AtomicInteger pendingCount;
+  private final Thread workerThread;
+  private volatile boolean running;
+  // only accessed by the worker thread
+  private long tick;
+
+  /**
+   * @param tickDuration  the resolution of the wheel
+   * @param wheelSize     the number of ticks in a revolution, rounded up to a power of two
+   * @param threadFactory creates the thread that advances the wheel
+   */
+  public TimingWheel(Duration tickDuration, int wheelSize, ThreadFactory threadFactory) {
+    if (tickDuration.toNanos() <= 0 || wheelSize <= 0 || wheelSize > 1 << 30) {
+      throw new IllegalArgumentException(
+          "Tick duration and wheel size must be positive: " + tickDuration + ", " + wheelSize);
+    }
+    int size = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+    this.tickNanos = tickDuration.toNanos();
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      this.wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.scheduledTimeouts = new ConcurrentLinkedQueue<>();
+    this.cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    this.pendingCount = new AtomicInteger();
+    this.running = true;
+    this.startNanos = System.nanoTime();
+    this.workerThread = threadFactory.newThread(this::run);
+    this.workerThread.start();
+  }
+
+  /**
+   * @return the {@link TimingWheel} that is shared by all the
+   * {@link com.webotech.statemachine.api.StateMachine}s in the runtime, it ticks every 10 millis
+   */
+  public static TimingWheel getShared() {
+    return SharedHolder.SHARED;
+  }
+
+  /**
+   * @return true if the calling thread is the thread of a {@link TimingWheel}, so code that can be
+   * called by a task can avoid blocking it.
+   */
+  public static boolean isTimerThread() {
+    return TIMER_THREAD.get();
+  }
+
+  /**
+   * Schedules the task to run after the delay.
+   *
+   * @return a {@link Timeout} that can be used to cancel the task
+   */
+  public Timeout schedule(Duration delay, Runnable task) {
+    return schedule(delay, RUN, task);
+  }
+
+  /**
+   * Schedules the task to run with the argument after the delay. The task can be shared by many
+   * {@link Timeout}s, so nothing but the {@link Timeout} is allocated when it is scheduled.
+   *
+   * @return a {@link Timeout} that can be used to cancel the task
+   */
+  @SuppressWarnings("unchecked")
+  public <A> Timeout schedule(Duration delay, Consumer<? super A> task, A argument) {
+    if (!running) {
+      throw new IllegalStateException("The timing wheel has been closed");
+    }
+    Timeout timeout = new Timeout(this, (Consumer<Object>) task, argument,
+        System.nanoTime() - startNanos + Math.max(0, delay.toNanos()));
+    pendingCount.incrementAndGet();
+    scheduledTimeouts.offer(timeout);
+    return timeout;
+  }
+
+  /**
+   * @return the number of tasks that have been scheduled and have not run or been cancelled
+   */
+  public int getPendingCount() {
+    return pendingCount.get();
+  }
+
+  /**
+   * Stops the wheel, pending tasks will not run.
+   */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(workerThread);
+  }
+
+  private void run() {
+    TIMER_THREAD.set(true);
+    while (running) {
+      long deadline = tickNanos * (tick + 1);
+      long sleepNanos;
+      while ((sleepNanos = deadline - (System.nanoTime() - startNanos)) > 0) {
+        LockSupport.parkNanos(this, sleepNanos);
+        if (!running) {
+          return;
+        }
+      }
+      removeCancelled();
+      transferScheduled();
+      wheel[(int) (tick & mask)].expire(deadline);
+      tick++;
+    }
+  }
+
+  private void transferScheduled() {
+    for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+      Timeout timeout = scheduledTimeouts.poll();
+      if (timeout == null) {
+        return;
+      }
+      if (timeout.isCancelled()) {
+        continue;
+      }
+      long dueTick = timeout.deadline / tickNanos;
+      timeout.remainingRounds = (dueTick - tick) / wheel.length;
+      // a timeout that is already due goes in the current bucket
+      wheel[(int) (Math.max(dueTick, tick) & mask)].add(timeout);
+    }
+  }
+
+  private void removeCancelled() {
+    Timeout timeout;
+    while ((timeout = cancelledTimeouts.poll()) != null) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  private static final class SharedHolder {
+
+    private static final TimingWheel SHARED = new TimingWheel(Duration.ofMillis(10), 512,
+        Threads.newNamedDaemonThreadFactory("state-machine-timer",
+            (t, e) -> logger.error("Unhandled exception in thread {}", t.getName(), e)));
+  }
+
+  /**
+   * A doubly linked list of the {@link Timeout}s due in a tick, it is only accessed by the worker
+   * thread.
+   */
+  private static final class Bucket {
+
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    void expire(long deadline) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+          remove(timeout);
+          timeout.expire();
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      } else {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+  }
+
+  /**
+   * A task that is scheduled on a {@link TimingWheel}.
+   */
+  public static final class Timeout implements ScheduledEvent {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final VarHandle STATE;
+    private final TimingWheel timingWheel;
+    private final Consumer<Object> task;
+    private final Object argument;
+    private final long deadline;
+    // accessed with STATE so that no Atomic* instance is allocated per Timeout
+    @SuppressWarnings("unused")
+    private volatile int state;
+    // only accessed by the worker thread
+    private long remainingRounds;
+    private Bucket bucket;
+    private Timeout prev;
+    private Timeout next;
+
+    static {
+      try {
+        STATE = MethodHandles.lookup().findVarHandle(Timeout.class, "state", int.class);
+      } catch (ReflectiveOperationException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+
+    private Timeout(TimingWheel timingWheel, Consumer<Object> task, Object argument,
+        long deadline) {
+      this.timingWheel = timingWheel;
+      this.task = task;
+      this.argument = argument;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public boolean cancel() {
+      if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+        return false;
+      }
+      timingWheel.pendingCount.decrementAndGet();
+      timingWheel.cancelledTimeouts.offer(this);
+      return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return (int) STATE.getVolatile(this) == CANCELLED;
+    }
+
+    @Override
+    public boolean isExpired() {
+      return (int) STATE.getVolatile(this) == EXPIRED;
+    }
+
+    private void expire() {
+      if (!STATE.compareAndSet(this, PENDING, EXPIRED)) {
+        return;
+      }
+      timingWheel.pendingCount.decrementAndGet();
+      try {
+        task.accept(argument);
+      } catch (Throwable t) {
+        // an Error in one task must not stop the thread that every other task runs on
+        logger.error("Unhandled exception while running a scheduled task", t);
+      }
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.util;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads need Java 21 or later, this is the version for earlier releases. The Java 21
+ * version is in src/main/java21 and is packaged in the multi-release jar.
+ */
+final class VirtualThreads {
+
+  private static final String NOT_SUPPORTED = "Virtual threads need Java 21 or later";
+
+  private VirtualThreads() {
+    // Not for instanciation outside this class
+  }
+
+  static boolean isSupported() {
+    return false;
+  }
+
+  static ThreadFactory newThreadFactory(String threadName,
+      UncaughtExceptionHandler uncaughtExceptionHandler) {
+    throw new UnsupportedOperationException(NOT_SUPPORTED);
+  }
+
+  static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+    throw new UnsupportedOperationException(NOT_SUPPORTED);
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.util;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The Java 21 version, it is packaged in META-INF/versions/21 of the multi-release jar.
+ */
+final class VirtualThreads {
+
+  private VirtualThreads() {
+    // Not for instanciation outside this class
+  }
+
+  static boolean isSupported() {
+    return true;
+  }
+
+  static ThreadFactory newThreadFactory(String threadName,
+      UncaughtExceptionHandler uncaughtExceptionHandler) {
+    Thread.Builder.OfVirtual builder = Thread.ofVirtual().name(threadName + "-", 0);
+    if (uncaughtExceptionHandler != null) {
+      builder.uncaughtExceptionHandler(uncaughtExceptionHandler);
+    }
+    return builder.factory();
+  }
+
+  static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+    return Executors.newThreadPerTaskExecutor(threadFactory);
+  }
+}
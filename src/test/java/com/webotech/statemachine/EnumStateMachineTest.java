@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EnumStateMachineTest {
+
+  private EnumStateMachine<List<String>, Integer, OrderState, OrderEvent> stateMachine;
+
+  @BeforeEach
+  void setup() {
+    stateMachine = new EnumStateMachine.Builder<List<String>, Integer, OrderState, OrderEvent>(
+        OrderState.class, OrderEvent.class).setContext(new CopyOnWriteArrayList<>()).build();
+    stateMachine.initialSate(OrderState.NEW).receives(OrderEvent.ACK)
+        .itTransitionsTo(OrderState.OPEN)
+        .when(OrderState.OPEN).receives(OrderEvent.FILL).itTransitionsTo(OrderState.FILLED)
+        .when(OrderState.OPEN).receives(OrderEvent.ACK).itDoesNotTransition()
+        .when(OrderState.OPEN).receives(OrderEvent.CANCEL).itEnds()
+        .when(OrderState.FILLED).itEnds();
+  }
+
+  @Test
+  void shouldTransitionThroughEnumStates() {
+    stateMachine.appendEntryActions(OrderState.OPEN,
+        (ev, sm) -> sm.getContext().add("open " + ev.getName()));
+    stateMachine.appendExitActions(OrderState.OPEN,
+        (ev, sm) -> sm.getContext().add("exit open " + ev.getPayload()));
+    stateMachine.appendEntryActions(OrderState.FILLED,
+        (ev, sm) -> sm.getContext().add("filled " + ev.getPayload()));
+
+    assertNull(stateMachine.getCurrentStateConstant());
+    stateMachine.start();
+    assertEquals(OrderState.NEW, stateMachine.getCurrentStateConstant());
+    stateMachine.fire(OrderEvent.ACK);
+    TestingUtil.waitForAllEventsToProcess(stateMachine);
+    assertEquals(OrderState.OPEN, stateMachine.getCurrentStateConstant());
+    stateMachine.fire(OrderEvent.ACK);
+    TestingUtil.waitForAllEventsToProcess(stateMachine);
+    assertEquals(OrderState.OPEN, stateMachine.getCurrentStateConstant());
+    stateMachine.fire(OrderEvent.FILL, 100);
+    TestingUtil.waitForMachineToEnd(stateMachine);
+    assertTrue(stateMachine.isEnded());
+    assertEquals(List.of("open ACK", "exit open 100", "filled 100"), stateMachine.getContext());
+  }
+
+  @Test
+  void shouldEndOnEvent() {
+    stateMachine.startInState(OrderState.OPEN);
+    assertEquals(OrderState.OPEN, stateMachine.getCurrentStateConstant());
+    stateMachine.fire(new EnumStateEvent<>(OrderEvent.CANCEL));
+    TestingUtil.waitForMachineToEnd(stateMachine);
+    assertTrue(stateMachine.isEnded());
+  }
+
+  @Test
+  void shouldUseOrdinalsAsIds() {
+    stateMachine.start();
+    TransitionTable<List<String>, Integer> transitionTable = stateMachine.getTransitionTable();
+    for (OrderState state : OrderState.values()) {
+      assertEquals(state.ordinal(), transitionTable.getStateId(stateMachine.getState(state)));
+    }
+    for (OrderEvent event : OrderEvent.values()) {
+      assertEquals(event.ordinal(), transitionTable.getEventId(stateMachine.getEvent(event)));
+      assertEquals(event.ordinal(), transitionTable.getEventId(new EnumStateEvent<>(event, 1)));
+    }
+    assertEquals(OrderState.NEW.ordinal(), stateMachine.getCurrentStateId());
+  }
+
+  @Test
+  void shouldShareStatesAndEventsPerConstant() {
+    assertSame(stateMachine.getState(OrderState.OPEN), stateMachine.getState(OrderState.OPEN));
+    assertSame(stateMachine.getEvent(OrderEvent.FILL), stateMachine.getEvent(OrderEvent.FILL));
+    assertEquals(new EnumStateEvent<>(OrderEvent.FILL), stateMachine.getEvent(OrderEvent.FILL));
+    assertFalse(new EnumStateEvent<>(OrderEvent.FILL).equals(new NamedStateEvent<>("FILL")));
+  }
+
+  @Test
+  void shouldNotConfigureOnceStarted() {
+    stateMachine.start();
+    assertThrows(IllegalStateException.class, () -> stateMachine.when(OrderState.NEW));
+  }
+
+  private enum OrderState {
+    NEW, OPEN, FILLED
+  }
+
+  private enum OrderEvent {
+    ACK, FILL, CANCEL
+  }
+}
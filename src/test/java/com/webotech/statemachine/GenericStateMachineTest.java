@@ -11,9 +11,11 @@ import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 
 import com.webotech.statemachine.GenericStateMachine.Builder;
+import com.webotech.statemachine.api.ScheduledEvent;
 import com.webotech.statemachine.api.State;
 import com.webotech.statemachine.api.StateAction;
 import com.webotech.statemachine.api.StateEvent;
@@ -22,9 +24,14 @@ import com.webotech.statemachine.api.StateMachineListener;
 import com.webotech.statemachine.strategy.EventProcessingStrategy;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -136,6 +143,49 @@ class GenericStateMachineTest {
     assertTrue(stateMachine.isEnded());
   }
 
+  @Test
+  void shouldStopGracefully() {
+    StateMachineListener<List<String>, Void> listener = mock(StateMachineListener.class);
+    txtStateMachine.setStateMachineListener(listener);
+    State<List<String>, Void> active = new NamedState<>("ACTIVE");
+    active.appendEntryActions((ev, sm) -> {
+      TestingUtil.sleep(10);
+      sm.getContext().add(ev.getName());
+    });
+    txtStateMachine.initialSate(active).receives(event1).itTransitionsTo(active);
+    txtStateMachine.start();
+    for (int i = 0; i < 10; i++) {
+      txtStateMachine.fire(event1);
+    }
+    assertTrue(txtStateMachine.stopGracefully(Duration.ofSeconds(5)));
+    assertTrue(txtStateMachine.isEnded());
+    assertEquals(11, txtStateMachine.getContext().size());
+    assertEquals(GenericStateMachine.RESERVED_STATE_NAME_END,
+        txtStateMachine.getCurrentState().getName());
+    verify(listener).onStateChangeEnd(active, txtStateMachine.getStopEvent(),
+        txtStateMachine.getEndState());
+    assertFalse(txtStateMachine.tryFire(event1));
+    assertTrue(txtStateMachine.stopGracefully(Duration.ofSeconds(5)));
+  }
+
+  @Test
+  void shouldStopImmediatelyWhenDrainTimesOut() {
+    State<List<String>, Void> slow = new NamedState<>("SLOW");
+    slow.appendEntryActions((ev, sm) -> TestingUtil.sleep(50));
+    txtStateMachine.initialSate(slow).receives(event1).itTransitionsTo(slow);
+    txtStateMachine.start();
+    for (int i = 0; i < 10; i++) {
+      txtStateMachine.fire(event1);
+    }
+    assertFalse(txtStateMachine.stopGracefully(Duration.ofMillis(20)));
+    assertTrue(txtStateMachine.isEnded());
+    GenericStateMachine<Void, Void> unstarted = new GenericStateMachine.Builder<Void, Void>()
+        .build();
+    unstarted.initialSate(state1).receives(event1).itEnds();
+    assertTrue(unstarted.stopGracefully(Duration.ofSeconds(1)));
+    assertThrows(IllegalStateException.class, unstarted::start);
+  }
+
   @Test
   void shouldEnsureContextIsConsistent() {
     State<List<String>, Void> one = new NamedState<>("one");
@@ -273,7 +323,165 @@ class GenericStateMachineTest {
   void shouldNotStartMultipleTimes() {
     stateMachine.initialSate(state1).receives(event1).itEnds();
     stateMachine.start();
-    assertThrows(IllegalStateException.class, () -> stateMachine.start());
+    IllegalStateException e = assertThrows(IllegalStateException.class,
+        () -> stateMachine.start());
+    assertEquals("The state machine has already been started", e.getMessage());
+    assertThrows(IllegalStateException.class, () -> stateMachine.startInState(state1));
+  }
+
+  @Test
+  void shouldNotConfigureOnceStarted() {
+    stateMachine.initialSate(state1).receives(event1).itTransitionsTo(state2);
+    stateMachine.start();
+    assertThrows(IllegalStateException.class, () -> stateMachine.when(state2));
+    assertThrows(IllegalStateException.class, () -> stateMachine.receives(event2));
+    assertThrows(IllegalStateException.class, () -> stateMachine.itEnds());
+    assertThrows(IllegalStateException.class, () -> stateMachine.itTransitionsTo(state1));
+    assertThrows(IllegalStateException.class, () -> stateMachine.itDoesNotTransition());
+    assertThrows(IllegalStateException.class,
+        () -> stateMachine.timesOutAfter(Duration.ofSeconds(1)));
+  }
+
+  @Test
+  void shouldStartAfterFailedStart() {
+    stateMachine.initialSate(state1).receives(event1).itTransitionsTo(state2);
+    assertThrows(IllegalStateException.class,
+        () -> stateMachine.startInState(new NamedState<>("state-unknown")));
+    assertFalse(stateMachine.isStarted());
+    stateMachine.startInState(state1);
+    assertTrue(stateMachine.isStarted());
+  }
+
+  @Test
+  void shouldTryFire() {
+    stateMachine.initialSate(state1).receives(event1).itEnds();
+    assertFalse(stateMachine.tryFire(event1));
+    stateMachine.start();
+    assertTrue(stateMachine.tryFire(event1));
+    TestingUtil.waitForMachineToEnd(stateMachine);
+    assertFalse(stateMachine.tryFire(event1));
+  }
+
+  @Test
+  void shouldFireAll() {
+    stateMachine.initialSate(state1).receives(event1).itTransitionsTo(state2).when(state2)
+        .receives(event1).itEnds();
+    assertEquals(0, stateMachine.fireAll(event1, event1));
+    stateMachine.start();
+    assertEquals(2, stateMachine.fireAll(List.of(event1, event1)));
+    TestingUtil.waitForMachineToEnd(stateMachine);
+    assertEquals(0, stateMachine.fireAll(event1));
+  }
+
+  @Test
+  void shouldFireAsync() throws Exception {
+    stateMachine.initialSate(state1).receives(event1).itTransitionsTo(state2).when(state2)
+        .receives(event2).itEnds();
+    CompletableFuture<State<Void, Void>> beforeStart = stateMachine.fireAsync(event1);
+    assertTrue(beforeStart.isCompletedExceptionally());
+    stateMachine.start();
+    assertEquals(state2, stateMachine.fireAsync(event1).get(5, TimeUnit.SECONDS));
+    ExecutionException unmapped = assertThrows(ExecutionException.class,
+        () -> stateMachine.fireAsync(event1).get(5, TimeUnit.SECONDS));
+    assertTrue(unmapped.getCause() instanceof IllegalStateException);
+    assertEquals(stateReserved2, stateMachine.fireAsync(event2).get(5, TimeUnit.SECONDS));
+    assertTrue(stateMachine.fireAsync(event2).isCompletedExceptionally());
+  }
+
+  @Test
+  void shouldReadConsistentSnapshot() throws Exception {
+    stateMachine.initialSate(state1).receives(event1).itTransitionsTo(state2).when(state2)
+        .receives(event1).itTransitionsTo(state1);
+    long startMillis = System.currentTimeMillis();
+    stateMachine.start();
+    StateMachine.Snapshot<Void, Void> started = stateMachine.getSnapshot();
+    assertEquals(state1, started.state());
+    assertEquals(1, started.sequence());
+    assertTrue(started.transitionTimeMillis() >= startMillis);
+    AtomicBoolean consistent = new AtomicBoolean(true);
+    AtomicBoolean reading = new AtomicBoolean(true);
+    Thread reader = new Thread(() -> {
+      long lastSequence = 0;
+      while (reading.get()) {
+        StateMachine.Snapshot<Void, Void> snapshot = stateMachine.getSnapshot();
+        // the state alternates so it is in state1 after an odd number of updates
+        if (snapshot.sequence() < lastSequence
+            || snapshot.state() != (snapshot.sequence() % 2 == 1 ? state1 : state2)) {
+          consistent.set(false);
+        }
+        lastSequence = snapshot.sequence();
+      }
+    });
+    reader.start();
+    for (int i = 0; i < 1000; i++) {
+      stateMachine.fire(event1);
+    }
+    stateMachine.fireAsync(event1).get(5, TimeUnit.SECONDS);
+    reading.set(false);
+    reader.join(5000);
+    assertTrue(consistent.get());
+    assertEquals(1002, stateMachine.getSnapshot().sequence());
+    assertEquals(state2, stateMachine.getSnapshot().state());
   }
 
-}
\ No newline at end of file
+  @Test
+  void shouldNotOverwriteEndStateWithConcurrentUpdate() throws InterruptedException {
+    stateMachine.initialSate(state1).receives(event1).itTransitionsTo(state2).when(state2)
+        .receives(event1).itTransitionsTo(state1);
+    stateMachine.start();
+    AtomicBoolean updating = new AtomicBoolean(true);
+    Thread updater = new Thread(() -> {
+      while (updating.get()) {
+        stateMachine.updateCurrentState(state2);
+        stateMachine.updateCurrentState(state1);
+      }
+    });
+    updater.start();
+    TestingUtil.sleep(10);
+    stateMachine.stop();
+    long endSequence = stateMachine.getSnapshot().sequence();
+    TestingUtil.sleep(10);
+    updating.set(false);
+    updater.join(5000);
+    assertTrue(stateMachine.isEnded());
+    assertEquals(GenericStateMachine.RESERVED_STATE_NAME_END,
+        stateMachine.getCurrentState().getName());
+    assertEquals(endSequence, stateMachine.getSnapshot().sequence());
+  }
+
+  @Test
+  void shouldFireAfterDelay() {
+    stateMachine.initialSate(state1).receives(event1).itTransitionsTo(state2).when(state2)
+        .receives(event2).itEnds();
+    stateMachine.start();
+    ScheduledEvent cancelled = stateMachine.fireAfter(Duration.ofMillis(10), event2);
+    assertTrue(cancelled.cancel());
+    ScheduledEvent scheduled = stateMachine.fireAfter(Duration.ofMillis(20), event1);
+    assertEquals(state1, stateMachine.getCurrentState());
+    assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+        () -> stateMachine.getCurrentState() == state2));
+    assertTrue(scheduled.isExpired());
+    assertFalse(cancelled.isExpired());
+  }
+
+  @Test
+  void shouldTimeOutOfState() {
+    State<Void, Void> timedOut = new NamedState<>("TIMED-OUT");
+    List<GenericStateMachine<Void, Void>> stateMachines = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      GenericStateMachine<Void, Void> sm = new GenericStateMachine.Builder<Void, Void>().build();
+      sm.initialSate(state1).timesOutAfter(Duration.ofMillis(30)).itTransitionsTo(timedOut)
+          .when(state1).receives(event1).itTransitionsTo(state2).when(state2).receives(event2)
+          .itEnds().when(timedOut).receives(event2).itEnds();
+      sm.start();
+      stateMachines.add(sm);
+    }
+    GenericStateMachine<Void, Void> acked = stateMachines.get(1);
+    acked.fire(event1);
+    assertTrue(acked.isStaleTimeout(acked.getDefinition().getTimeoutEvent()));
+    assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+        () -> stateMachines.get(0).getCurrentState() == timedOut));
+    TestingUtil.sleep(50);
+    assertEquals(state2, acked.getCurrentState());
+  }
+}
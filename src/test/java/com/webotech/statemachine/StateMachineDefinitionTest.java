@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StateMachineDefinitionTest {
+
+  private static final State<List<String>, Void> state1 = new NamedState<>("STATE-1");
+  private static final State<List<String>, Void> state2 = new NamedState<>("STATE-2");
+  private static final StateEvent<Void> event1 = new NamedStateEvent<>("event-1");
+  private static final StateEvent<Void> event2 = new NamedStateEvent<>("event-2");
+  private StateMachineDefinition<List<String>, Void> definition;
+
+  @BeforeEach
+  void setup() {
+    definition = new StateMachineDefinition.Builder<List<String>, Void>().initialSate(state1)
+        .receives(event1).itTransitionsTo(state2).when(state2).receives(event2).itEnds().build();
+  }
+
+  @Test
+  void shouldBuildDefinition() {
+    TransitionTable<List<String>, Void> table = definition.getTransitionTable();
+    assertSame(state1, definition.getInitialState());
+    assertEquals(table.getStateId(state2),
+        table.getTransition(table.getStateId(state1), table.getEventId(event1)));
+    assertEquals(table.getStateId(definition.getEndState()),
+        table.getTransition(table.getStateId(state2), table.getEventId(event2)));
+    assertEquals("_NOOP_", definition.getNoopState().getName());
+    assertEquals("_UNINITIALISED_", definition.getUninitialisedState().getName());
+    assertEquals("_immediate_", definition.getImmediateEvent().getName());
+  }
+
+  @Test
+  void shouldConfigureTimeouts() {
+    StateMachineDefinition<List<String>, Void> timeoutDefinition = new StateMachineDefinition.Builder<List<String>, Void>().initialSate(
+            state1).timesOutAfter(Duration.ofSeconds(5)).itTransitionsTo(state2).when(state2)
+        .receives(event2).itEnds().build();
+    TransitionTable<List<String>, Void> table = timeoutDefinition.getTransitionTable();
+    assertTrue(timeoutDefinition.hasTimeouts());
+    assertEquals(Duration.ofSeconds(5), timeoutDefinition.getTimeout(table.getStateId(state1)));
+    assertNull(timeoutDefinition.getTimeout(table.getStateId(state2)));
+    assertEquals(table.getStateId(state2), table.getTransition(table.getStateId(state1),
+        table.getEventId(timeoutDefinition.getTimeoutEvent())));
+    assertEquals("_timeout_", timeoutDefinition.getTimeoutEvent().getName());
+    assertFalse(definition.hasTimeouts());
+
+    StateMachineDefinition.Builder<Void, Void> builder = new StateMachineDefinition.Builder<Void, Void>().initialSate(
+        new NamedState<>("STATE-1"));
+    assertThrows(IllegalStateException.class, () -> builder.timesOutAfter(Duration.ZERO));
+    assertThrows(IllegalStateException.class,
+        () -> builder.receives(new NamedStateEvent<>("_timeout_")));
+    builder.timesOutAfter(Duration.ofMillis(1)).itEnds().when(new NamedState<>("STATE-1"));
+    assertThrows(IllegalStateException.class, () -> builder.timesOutAfter(Duration.ofMillis(2)));
+  }
+
+  @Test
+  void shouldShareReservedStopEvent() {
+    assertEquals("_stop_", definition.getStopEvent().getName());
+    assertSame(definition.getStopEvent(), newStateMachine().getStopEvent());
+    assertSame(newStateMachine().getStopEvent(), newStateMachine().getStopEvent());
+    StateMachineDefinition.Builder<Void, Void> builder = new StateMachineDefinition.Builder<Void, Void>().initialSate(
+        new NamedState<>("STATE-1"));
+    assertThrows(IllegalStateException.class,
+        () -> builder.receives(new NamedStateEvent<>("_stop_")));
+  }
+
+  @Test
+  void shouldValidateWhenBuilt() {
+    StateMachineDefinition.Builder<Void, Void> builder = new StateMachineDefinition.Builder<>();
+    assertThrows(IllegalStateException.class, builder::build);
+    builder.initialSate(new NamedState<>("STATE-1")).receives(new NamedStateEvent<>("event-1"));
+    assertThrows(IllegalStateException.class, builder::build);
+  }
+
+  @Test
+  void shouldShareDefinitionBetweenStateMachines() {
+    GenericStateMachine<List<String>, Void> sm1 = newStateMachine();
+    GenericStateMachine<List<String>, Void> sm2 = newStateMachine();
+    sm1.start();
+    sm2.start();
+    assertSame(definition, sm1.getDefinition());
+    assertSame(definition.getTransitionTable(), sm1.getTransitionTable());
+    assertSame(sm1.getTransitionTable(), sm2.getTransitionTable());
+    assertNotSame(sm1.getContext(), sm2.getContext());
+
+    sm1.fire(event1);
+    TestingUtil.waitForAllEventsToProcess(sm1);
+    assertSame(state2, sm1.getCurrentState());
+    assertSame(state1, sm2.getCurrentState());
+
+    sm1.fire(event2);
+    TestingUtil.waitForMachineToEnd(sm1);
+    assertTrue(sm1.isEnded());
+    assertSame(state1, sm2.getCurrentState());
+  }
+
+  @Test
+  void shouldNotConfigureStateMachineWithDefinition() {
+    GenericStateMachine<List<String>, Void> stateMachine = newStateMachine();
+    assertThrows(IllegalStateException.class, () -> stateMachine.when(state2));
+    assertThrows(IllegalStateException.class, () -> stateMachine.receives(event1));
+  }
+
+  @Test
+  void shouldStartInStateWithDefinition() {
+    GenericStateMachine<List<String>, Void> stateMachine = newStateMachine();
+    stateMachine.startInState(state2);
+    assertSame(state2, stateMachine.getCurrentState());
+    assertEquals(definition.getTransitionTable().getStateId(state2),
+        stateMachine.getCurrentStateId());
+    assertThrows(IllegalStateException.class,
+        () -> newStateMachine().startInState(new NamedState<>("UNKNOWN")));
+  }
+
+  private GenericStateMachine<List<String>, Void> newStateMachine() {
+    return new GenericStateMachine.Builder<List<String>, Void>().setDefinition(definition)
+        .setContext(new ArrayList<>()).build();
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.strategy.EventProcessingStrategy;
+import com.webotech.statemachine.strategy.EventProcessingStrategyFactory;
+import com.webotech.statemachine.strategy.EventProcessingStrategyFactory.Config;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class StateMachineSubscriberTest {
+
+  private static final StateEvent<Integer> tick = new NamedStateEvent<>("tick");
+  private static final StateEvent<Integer> stop = new NamedStateEvent<>("stop");
+
+  @Test
+  void shouldRequestOnlyWhatFitsInTheQueue() {
+    EventProcessingStrategy<List<Integer>, Integer> strategy = EventProcessingStrategyFactory.createDefaultStrategy(
+        new Config<List<Integer>, Integer>().withMaxQueueSize(4));
+    GenericStateMachine<List<Integer>, Integer> stateMachine = newStateMachine(strategy);
+    StateMachineSubscriber<List<Integer>, Integer> subscriber = new StateMachineSubscriber<>(
+        stateMachine, 16);
+    try (SubmissionPublisher<StateEvent<Integer>> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(subscriber);
+      for (int i = 0; i < 50; i++) {
+        StateEvent<Integer> event = new NamedStateEvent<>(tick.getName());
+        event.setPayload(i);
+        publisher.submit(event);
+      }
+      assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+          () -> stateMachine.getContext().size() == 50));
+    }
+    assertEquals(0, strategy.getDroppedEventCount());
+    assertEquals(0, subscriber.getRejectedEventCount());
+    for (int i = 0; i < 50; i++) {
+      assertEquals(i, stateMachine.getContext().get(i));
+    }
+  }
+
+  @Test
+  void shouldCancelWhenMachineEnds() {
+    GenericStateMachine<List<Integer>, Integer> stateMachine = newStateMachine(
+        EventProcessingStrategyFactory.createDefaultStrategy());
+    StateMachineSubscriber<List<Integer>, Integer> subscriber = new StateMachineSubscriber<>(
+        stateMachine);
+    Flow.Subscription subscription = mock(Flow.Subscription.class);
+    subscriber.onSubscribe(subscription);
+    verify(subscription).request(StateMachineSubscriber.DEFAULT_MAX_REQUEST);
+    subscriber.onNext(stop);
+    assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS, stateMachine::isEnded));
+    subscriber.onNext(tick);
+    verify(subscription).cancel();
+    assertEquals(1, subscriber.getRejectedEventCount());
+    assertThrows(IllegalArgumentException.class,
+        () -> new StateMachineSubscriber<>(stateMachine, 0));
+  }
+
+  private static GenericStateMachine<List<Integer>, Integer> newStateMachine(
+      EventProcessingStrategy<List<Integer>, Integer> strategy) {
+    State<List<Integer>, Integer> ticking = new NamedState<>("TICKING");
+    ticking.appendEntryActions((ev, sm) -> {
+      if (ev != null && ev.getPayload() != null) {
+        TestingUtil.sleep(1);
+        sm.getContext().add(ev.getPayload());
+      }
+    });
+    GenericStateMachine<List<Integer>, Integer> stateMachine = new GenericStateMachine.Builder<List<Integer>, Integer>().setContext(
+        new CopyOnWriteArrayList<>()).setEventProcessingStrategy(strategy).build();
+    stateMachine.initialSate(ticking).receives(tick).itTransitionsTo(ticking).when(ticking)
+        .receives(stop).itEnds();
+    stateMachine.start();
+    return stateMachine;
+  }
+}
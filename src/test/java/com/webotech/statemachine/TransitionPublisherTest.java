@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.webotech.statemachine.TransitionPublisher.Transition;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class TransitionPublisherTest {
+
+  private static final State<Void, String> state1 = new NamedState<>("STATE-1");
+  private static final State<Void, String> state2 = new NamedState<>("STATE-2");
+  private static final StateEvent<String> event1 = new NamedStateEvent<>("event-1");
+  private static final StateEvent<String> event2 = new NamedStateEvent<>("event-2");
+
+  @Test
+  void shouldPublishTransitionsOnDemand() {
+    List<Transition<Void, String>> transitions = new CopyOnWriteArrayList<>();
+    AtomicBoolean completed = new AtomicBoolean();
+    try (TransitionPublisher<Void, String> publisher = new TransitionPublisher<>()) {
+      publisher.subscribe(new Flow.Subscriber<>() {
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+          this.subscription = subscription;
+          subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Transition<Void, String> transition) {
+          transitions.add(transition);
+          subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+          // not expected
+        }
+
+        @Override
+        public void onComplete() {
+          completed.set(true);
+        }
+      });
+      assertEquals(1, publisher.getSubscriberCount());
+      GenericStateMachine<Void, String> stateMachine = new GenericStateMachine.Builder<Void, String>().setStateMachineListener(
+          publisher).build();
+      stateMachine.initialSate(state1).receives(event1).itTransitionsTo(state2).when(state2)
+          .receives(event2).itTransitionsTo(state1);
+      stateMachine.start();
+      event1.setPayload("payload");
+      stateMachine.fire(event1);
+      stateMachine.fire(event2);
+      assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+          () -> transitions.size() == 3));
+    }
+    assertEquals(state1, transitions.get(0).toState());
+    assertEquals(new Transition<>(state1, "event-1", "payload", state2), transitions.get(1));
+    assertEquals(new Transition<>(state2, "event-2", null, state1), transitions.get(2));
+    assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS, completed::get));
+  }
+}
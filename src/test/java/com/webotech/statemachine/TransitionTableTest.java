@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TransitionTableTest {
+
+  private static final State<Void, Void> state1 = new NamedState<>("STATE-1");
+  private static final State<Void, Void> state2 = new NamedState<>("STATE-2");
+  private static final State<Void, Void> state3 = new NamedState<>("STATE-3");
+  private static final State<Void, Void> endState = new NamedState<>("_END_");
+  private static final StateEvent<Void> event1 = new NamedStateEvent<>("event-1");
+  private static final StateEvent<Void> event2 = new NamedStateEvent<>("event-2");
+  private static final StateEvent<Void> immediateEvent = new NamedStateEvent<>("_immediate_");
+  private TransitionTable<Void, Void> transitionTable;
+
+  @BeforeEach
+  void setup() {
+    Map<State<Void, Void>, Map<StateEvent<Void>, State<Void, Void>>> states = Map.of(state1,
+        Map.of(event1, state2), state2, Map.of(event1, state1, event2, state3), state3,
+        Map.of(immediateEvent, endState), endState, Map.of());
+    transitionTable = TransitionTable.compile(states, List.of(state1, state2),
+        List.of(event2, event1), endState, immediateEvent);
+  }
+
+  @Test
+  void shouldAssignIdsInGivenOrder() {
+    assertEquals(0, transitionTable.getStateId(state1));
+    assertEquals(1, transitionTable.getStateId(state2));
+    assertEquals(0, transitionTable.getEventId(event2));
+    assertEquals(1, transitionTable.getEventId(event1));
+    assertEquals(4, transitionTable.getStateCount());
+    assertEquals(3, transitionTable.getEventCount());
+    assertSame(state1, transitionTable.getState(0));
+  }
+
+  @Test
+  void shouldResolveTransitions() {
+    int stateId1 = transitionTable.getStateId(state1);
+    int stateId2 = transitionTable.getStateId(state2);
+    int eventId1 = transitionTable.getEventId(new NamedStateEvent<>("event-1"));
+    int eventId2 = transitionTable.getEventId(event2);
+    assertEquals(stateId2, transitionTable.getTransition(stateId1, eventId1));
+    assertEquals(stateId1, transitionTable.getTransition(stateId2, eventId1));
+    assertEquals(transitionTable.getStateId(state3), transitionTable.getTransition(stateId2,
+        eventId2));
+    assertEquals(TransitionTable.NO_ID, transitionTable.getTransition(stateId1, eventId2));
+    assertEquals(TransitionTable.NO_ID,
+        transitionTable.getTransition(stateId1, TransitionTable.NO_ID));
+    assertEquals(TransitionTable.NO_ID,
+        transitionTable.getEventId(new NamedStateEvent<>("unknown")));
+  }
+
+  @Test
+  void shouldCacheNamedEventIdPerTable() {
+    NamedStateEvent<Void> event = new NamedStateEvent<>("event-1");
+    assertEquals(NamedStateEvent.EventId.UNCACHED, event.getCachedEventId(transitionTable));
+    assertEquals(1, transitionTable.getEventId(event));
+    assertEquals(1, event.getCachedEventId(transitionTable));
+    TransitionTable<Void, Void> otherTable = TransitionTable.compile(
+        Map.of(state1, Map.of(event1, endState), endState, Map.of()), List.of(state1),
+        List.of(event1), endState, immediateEvent);
+    assertEquals(0, otherTable.getEventId(event));
+    assertEquals(1, transitionTable.getEventId(event));
+  }
+
+  @Test
+  void shouldFlagStatesThatEndOnEntry() {
+    assertFalse(transitionTable.isEndOnEntry(transitionTable.getStateId(state1)));
+    assertTrue(transitionTable.isEndOnEntry(transitionTable.getStateId(state3)));
+    assertFalse(transitionTable.isEndOnEntry(transitionTable.getStateId(endState)));
+  }
+}
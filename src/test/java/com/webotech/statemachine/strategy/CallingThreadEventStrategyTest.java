@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.NamedState;
+import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CallingThreadEventStrategyTest {
+
+  private static final StateEvent<Integer> tick = new NamedStateEvent<>("tick");
+  private static final StateEvent<Integer> echo = new NamedStateEvent<>("echo");
+  private static final StateEvent<Integer> fail = new NamedStateEvent<>("fail");
+  private UnexpectedFlowListener<List<String>, Integer> unexpectedFlowListener;
+  private CallingThreadEventStrategy<List<String>, Integer> strategy;
+  private GenericStateMachine<List<String>, Integer> stateMachine;
+  private State<List<String>, Integer> ticking;
+
+  @BeforeEach
+  void setup() {
+    unexpectedFlowListener = mock(UnexpectedFlowListener.class);
+    strategy = new CallingThreadEventStrategy<>(mock(BiConsumer.class), unexpectedFlowListener);
+    ticking = new NamedState<>("TICKING");
+    State<List<String>, Integer> echoing = new NamedState<>("ECHOING");
+    stateMachine = new GenericStateMachine.Builder<List<String>, Integer>().setContext(
+        new ArrayList<>()).setEventProcessingStrategy(strategy).build();
+    ticking.appendEntryActions((ev, sm) -> {
+      if (ev.getPayload() == null) {
+        return;
+      }
+      sm.getContext().add(ev.getName() + ev.getPayload() + "@" + Thread.currentThread().getName());
+      if (ev.getPayload() % 2 == 0) {
+        // re-entrant fires are processed after this transition has completed
+        for (int i = 0; i < 20; i++) {
+          echo.setPayload(i);
+          sm.fire(echo);
+        }
+        sm.getContext().add("end of " + ev.getPayload());
+      }
+    });
+    echoing.appendEntryActions((ev, sm) -> sm.getContext().add(ev.getName() + ev.getPayload()));
+    State<List<String>, Integer> failing = new NamedState<>("FAILING");
+    failing.appendEntryActions((ev, sm) -> {
+      throw new IllegalStateException("test induced");
+    });
+    stateMachine.initialSate(ticking).receives(tick).itTransitionsTo(ticking).when(ticking)
+        .receives(echo).itTransitionsTo(echoing).when(echoing).receives(echo)
+        .itTransitionsTo(echoing).when(echoing).receives(tick).itTransitionsTo(ticking)
+        .when(ticking).receives(fail).itTransitionsTo(failing).when(failing).receives(tick)
+        .itTransitionsTo(ticking);
+    stateMachine.start();
+  }
+
+  @Test
+  void shouldProcessOnCallingThread() {
+    tick.setPayload(1);
+    stateMachine.fire(tick);
+    assertEquals(List.of("tick1@" + Thread.currentThread().getName()),
+        stateMachine.getContext());
+    assertEquals(0, strategy.getEventQueueSize());
+  }
+
+  @Test
+  void shouldProcessReentrantEventsBeforeReturning() {
+    tick.setPayload(2);
+    stateMachine.fire(tick);
+    List<String> context = stateMachine.getContext();
+    assertEquals(22, context.size());
+    assertEquals("tick2@" + Thread.currentThread().getName(), context.get(0));
+    assertEquals("end of 2", context.get(1));
+    for (int i = 0; i < 20; i++) {
+      assertEquals("echo" + i, context.get(i + 2));
+    }
+    assertEquals(0, strategy.getEventQueueSize());
+  }
+
+  @Test
+  void shouldCompleteBeforeReturning() {
+    tick.setPayload(1);
+    CompletableFuture<State<List<String>, Integer>> completion = stateMachine.fireAsync(tick);
+    assertTrue(completion.isDone());
+    assertSame(ticking, completion.join());
+    stateMachine.fire(fail);
+    verify(unexpectedFlowListener).onExceptionDuringEventProcessing(eq(fail), eq(stateMachine),
+        eq(Thread.currentThread()), any(IllegalStateException.class));
+  }
+
+  @Test
+  void shouldRejectScheduledEvents() {
+    assertThrows(UnsupportedOperationException.class,
+        () -> stateMachine.fireAfter(Duration.ofMillis(1), tick));
+    StateMachine<List<String>, Integer> timingOutStateMachine =
+        new GenericStateMachine.Builder<List<String>, Integer>().setContext(new ArrayList<>())
+            .setEventProcessingStrategy(strategy).build();
+    timingOutStateMachine.initialSate(ticking).timesOutAfter(Duration.ofMillis(1)).itEnds();
+    assertThrows(UnsupportedOperationException.class, timingOutStateMachine::start);
+    assertFalse(timingOutStateMachine.isStarted());
+  }
+}
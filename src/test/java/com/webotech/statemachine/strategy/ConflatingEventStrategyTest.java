@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.NamedState;
+import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class ConflatingEventStrategyTest {
+
+  private ExecutorService executor;
+  private ConflatingEventStrategy<List<String>, Integer> strategy;
+  private GenericStateMachine<List<String>, Integer> stateMachine;
+
+  @BeforeEach
+  void setup() {
+    executor = mock(ExecutorService.class);
+    strategy = new ConflatingEventStrategy<>(
+        new DefaultEventStrategy<>(mock(BiConsumer.class), executor,
+            mock(UnexpectedFlowListener.class), -1, new ConcurrentLinkedQueue<>()));
+    State<List<String>, Integer> idle = new NamedState<>("IDLE");
+    State<List<String>, Integer> ticking = new NamedState<>("TICKING");
+    ticking.appendEntryActions((ev, sm) -> sm.getContext().add(ev.getName() + ev.getPayload()));
+    stateMachine = new GenericStateMachine.Builder<List<String>, Integer>().setContext(
+        new ArrayList<>()).setEventProcessingStrategy(strategy).build();
+    stateMachine.initialSate(idle).receives(new NamedStateEvent<>("tick"))
+        .itTransitionsTo(ticking).when(ticking).receives(new NamedStateEvent<>("tick"))
+        .itTransitionsTo(ticking).when(ticking).receives(new NamedStateEvent<>("other"))
+        .itTransitionsTo(ticking);
+    stateMachine.start();
+  }
+
+  @Test
+  void shouldProcessLatestPayloadInOriginalPosition() {
+    StateEvent<Integer> tick = new NamedStateEvent<>("tick");
+    tick.setPayload(1);
+    assertTrue(strategy.tryProcessEvent(tick, stateMachine));
+    assertTrue(strategy.tryProcessEvent(newEvent("other", 0), stateMachine));
+    tick.setPayload(2);
+    assertTrue(strategy.tryProcessEvent(tick, stateMachine));
+    assertTrue(strategy.tryProcessEvent(newEvent("tick", 3), stateMachine));
+    assertEquals(2, strategy.getEventQueueSize());
+    assertEquals(2, strategy.getConflatedEventCount());
+
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertEquals(List.of("tick3", "other0"), stateMachine.getContext());
+
+    assertTrue(strategy.tryProcessEvent(newEvent("tick", 4), stateMachine));
+    assertEquals(1, strategy.getEventQueueSize());
+    drainTask.getValue().run();
+    assertEquals(List.of("tick3", "other0", "tick4"), stateMachine.getContext());
+    assertEquals(0, strategy.getDroppedEventCount());
+  }
+
+  @Test
+  void shouldReportEventConflatedIntoEventThatWasNotQueued() {
+    DefaultEventStrategy<List<String>, Integer> defaultStrategy = mock(DefaultEventStrategy.class);
+    UnexpectedFlowListener<List<String>, Integer> unexpectedFlowListener = mock(
+        UnexpectedFlowListener.class);
+    ConflatingEventStrategy<List<String>, Integer> rejectingStrategy =
+        new ConflatingEventStrategy<>(defaultStrategy);
+    StateEvent<Integer> conflatedEvent = newEvent("tick", 2);
+    when(defaultStrategy.getUnexpectedFlowListener()).thenReturn(unexpectedFlowListener);
+    when(defaultStrategy.tryProcessEvent(any(), any())).thenAnswer(i -> {
+      assertTrue(rejectingStrategy.tryProcessEvent(conflatedEvent, stateMachine));
+      return false;
+    });
+    assertFalse(rejectingStrategy.tryProcessEvent(newEvent("tick", 1), stateMachine));
+    verify(unexpectedFlowListener, times(1)).onEventDropped(conflatedEvent, stateMachine);
+
+    doReturn(true).when(defaultStrategy).tryProcessEvent(any(), any());
+    assertTrue(rejectingStrategy.tryProcessEvent(newEvent("tick", 3), stateMachine));
+    assertEquals(1, rejectingStrategy.getConflatedEventCount());
+  }
+
+  private static StateEvent<Integer> newEvent(String name, int payload) {
+    StateEvent<Integer> stateEvent = new NamedStateEvent<>(name);
+    stateEvent.setPayload(payload);
+    return stateEvent;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.NamedState;
+import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.TestingUtil;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.util.Threads;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class DedicatedThreadEventStrategyTest {
+
+  private static final StateEvent<Void> tick = new NamedStateEvent<>("tick");
+  private final UnexpectedFlowListener<List<String>, Void> unexpectedFlowListener = mock(
+      UnexpectedFlowListener.class);
+  private DedicatedThreadEventStrategy<List<String>, Void> strategy;
+
+  @AfterEach
+  void tearDown() {
+    strategy.close();
+  }
+
+  @Test
+  void shouldProcessEventsWithEachIdleStrategy() throws InterruptedException {
+    List<IdleStrategy> idleStrategies = List.of(new BusySpinIdleStrategy(),
+        new YieldingIdleStrategy(), new BackoffIdleStrategy(10, 10, Duration.ofNanos(1000),
+            Duration.ofMillis(100)), new BlockingIdleStrategy());
+    for (IdleStrategy idleStrategy : idleStrategies) {
+      strategy = newStrategy(-1, idleStrategy);
+      GenericStateMachine<List<String>, Void> stateMachine = newStateMachine(strategy);
+      for (int i = 0; i < 100; i++) {
+        stateMachine.fire(tick);
+      }
+      assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+          () -> stateMachine.getContext().size() == 100), idleStrategy.getClass().getSimpleName());
+      // let a parking idle strategy back off before firing again
+      TestingUtil.sleep(50);
+      stateMachine.fire(tick);
+      assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+          () -> stateMachine.getContext().size() == 101), idleStrategy.getClass().getSimpleName());
+      assertTrue(stateMachine.getContext().stream().allMatch("consumer-thread"::equals));
+      strategy.close();
+      strategy.getConsumerThread().join(5000);
+      assertFalse(strategy.getConsumerThread().isAlive());
+    }
+  }
+
+  @Test
+  void shouldDropEventsWhenQueueIsFull() {
+    strategy = newStrategy(1, new BlockingIdleStrategy());
+    GenericStateMachine<List<String>, Void> stateMachine = newStateMachine(strategy);
+    stateMachine.getCurrentState().appendEntryActions((ev, sm) -> TestingUtil.sleep(100));
+    stateMachine.fire(tick);
+    assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+        () -> strategy.getEventQueueSize() == 0));
+    assertTrue(strategy.tryProcessEvent(tick, stateMachine));
+    assertFalse(strategy.tryProcessEvent(tick, stateMachine));
+    assertEquals(1, strategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(tick, stateMachine);
+  }
+
+  @Test
+  void shouldDropEventsWhenClosed() {
+    strategy = newStrategy(-1, new BackoffIdleStrategy());
+    GenericStateMachine<List<String>, Void> stateMachine = newStateMachine(strategy);
+    strategy.close();
+    assertFalse(strategy.tryProcessEvent(tick, stateMachine));
+    assertEquals(1, strategy.getDroppedEventCount());
+  }
+
+  @Test
+  void shouldCompleteEventsQueuedWhileClosing() throws InterruptedException {
+    strategy = newStrategy(-1, new BusySpinIdleStrategy());
+    GenericStateMachine<List<String>, Void> stateMachine = newStateMachine(strategy);
+    List<CompletableFuture<State<List<String>, Void>>> completions = new CopyOnWriteArrayList<>();
+    List<Thread> producers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread producer = new Thread(() -> {
+        for (int j = 0; j < 5_000; j++) {
+          CompletableFuture<State<List<String>, Void>> completion = new CompletableFuture<>();
+          if (strategy.processEvent(tick, stateMachine, completion)) {
+            completions.add(completion);
+          }
+        }
+      });
+      producers.add(producer);
+      producer.start();
+    }
+    TestingUtil.sleep(1);
+    strategy.close();
+    for (Thread producer : producers) {
+      producer.join(5000);
+    }
+    strategy.getConsumerThread().join(5000);
+    assertTrue(completions.stream().allMatch(CompletableFuture::isDone));
+    assertEquals(0, strategy.getEventQueueSize());
+  }
+
+  private DedicatedThreadEventStrategy<List<String>, Void> newStrategy(int maxQueueSize,
+      IdleStrategy idleStrategy) {
+    return new DedicatedThreadEventStrategy<>(mock(BiConsumer.class),
+        Threads.newNamedDaemonThreadFactory("consumer"), unexpectedFlowListener, maxQueueSize,
+        idleStrategy);
+  }
+
+  private static GenericStateMachine<List<String>, Void> newStateMachine(
+      DedicatedThreadEventStrategy<List<String>, Void> strategy) {
+    State<List<String>, Void> ticking = new NamedState<>("TICKING");
+    ticking.appendEntryActions(
+        (ev, sm) -> sm.getContext().add(Thread.currentThread().getName().replaceAll("-\\d+$",
+            "-thread")));
+    GenericStateMachine<List<String>, Void> stateMachine = new GenericStateMachine.Builder<List<String>, Void>().setContext(
+        new CopyOnWriteArrayList<>()).setEventProcessingStrategy(strategy).build();
+    stateMachine.initialSate(ticking).receives(tick).itTransitionsTo(ticking);
+    stateMachine.start();
+    stateMachine.getContext().clear();
+    return stateMachine;
+  }
+}
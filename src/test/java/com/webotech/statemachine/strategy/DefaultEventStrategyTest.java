@@ -4,10 +4,14 @@
 
 package com.webotech.statemachine.strategy;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -18,20 +22,31 @@ import com.webotech.statemachine.GenericStateMachine;
 import com.webotech.statemachine.NamedState;
 import com.webotech.statemachine.NamedStateEvent;
 import com.webotech.statemachine.TestingUtil;
+import com.webotech.statemachine.TransitionTable;
 import com.webotech.statemachine.UnexpectedFlowListener;
 import com.webotech.statemachine.api.State;
 import com.webotech.statemachine.api.StateEvent;
 import com.webotech.statemachine.api.StateMachine;
+import com.webotech.statemachine.util.Threads;
+import com.webotech.statemachine.util.TimingWheel;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 class DefaultEventStrategyTest {
@@ -48,15 +63,20 @@ class DefaultEventStrategyTest {
   private DefaultEventStrategy<Void, Void> boundStrategy;
   private UnexpectedFlowListener<Void, Void> unexpectedFlowListener;
   private EventMachinePairPool<Void, Void> eventMachinePairPool;
+  private TransitionTable<Void, Void> transitionTable;
 
   @BeforeEach
+  @SuppressWarnings("deprecation")
   void setup() {
     executor = Executors.newSingleThreadExecutor();
     stateMachine = mock(GenericStateMachine.class, Mockito.RETURNS_DEEP_STUBS);
     BiConsumer<StateEvent<Void>, StateMachine<Void, Void>> unmappedEventHandler = mock(
         BiConsumer.class);
     Map<State<Void, Void>, Map<StateEvent<Void>, State<Void, Void>>> states = Map.of(state1,
-        Map.of(event1, state2), state2, Map.of(event1, noopState));
+        Map.of(event1, state2), state2, Map.of(event1, noopState), noopState, Map.of());
+    transitionTable = TransitionTable.compile(states, List.of(), List.of(),
+        new NamedState<>(GenericStateMachine.RESERVED_STATE_NAME_END),
+        new NamedStateEvent<>(GenericStateMachine.RESERVED_STATE_EVENT_NAME_IMMEDIATE));
     unexpectedFlowListener = mock(UnexpectedFlowListener.class);
     eventMachinePairPool = mock(EventMachinePairPool.class);
     strategy = new DefaultEventStrategy<>(unmappedEventHandler, executor,
@@ -66,8 +86,10 @@ class DefaultEventStrategyTest {
         unexpectedFlowListener, MAX_SIZE, new ConcurrentLinkedQueue<>());
     boundStrategy.setStates(states);
 
+    when(stateMachine.getTransitionTable()).thenReturn(transitionTable);
     when(stateMachine.getNoopState()).thenReturn(noopState);
     when(stateMachine.getCurrentState()).thenReturn(state1);
+    when(stateMachine.getCurrentStateId()).thenReturn(transitionTable.getStateId(state1));
     when(eventMachinePairPool.take()).thenReturn(new EventMachinePair<>());
   }
 
@@ -79,17 +101,32 @@ class DefaultEventStrategyTest {
   @Test
   void shouldProcessAllQueuedEvents() {
     CountDownLatch latch = new CountDownLatch(1);
-    when(stateMachine.getCurrentState()).thenAnswer(i -> {
+    when(stateMachine.getCurrentStateId()).thenAnswer(i -> {
       if (!latch.await(1, TimeUnit.SECONDS)) {
         fail("Timed out");
       }
-      return state1;
+      return transitionTable.getStateId(state1);
     });
     strategy.processEvent(event1, stateMachine);
     strategy.processEvent(event1, stateMachine);
     latch.countDown();
     waitForEventsToProcess(strategy);
-    verify(stateMachine, times(2)).updateCurrentState(any(State.class));
+    verify(stateMachine, times(2)).updateCurrentState(transitionTable.getStateId(state2));
+  }
+
+  private static GenericStateMachine<Void, Void> newLoggingStateMachine(String name,
+      List<String> processed, EventProcessingStrategy<Void, Void> strategy) {
+    State<Void, Void> logging = new NamedState<>("LOGGING");
+    logging.appendEntryActions((ev, sm) -> {
+      if (event1.getName().equals(ev.getName())) {
+        processed.add(name);
+      }
+    });
+    GenericStateMachine<Void, Void> stateMachine = new GenericStateMachine.Builder<Void, Void>()
+        .setEventProcessingStrategy(strategy).build();
+    stateMachine.initialSate(logging).receives(event1).itTransitionsTo(logging);
+    stateMachine.start();
+    return stateMachine;
   }
 
   private void waitForEventsToProcess(DefaultEventStrategy<Void, Void> strategy) {
@@ -104,7 +141,7 @@ class DefaultEventStrategyTest {
   @Test
   void shouldHandleUncaughtException() {
     IllegalStateException testInduced = new IllegalStateException("test induced");
-    when(stateMachine.getCurrentState()).thenThrow(testInduced);
+    when(stateMachine.getCurrentStateId()).thenThrow(testInduced);
     verifyNoInteractions(unexpectedFlowListener);
     strategy.processEvent(event1, stateMachine);
     waitForEventsToProcess(strategy);
@@ -121,7 +158,7 @@ class DefaultEventStrategyTest {
     verify(eventMachinePairPool, times(1)).take();
     verify(eventMachinePairPool, times(1)).give(any(EventMachinePair.class));
     IllegalStateException testInduced = new IllegalStateException("test induced");
-    when(stateMachine.getCurrentState()).thenThrow(testInduced);
+    when(stateMachine.getCurrentStateId()).thenThrow(testInduced);
     strategy.processEvent(event1, stateMachine);
     waitForEventsToProcess(strategy);
     verify(eventMachinePairPool, times(2)).take();
@@ -132,21 +169,27 @@ class DefaultEventStrategyTest {
   void shouldDropMaxedOutEvents() {
     StateEvent<Void> event1 = mock(StateEvent.class);
     GenericStateMachine<Void, Void> stateMachine = mock(GenericStateMachine.class);
+    when(stateMachine.getTransitionTable()).thenReturn(transitionTable);
+    when(stateMachine.getCurrentStateId()).thenReturn(transitionTable.getStateId(state1));
     CountDownLatch latch = new CountDownLatch(1);
-    when(stateMachine.getCurrentState()).thenAnswer(i -> {
-      if (!latch.await(1, TimeUnit.SECONDS)) {
-        fail("Timed out");
+    executor.execute(() -> {
+      try {
+        if (!latch.await(1, TimeUnit.SECONDS)) {
+          fail("Timed out");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
-      return state1;
     });
     verifyNoInteractions(unexpectedFlowListener);
     boundStrategy.processEvent(event1, stateMachine);
     verifyNoInteractions(unexpectedFlowListener);
     boundStrategy.processEvent(event1, stateMachine);
+    latch.countDown();
     waitForEventsToProcess(boundStrategy);
-    verify(stateMachine, times(1)).getCurrentState();
-    verify(unexpectedFlowListener, times(1)).onExceptionDuringEventProcessing(eq(event1),
-        eq(stateMachine), eq(Thread.currentThread()), any(IllegalStateException.class));
+    verify(stateMachine, times(1)).getCurrentStateId();
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+    assertEquals(1, boundStrategy.getDroppedEventCount());
   }
 
   @Test
@@ -154,6 +197,264 @@ class DefaultEventStrategyTest {
     boundStrategy.processEvent(event1, stateMachine);
     waitForEventsToProcess(boundStrategy);
     verifyNoInteractions(unexpectedFlowListener);
-    verify(stateMachine, atLeast(1)).getCurrentState();
+    verify(stateMachine, atLeast(1)).getCurrentStateId();
+  }
+
+  @Test
+  void shouldTakeTurnsOnSharedExecutor() throws InterruptedException {
+    ExecutorService sharedExecutor = Executors.newSingleThreadExecutor();
+    try {
+      CountDownLatch started = new CountDownLatch(1);
+      sharedExecutor.execute(() -> {
+        try {
+          started.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      EventProcessingStrategyFactory.Config<Void, Void> config = new EventProcessingStrategyFactory.Config<Void, Void>()
+          .withExecutor(sharedExecutor).withDrainQuantum(4, Duration.ofSeconds(1));
+      List<String> processed = new CopyOnWriteArrayList<>();
+      GenericStateMachine<Void, Void> hot = newLoggingStateMachine("hot", processed,
+          EventProcessingStrategyFactory.createDefaultStrategy(config));
+      GenericStateMachine<Void, Void> cold = newLoggingStateMachine("cold", processed,
+          EventProcessingStrategyFactory.createDefaultStrategy(config));
+      for (int i = 0; i < 10; i++) {
+        hot.fire(event1);
+      }
+      cold.fire(event1);
+      started.countDown();
+      assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+          () -> processed.size() == 11));
+      // the hot drain task is rescheduled behind the cold one after its quantum of 4 events
+      assertEquals(4, processed.indexOf("cold"));
+    } finally {
+      sharedExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldScheduleOneDrainTaskPerBurst() {
+    ExecutorService mockExecutor = mock(ExecutorService.class);
+    DefaultEventStrategy<Void, Void> burstStrategy = new DefaultEventStrategy<>(
+        mock(BiConsumer.class), mockExecutor, unexpectedFlowListener, -1,
+        new ConcurrentLinkedQueue<>());
+    burstStrategy.processEvent(event1, stateMachine);
+    burstStrategy.processEvent(event1, stateMachine);
+    burstStrategy.processEvent(event1, stateMachine);
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(mockExecutor, times(1)).execute(drainTask.capture());
+    assertEquals(3, burstStrategy.getEventQueueSize());
+
+    drainTask.getValue().run();
+    assertEquals(0, burstStrategy.getEventQueueSize());
+    verify(stateMachine, times(3)).updateCurrentState(transitionTable.getStateId(state2));
+
+    burstStrategy.processEvent(event1, stateMachine);
+    verify(mockExecutor, times(2)).execute(drainTask.getValue());
+  }
+
+  @Test
+  void shouldQueueBatchWithOneDrainTask() {
+    ExecutorService mockExecutor = mock(ExecutorService.class);
+    Queue<EventMachinePair<Void, Void>> eventQueue = new ConcurrentLinkedQueue<>();
+    DefaultEventStrategy<Void, Void> batchStrategy = new DefaultEventStrategy<>(
+        mock(BiConsumer.class), mockExecutor, unexpectedFlowListener, 3, eventQueue);
+    assertEquals(3, batchStrategy.processEvents(List.of(event1, event1, event1, event1),
+        stateMachine));
+    assertEquals(3, batchStrategy.getEventQueueSize());
+    assertEquals(3, eventQueue.size());
+    assertEquals(1, batchStrategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(mockExecutor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertEquals(0, batchStrategy.getEventQueueSize());
+    verify(stateMachine, times(3)).updateCurrentState(transitionTable.getStateId(state2));
+  }
+
+  @Test
+  void shouldRejectBatchEventsTheQueueDoesNotAccept() {
+    ExecutorService mockExecutor = mock(ExecutorService.class);
+    Queue<EventMachinePair<Void, Void>> eventQueue = new ArrayBlockingQueue<>(2);
+    DefaultEventStrategy<Void, Void> batchStrategy = new DefaultEventStrategy<>(
+        mock(BiConsumer.class), mockExecutor, unexpectedFlowListener, -1, eventQueue);
+    assertEquals(2, batchStrategy.processEvents(List.of(event1, event1, event1), stateMachine));
+    assertEquals(2, batchStrategy.getEventQueueSize());
+    assertEquals(2, eventQueue.size());
+    assertEquals(1, batchStrategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+    verify(unexpectedFlowListener, times(0)).onExceptionDuringEventProcessing(any(), any(),
+        any(), any());
+    verify(mockExecutor, times(1)).execute(any(Runnable.class));
+  }
+
+  @Test
+  void shouldTrackQueueDepth() {
+    Queue<EventMachinePair<Void, Void>> eventQueue = new ConcurrentLinkedQueue<>();
+    ExecutorService mockExecutor = mock(ExecutorService.class);
+    DefaultEventStrategy<Void, Void> depthStrategy = new DefaultEventStrategy<>(
+        mock(BiConsumer.class), mockExecutor, unexpectedFlowListener, 2, eventQueue);
+    assertEquals(0, depthStrategy.getEventQueueSize());
+    depthStrategy.processEvent(event1, stateMachine);
+    depthStrategy.processEvent(event1, stateMachine);
+    assertEquals(2, depthStrategy.getEventQueueSize());
+    depthStrategy.processEvent(event1, stateMachine);
+    assertEquals(2, depthStrategy.getEventQueueSize());
+    assertEquals(2, eventQueue.size());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(mockExecutor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertEquals(0, depthStrategy.getEventQueueSize());
+  }
+
+  @Test
+  void shouldDropOldestEvent() {
+    StateEvent<Void> event2 = new NamedStateEvent<>("event2");
+    ExecutorService mockExecutor = mock(ExecutorService.class);
+    Queue<EventMachinePair<Void, Void>> eventQueue = new ConcurrentLinkedQueue<>();
+    DefaultEventStrategy<Void, Void> policyStrategy = newPolicyStrategy(mockExecutor, eventQueue,
+        BackpressurePolicy.DROP_OLDEST);
+    CompletableFuture<State<Void, Void>> completion = new CompletableFuture<>();
+    assertTrue(policyStrategy.processEvent(event1, stateMachine, completion));
+    assertTrue(policyStrategy.tryProcessEvent(event2, stateMachine));
+    assertEquals(1, policyStrategy.getEventQueueSize());
+    assertEquals(event2, eventQueue.peek().getStateEvent());
+    assertTrue(completion.isCompletedExceptionally());
+    assertEquals(1, policyStrategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+  }
+
+  @Test
+  void shouldRejectEvent() {
+    DefaultEventStrategy<Void, Void> policyStrategy = newPolicyStrategy(
+        mock(ExecutorService.class), new ConcurrentLinkedQueue<>(), BackpressurePolicy.REJECT);
+    assertTrue(policyStrategy.tryProcessEvent(event1, stateMachine));
+    assertFalse(policyStrategy.tryProcessEvent(event1, stateMachine));
+    assertEquals(1, policyStrategy.getEventQueueSize());
+    assertEquals(1, policyStrategy.getDroppedEventCount());
+    verifyNoInteractions(unexpectedFlowListener);
+  }
+
+  @Test
+  void shouldBlockUntilTimeout() {
+    DefaultEventStrategy<Void, Void> policyStrategy = newPolicyStrategy(
+        mock(ExecutorService.class), new ConcurrentLinkedQueue<>(), BackpressurePolicy.BLOCK);
+    assertTrue(policyStrategy.tryProcessEvent(event1, stateMachine));
+    long start = System.nanoTime();
+    assertFalse(policyStrategy.tryProcessEvent(event1, stateMachine));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    assertEquals(1, policyStrategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+  }
+
+  @Test
+  void shouldNotBlockTimerThread() throws InterruptedException {
+    DefaultEventStrategy<Void, Void> policyStrategy = new DefaultEventStrategy<>(
+        mock(BiConsumer.class), mock(ExecutorService.class), unexpectedFlowListener, 1,
+        new ConcurrentLinkedQueue<>(), BackpressurePolicy.BLOCK, Duration.ofSeconds(10));
+    assertTrue(policyStrategy.tryProcessEvent(event1, stateMachine));
+    CountDownLatch latch = new CountDownLatch(1);
+    try (TimingWheel timingWheel = new TimingWheel(Duration.ofMillis(1), 8,
+        Threads.newNamedDaemonThreadFactory("timer-test"))) {
+      timingWheel.schedule(Duration.ZERO, () -> {
+        if (!policyStrategy.tryProcessEvent(event1, stateMachine)) {
+          latch.countDown();
+        }
+      });
+      assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+    assertEquals(1, policyStrategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+  }
+
+  @Test
+  void shouldBlockUntilThereIsRoom() {
+    CountDownLatch latch = new CountDownLatch(1);
+    executor.execute(() -> {
+      try {
+        if (!latch.await(1, TimeUnit.SECONDS)) {
+          fail("Timed out");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    DefaultEventStrategy<Void, Void> policyStrategy = new DefaultEventStrategy<>(
+        mock(BiConsumer.class), executor, unexpectedFlowListener, 1, new ConcurrentLinkedQueue<>(),
+        BackpressurePolicy.BLOCK, Duration.ofSeconds(5));
+    assertTrue(policyStrategy.tryProcessEvent(event1, stateMachine));
+    TestingUtil.sleep(20);
+    latch.countDown();
+    assertTrue(policyStrategy.tryProcessEvent(event1, stateMachine));
+    waitForEventsToProcess(policyStrategy);
+    assertEquals(0, policyStrategy.getDroppedEventCount());
+    verify(stateMachine, times(2)).updateCurrentState(transitionTable.getStateId(state2));
+  }
+
+  @Test
+  void shouldNotBlockDrainThread() {
+    List<Boolean> accepted = new CopyOnWriteArrayList<>();
+    DefaultEventStrategy<Void, Void> policyStrategy = new DefaultEventStrategy<>(
+        mock(BiConsumer.class), executor, unexpectedFlowListener, 1, new ConcurrentLinkedQueue<>(),
+        BackpressurePolicy.BLOCK, Duration.ofSeconds(10));
+    when(stateMachine.getCurrentStateId()).thenAnswer(i -> {
+      if (accepted.isEmpty()) {
+        accepted.add(policyStrategy.tryProcessEvent(event1, stateMachine));
+        accepted.add(policyStrategy.tryProcessEvent(event1, stateMachine));
+      }
+      return transitionTable.getStateId(state1);
+    });
+    long start = System.nanoTime();
+    assertTrue(policyStrategy.tryProcessEvent(event1, stateMachine));
+    assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+        () -> accepted.size() == 2));
+    waitForEventsToProcess(policyStrategy);
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    assertEquals(List.of(true, false), accepted);
+    assertEquals(1, policyStrategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+  }
+
+  @Test
+  void shouldBoundDrainOnCaller() {
+    ExecutorService mockExecutor = mock(ExecutorService.class);
+    doThrow(new RejectedExecutionException("test induced")).when(mockExecutor)
+        .execute(any(Runnable.class));
+    DefaultEventStrategy<Void, Void> policyStrategy = new DefaultEventStrategy<>(
+        mock(BiConsumer.class), mockExecutor, unexpectedFlowListener, new EventMachinePairPool<>(),
+        4, new ConcurrentLinkedQueue<>(), BackpressurePolicy.CALLER_RUNS, Duration.ofSeconds(1),
+        new DrainQuantum(2, Long.MAX_VALUE), null);
+    assertEquals(4, policyStrategy.processEvents(List.of(event1, event1, event1, event1),
+        stateMachine));
+    assertEquals(2, policyStrategy.getEventQueueSize());
+    verify(stateMachine, times(2)).updateCurrentState(transitionTable.getStateId(state2));
+
+    assertTrue(policyStrategy.tryProcessEvent(event1, stateMachine));
+    assertEquals(1, policyStrategy.getEventQueueSize());
+    verify(stateMachine, times(4)).updateCurrentState(transitionTable.getStateId(state2));
+  }
+
+  @Test
+  void shouldRunOnCallerWhenExecutorRejects() {
+    ExecutorService mockExecutor = mock(ExecutorService.class);
+    doThrow(new RejectedExecutionException("test induced")).when(mockExecutor)
+        .execute(any(Runnable.class));
+    DefaultEventStrategy<Void, Void> policyStrategy = newPolicyStrategy(mockExecutor,
+        new ConcurrentLinkedQueue<>(), BackpressurePolicy.CALLER_RUNS);
+    assertTrue(policyStrategy.tryProcessEvent(event1, stateMachine));
+    assertTrue(policyStrategy.tryProcessEvent(event1, stateMachine));
+    assertEquals(0, policyStrategy.getEventQueueSize());
+    assertEquals(0, policyStrategy.getDroppedEventCount());
+    verify(stateMachine, times(2)).updateCurrentState(transitionTable.getStateId(state2));
+  }
+
+  private DefaultEventStrategy<Void, Void> newPolicyStrategy(ExecutorService executor,
+      Queue<EventMachinePair<Void, Void>> eventQueue, BackpressurePolicy backpressurePolicy) {
+    return new DefaultEventStrategy<>(mock(BiConsumer.class), executor, unexpectedFlowListener, 1,
+        eventQueue, backpressurePolicy, Duration.ofMillis(50));
   }
-}
\ No newline at end of file
+}
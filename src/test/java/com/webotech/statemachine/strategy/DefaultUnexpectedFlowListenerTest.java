@@ -59,4 +59,16 @@ class DefaultUnexpectedFlowListenerTest {
           TestingUtil.asNormalisedTxt(logStream));
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  void shouldRateLimitDroppedEventWarnings() throws IOException {
+    try (OutputStream logStream = TestingUtil.initLogCaptureStream()) {
+      for (int i = 0; i < 3; i++) {
+        unexpectedFlowListener.onEventDropped(event, stateMachine);
+      }
+      assertEquals(
+          "Event NamedStateEvent[event] dropped since the queue is full, 1 dropped since the last warning\n",
+          TestingUtil.asNormalisedTxt(logStream));
+    }
+  }
+}
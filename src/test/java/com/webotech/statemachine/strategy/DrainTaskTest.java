@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DrainTaskTest {
+
+  private List<Runnable> submitted;
+  private AtomicInteger queued;
+  private AtomicInteger drained;
+
+  @BeforeEach
+  void setup() {
+    submitted = new ArrayList<>();
+    queued = new AtomicInteger();
+    drained = new AtomicInteger();
+  }
+
+  @Test
+  void shouldScheduleOnce() {
+    DrainTask drainTask = newDrainTask(DrainQuantum.UNBOUNDED);
+    queued.set(3);
+    drainTask.schedule();
+    drainTask.schedule();
+    assertEquals(1, submitted.size());
+    assertSame(drainTask, submitted.get(0));
+    assertFalse(drainTask.tryDrain(DrainQuantum.UNBOUNDED));
+
+    submitted.get(0).run();
+    assertEquals(0, queued.get());
+    assertEquals(1, drained.get());
+    assertTrue(drainTask.tryDrain(DrainQuantum.UNBOUNDED));
+    assertEquals(2, drained.get());
+  }
+
+  @Test
+  void shouldRescheduleWhenQuantumIsExhausted() {
+    DrainTask drainTask = newDrainTask(new DrainQuantum(2, Long.MAX_VALUE));
+    queued.set(3);
+    drainTask.schedule();
+    submitted.get(0).run();
+    assertEquals(1, queued.get());
+    assertEquals(0, drained.get());
+    assertEquals(2, submitted.size());
+
+    submitted.get(1).run();
+    assertEquals(0, queued.get());
+    assertEquals(1, drained.get());
+    assertEquals(2, submitted.size());
+  }
+
+  @Test
+  void shouldScheduleAgainWhenRejected() {
+    DrainTask drainTask = new DrainTask(command -> {
+      throw new RejectedExecutionException("Test exception");
+    }, DrainQuantum.UNBOUNDED) {
+      @Override
+      boolean processNext() {
+        return false;
+      }
+
+      @Override
+      boolean isEmpty() {
+        return true;
+      }
+    };
+    assertThrows(RejectedExecutionException.class, drainTask::schedule);
+    assertTrue(drainTask.tryDrain(DrainQuantum.UNBOUNDED));
+  }
+
+  private DrainTask newDrainTask(DrainQuantum drainQuantum) {
+    return new DrainTask(submitted::add, drainQuantum) {
+      @Override
+      boolean processNext() {
+        return queued.getAndUpdate(n -> Math.max(0, n - 1)) > 0;
+      }
+
+      @Override
+      boolean isEmpty() {
+        return queued.get() == 0;
+      }
+
+      @Override
+      void onDrained() {
+        drained.incrementAndGet();
+      }
+    };
+  }
+}
@@ -5,45 +5,82 @@
 package com.webotech.statemachine.strategy;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import com.webotech.statemachine.GenericStateMachine;
 import com.webotech.statemachine.NamedStateEvent;
 import com.webotech.statemachine.TestingUtil;
+import com.webotech.statemachine.UnexpectedFlowListener;
 import com.webotech.statemachine.api.StateEvent;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.time.Duration;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 class DropDuplicateEventStrategyTest {
 
   private static final StateEvent<Void> event1 = new NamedStateEvent<>("event1");
+  private static final StateEvent<Void> event2 = new NamedStateEvent<>("event2");
   private GenericStateMachine<Void, Void> stateMachine;
+  private ExecutorService executor;
   private DropDuplicateEventStrategy<Void, Void> strategy;
-  private DefaultEventStrategy<Void, Void> defaultStrategy;
 
   @BeforeEach
   void setup() {
     stateMachine = mock(GenericStateMachine.class, Mockito.RETURNS_DEEP_STUBS);
-    defaultStrategy = mock(DefaultEventStrategy.class);
-    strategy = new DropDuplicateEventStrategy<>(defaultStrategy);
+    executor = mock(ExecutorService.class);
+    strategy = new DropDuplicateEventStrategy<>(
+        new DefaultEventStrategy<>(mock(BiConsumer.class), executor,
+            mock(UnexpectedFlowListener.class), -1, new ConcurrentLinkedQueue<>()));
   }
 
   @Test
   void shouldDropDuplicateEvent() throws IOException {
-    ConcurrentLinkedQueue<EventMachinePair<Void, Void>> eventQueue = new ConcurrentLinkedQueue<>();
-    when(defaultStrategy.getEventQueue()).thenReturn(eventQueue);
-    EventMachinePair<Void, Void> eventMachinePair = new EventMachinePair<>();
-    eventMachinePair.setEventMachinePair(event1, stateMachine);
-    eventQueue.offer(eventMachinePair);
     try (OutputStream logStream = TestingUtil.initLogCaptureStream()) {
-      this.strategy.processEvent(event1, stateMachine);
-      assertEquals("Event [NamedStateEvent[event1]] already in queue, will drop it\n",
-          TestingUtil.asNormalisedTxt(logStream));
+      assertTrue(strategy.tryProcessEvent(event1, stateMachine));
+      assertTrue(strategy.tryProcessEvent(event2, stateMachine));
+      assertFalse(strategy.tryProcessEvent(new NamedStateEvent<>("event1"), stateMachine));
+      assertEquals(2, strategy.getEventQueueSize());
+      assertEquals(1, strategy.getDuplicateEventCount());
+      assertEquals(1, strategy.getDroppedEventCount());
+      assertEquals("", TestingUtil.asNormalisedTxt(logStream));
     }
   }
+
+  @Test
+  void shouldAcceptEventOnceItIsDequeued() {
+    assertTrue(strategy.tryProcessEvent(event1, stateMachine));
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertEquals(0, strategy.getEventQueueSize());
+    assertTrue(strategy.tryProcessEvent(event1, stateMachine));
+    assertEquals(0, strategy.getDuplicateEventCount());
+  }
+
+  @Test
+  void shouldAcceptEventThatWasNotQueued() {
+    DefaultEventStrategy<Void, Void> boundStrategy = new DefaultEventStrategy<>(
+        mock(BiConsumer.class), executor, mock(UnexpectedFlowListener.class), 1,
+        new ConcurrentLinkedQueue<>(), BackpressurePolicy.REJECT, Duration.ZERO);
+    DropDuplicateEventStrategy<Void, Void> boundDropStrategy = new DropDuplicateEventStrategy<>(
+        boundStrategy);
+    assertTrue(boundDropStrategy.tryProcessEvent(event1, stateMachine));
+    assertFalse(boundDropStrategy.tryProcessEvent(event2, stateMachine));
+    assertEquals(0, boundDropStrategy.getDuplicateEventCount());
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertTrue(boundDropStrategy.tryProcessEvent(event2, stateMachine));
+  }
 }
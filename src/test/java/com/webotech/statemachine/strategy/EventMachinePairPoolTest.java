@@ -4,11 +4,20 @@
 
 package com.webotech.statemachine.strategy;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
 
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.api.StateEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -40,6 +49,57 @@ class EventMachinePairPoolTest {
     assertSame(pair1, pair2);
   }
 
+  @Test
+  void shouldCountHitsAndMisses() {
+    EventMachinePair<Void, Void> pair1 = eventMachinePairPool.take();
+    eventMachinePairPool.give(pair1);
+    assertSame(pair1, eventMachinePairPool.take());
+    assertEquals(1, eventMachinePairPool.getMissCount());
+    assertEquals(1, eventMachinePairPool.getHitCount());
+    assertEquals(0, eventMachinePairPool.getOverflowCount());
+  }
+
+  @Test
+  void shouldDropObjectsWhenFull() {
+    EventMachinePairPool<Void, Void> boundPool = new EventMachinePairPool<>(2);
+    assertEquals(2, boundPool.getCapacity());
+    List<EventMachinePair<Void, Void>> pairs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      pairs.add(boundPool.take());
+    }
+    pairs.forEach(boundPool::give);
+    assertEquals(1, boundPool.getOverflowCount());
+    assertSame(pairs.get(0), boundPool.take());
+    assertSame(pairs.get(1), boundPool.take());
+    assertNotSame(pairs.get(2), boundPool.take());
+    assertEquals(4, boundPool.getMissCount());
+    assertEquals(2, boundPool.getHitCount());
+  }
+
+  @Test
+  void shouldClearObjectsThatAreGivenBack() {
+    StateEvent<String> stateEvent = new NamedStateEvent<>("event");
+    stateEvent.setPayload("payload");
+    EventMachinePairPool<Void, String> pool = new EventMachinePairPool<>();
+    EventMachinePair<Void, String> pair = pool.take();
+    pair.setEventMachinePair(stateEvent, mock(GenericStateMachine.class));
+    pair.setCompletion(new CompletableFuture<>());
+    StateEvent<String> deliveredEvent = pair.getDeliveredEvent();
+    pool.give(pair);
+    assertSame(pair, pool.take());
+    assertNull(pair.getStateEvent());
+    assertNull(pair.getStateMachine());
+    assertNull(pair.getCompletion());
+    assertNull(pair.getDeliveredEvent());
+    assertNull(deliveredEvent.getPayload());
+  }
+
+  @Test
+  void shouldRoundCapacityUp() {
+    assertEquals(EventMachinePairPool.DEFAULT_CAPACITY, eventMachinePairPool.getCapacity());
+    assertEquals(8, new EventMachinePairPool<Void, Void>(5).getCapacity());
+  }
+
   @Test
   void shouldHandleNulls() {
     try {
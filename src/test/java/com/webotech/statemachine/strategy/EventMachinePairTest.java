@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.api.StateEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EventMachinePairTest {
+
+  private StateEvent<String> stateEvent;
+  private GenericStateMachine<Void, String> stateMachine;
+  private EventMachinePair<Void, String> eventMachinePair;
+
+  @BeforeEach
+  void setup() {
+    stateEvent = new NamedStateEvent<>("event");
+    stateMachine = mock(GenericStateMachine.class);
+    eventMachinePair = new EventMachinePair<>();
+  }
+
+  @Test
+  void shouldDeliverEventWithoutPayload() {
+    eventMachinePair.setEventMachinePair(stateEvent, stateMachine);
+    assertSame(stateEvent, eventMachinePair.getDeliveredEvent());
+    assertSame(stateMachine, eventMachinePair.getStateMachine());
+  }
+
+  @Test
+  void shouldDeliverPayloadFromWhenEventWasSet() {
+    stateEvent.setPayload("payload 1");
+    eventMachinePair.setEventMachinePair(stateEvent, stateMachine);
+    stateEvent.setPayload("payload 2");
+    StateEvent<String> deliveredEvent = eventMachinePair.getDeliveredEvent();
+    assertEquals("payload 1", deliveredEvent.getPayload());
+    assertEquals("event", deliveredEvent.getName());
+    assertNotEquals(deliveredEvent, stateEvent);
+    assertNotEquals(stateEvent, deliveredEvent);
+    assertEquals(stateEvent.hashCode(), deliveredEvent.hashCode());
+    assertSame(stateEvent, PooledStateEvent.identityOf(deliveredEvent));
+  }
+
+  @Test
+  void shouldReuseDeliveredEvent() {
+    stateEvent.setPayload("payload 1");
+    eventMachinePair.setEventMachinePair(stateEvent, stateMachine);
+    StateEvent<String> deliveredEvent = eventMachinePair.getDeliveredEvent();
+    stateEvent.setPayload("payload 2");
+    eventMachinePair.setEventMachinePair(stateEvent, stateMachine);
+    assertSame(deliveredEvent, eventMachinePair.getDeliveredEvent());
+    assertEquals("payload 2", deliveredEvent.getPayload());
+  }
+
+  @Test
+  void shouldUnwrapDeliveredEventThatIsFiredAgain() {
+    stateEvent.setPayload("payload 1");
+    eventMachinePair.setEventMachinePair(stateEvent, stateMachine);
+    StateEvent<String> deliveredEvent = eventMachinePair.getDeliveredEvent();
+    EventMachinePair<Void, String> refiredPair = new EventMachinePair<>();
+    refiredPair.setEventMachinePair(deliveredEvent, stateMachine);
+    StateEvent<String> detachedEvent = PooledStateEvent.detach(deliveredEvent);
+    stateEvent.setPayload("payload 2");
+    eventMachinePair.setEventMachinePair(stateEvent, stateMachine);
+    assertSame(stateEvent, refiredPair.getStateEvent());
+    assertEquals("payload 1", refiredPair.getDeliveredEvent().getPayload());
+    assertEquals("payload 1", detachedEvent.getPayload());
+    assertEquals(deliveredEvent, detachedEvent);
+  }
+}
@@ -5,18 +5,26 @@
 package com.webotech.statemachine.strategy;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
 
+import com.webotech.statemachine.NamedStateEvent;
 import com.webotech.statemachine.UnexpectedFlowListener;
 import com.webotech.statemachine.api.StateEvent;
 import com.webotech.statemachine.api.StateMachine;
 import com.webotech.statemachine.strategy.EventProcessingStrategyFactory.Config;
+import com.webotech.statemachine.util.Threads;
+import java.time.Duration;
 import java.util.Queue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import org.junit.jupiter.api.Test;
 
@@ -29,6 +37,35 @@ class EventProcessingStrategyFactoryTest {
     assertSame(executor, config.getExecutor());
   }
 
+  @Test
+  void shouldShutDownOwnedExecutorWhenAllStrategiesAreReleased() {
+    Config<Void, Void> config = new Config<>();
+    EventProcessingStrategy<Void, Void> strategy1 = EventProcessingStrategyFactory.createDefaultStrategy(
+        config);
+    EventProcessingStrategy<Void, Void> strategy2 = EventProcessingStrategyFactory.createRingBufferStrategy(
+        config);
+    SharedExecutor sharedExecutor = config.shareExecutor();
+    sharedExecutor.release();
+    strategy1.retain();
+    strategy1.retain();
+    strategy2.retain();
+    strategy1.release();
+    strategy2.release();
+    assertFalse(sharedExecutor.executor().isShutdown());
+    strategy1.release();
+    assertTrue(sharedExecutor.executor().isShutdown());
+    assertThrows(IllegalStateException.class, strategy1::retain);
+    assertNotSame(sharedExecutor.executor(), config.shareExecutor().executor());
+
+    ExecutorService executor = mock(ExecutorService.class);
+    EventProcessingStrategy<Void, Void> strategy3 = EventProcessingStrategyFactory.createDefaultStrategy(
+        new Config<Void, Void>().withExecutor(executor));
+    strategy3.retain();
+    strategy3.release();
+    strategy3.retain();
+    verifyNoInteractions(executor);
+  }
+
   @Test
   void shouldBuildWithUnmappedEventHandler() {
     BiConsumer<StateEvent<Void>, StateMachine<Void, Void>> unmappedEventHander = mock(
@@ -77,6 +114,8 @@ class EventProcessingStrategyFactoryTest {
     assertInstanceOf(DefaultEventStrategy.class, strategy1);
     assertNotNull(((DefaultEventStrategy) strategy1).getEventQueue());
     assertNotSame(strategy1, strategy2);
+    assertNotSame(((DefaultEventStrategy) strategy1).getEventQueue(),
+        ((DefaultEventStrategy) strategy2).getEventQueue());
   }
 
   @Test
@@ -90,6 +129,31 @@ class EventProcessingStrategyFactoryTest {
     assertNotSame(strategy1, strategy2);
   }
 
+  @Test
+  void shouldCreateConflatingIndependentStrategies() {
+    EventProcessingStrategy<Void, Void> strategy1 = EventProcessingStrategyFactory.createConflatingStrategy();
+    EventProcessingStrategy<Void, Void> strategy2 = EventProcessingStrategyFactory.createConflatingStrategy();
+
+    assertEquals(0, strategy1.getEventQueueSize());
+    assertNotNull(strategy1.getUnexpectedFlowListener());
+    assertInstanceOf(ConflatingEventStrategy.class, strategy1);
+    assertNotSame(strategy1, strategy2);
+  }
+
+  @Test
+  void shouldCreateConfiguredPriorityLaneStrategy() {
+    StateEvent<Void> stop = new NamedStateEvent<>("stop");
+    Config<Void, Void> config = new Config<Void, Void>().withPriorityLane(stop)
+        .withExecutor(mock(ExecutorService.class));
+    EventProcessingStrategy<Void, Void> strategy = EventProcessingStrategyFactory.createPriorityLaneStrategy(
+        config);
+    PriorityLaneEventStrategy<Void, Void> priorityLaneStrategy = (PriorityLaneEventStrategy) strategy;
+
+    assertEquals(2, priorityLaneStrategy.getLaneCount());
+    assertEquals(0, priorityLaneStrategy.laneFor(stop));
+    assertEquals(1, priorityLaneStrategy.laneFor(new NamedStateEvent<>("other")));
+  }
+
   @Test
   void shouldCreateConfiguredDefaultStrategy() {
     ExecutorService executor = mock(ExecutorService.class);
@@ -100,13 +164,14 @@ class EventProcessingStrategyFactoryTest {
     UnexpectedFlowListener<Void, Void> unexpectedFlowListener = mock(UnexpectedFlowListener.class);
     Config<Void, Void> config = new Config<Void, Void>().withExecutor(executor)
         .withThreadName(threadName).withEventQueue(eventQueue).withMaxQueueSize(10)
-        .withUnmappedEventHandler(unmappedEventHandler)
+        .withPoolCapacity(16).withUnmappedEventHandler(unmappedEventHandler)
         .withUnexpectedFlowListener(unexpectedFlowListener);
     EventProcessingStrategy<Void, Void> strategy = EventProcessingStrategyFactory.createDefaultStrategy(
         config);
     DefaultEventStrategy<Void, Void> defaultEventStrategy = (DefaultEventStrategy) strategy;
 
     assertSame(eventQueue, defaultEventStrategy.getEventQueue());
+    assertEquals(16, defaultEventStrategy.getEventMachinePairPool().getCapacity());
     assertEquals(0, defaultEventStrategy.getEventQueueSize());
     assertSame(unexpectedFlowListener, defaultEventStrategy.getUnexpectedFlowListener());
   }
@@ -130,4 +195,96 @@ class EventProcessingStrategyFactoryTest {
     assertEquals(0, dropDuplicateEventStrategy.getEventQueueSize());
     assertSame(unexpectedFlowListener, dropDuplicateEventStrategy.getUnexpectedFlowListener());
   }
+
+  @Test
+  void shouldCreateConfiguredRingBufferStrategy() {
+    UnexpectedFlowListener<Void, Void> unexpectedFlowListener = mock(UnexpectedFlowListener.class);
+    Config<Void, Void> config = new Config<Void, Void>().withExecutor(
+            mock(ExecutorService.class)).withMaxQueueSize(100)
+        .withUnexpectedFlowListener(unexpectedFlowListener);
+    EventProcessingStrategy<Void, Void> strategy = EventProcessingStrategyFactory.createRingBufferStrategy(
+        config);
+    RingBufferEventStrategy<Void, Void> ringBufferEventStrategy = (RingBufferEventStrategy) strategy;
+
+    assertEquals(128, ringBufferEventStrategy.getCapacity());
+    assertEquals(0, ringBufferEventStrategy.getEventQueueSize());
+    assertSame(unexpectedFlowListener, ringBufferEventStrategy.getUnexpectedFlowListener());
+    assertNotSame(strategy, EventProcessingStrategyFactory.createRingBufferStrategy());
+  }
+
+  @Test
+  void shouldCreateConfiguredShardedStrategy() {
+    UnexpectedFlowListener<Void, Void> unexpectedFlowListener = mock(UnexpectedFlowListener.class);
+    Config<Void, Void> config = new Config<Void, Void>().withShardCount(3)
+        .withUnexpectedFlowListener(unexpectedFlowListener);
+    ShardedEventStrategy<Void, Void> strategy = (ShardedEventStrategy) EventProcessingStrategyFactory.createShardedStrategy(
+        config);
+
+    assertEquals(3, strategy.getShardCount());
+    assertEquals(0, strategy.getEventQueueSize());
+    assertSame(unexpectedFlowListener, strategy.getUnexpectedFlowListener());
+    assertEquals(Runtime.getRuntime().availableProcessors(),
+        new Config<Void, Void>().getShardCount());
+    assertThrows(IllegalArgumentException.class, () -> config.withShardCount(0));
+  }
+
+  @Test
+  void shouldConfigureDrainQuantum() {
+    Config<Void, Void> config = new Config<>();
+    assertEquals(DrainQuantum.UNBOUNDED, config.getDrainQuantum());
+    assertThrows(IllegalArgumentException.class,
+        () -> config.withDrainQuantum(0, Duration.ofMillis(1)));
+    assertThrows(IllegalArgumentException.class, () -> config.withDrainQuantum(1, Duration.ZERO));
+    assertEquals(new DrainQuantum(8, 2_000_000),
+        config.withDrainQuantum(4, Duration.ofMillis(1)).getDrainQuantum().weighted(2));
+  }
+
+  @Test
+  void shouldCreateConfiguredDedicatedThreadStrategy() {
+    UnexpectedFlowListener<Void, Void> unexpectedFlowListener = mock(UnexpectedFlowListener.class);
+    Config<Void, Void> config = new Config<Void, Void>().withThreadName("dedicated")
+        .withIdleStrategy(BusySpinIdleStrategy::new)
+        .withUnexpectedFlowListener(unexpectedFlowListener);
+    assertInstanceOf(BackoffIdleStrategy.class, new Config<Void, Void>().newIdleStrategy());
+    assertInstanceOf(BusySpinIdleStrategy.class, config.newIdleStrategy());
+    assertNotSame(config.newIdleStrategy(), config.newIdleStrategy());
+    try (DedicatedThreadEventStrategy<Void, Void> strategy = (DedicatedThreadEventStrategy) EventProcessingStrategyFactory.createDedicatedThreadStrategy(
+        config)) {
+      assertTrue(strategy.getConsumerThread().getName().startsWith("dedicated-"));
+      assertTrue(strategy.getConsumerThread().isDaemon());
+      assertEquals(0, strategy.getEventQueueSize());
+      assertSame(unexpectedFlowListener, strategy.getUnexpectedFlowListener());
+    }
+  }
+
+  @Test
+  void shouldCreateMailboxStrategy() {
+    Config<Void, Void> config = new Config<Void, Void>().withThreadName("mailbox");
+    ExecutorService workStealingExecutor = config.getWorkStealingExecutor();
+    try {
+      assertInstanceOf(ForkJoinPool.class, workStealingExecutor);
+      assertTrue(((ForkJoinPool) workStealingExecutor).getAsyncMode());
+      assertSame(workStealingExecutor, config.getWorkStealingExecutor());
+      assertInstanceOf(MailboxEventStrategy.class,
+          EventProcessingStrategyFactory.createMailboxStrategy(config));
+      ExecutorService executor = mock(ExecutorService.class);
+      assertSame(executor, new Config<Void, Void>().withExecutor(executor)
+          .getWorkStealingExecutor());
+    } finally {
+      workStealingExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldCreateVirtualThreadStrategy() {
+    ExecutorService executor = mock(ExecutorService.class);
+    Config<Void, Void> config = new Config<Void, Void>().withExecutor(executor);
+    assertSame(executor, config.getVirtualThreadExecutor());
+    assertInstanceOf(DefaultEventStrategy.class,
+        EventProcessingStrategyFactory.createVirtualThreadStrategy(config));
+    if (!Threads.isVirtualThreadSupported()) {
+      assertThrows(UnsupportedOperationException.class,
+          () -> EventProcessingStrategyFactory.createVirtualThreadStrategy(new Config<>()));
+    }
+  }
 }
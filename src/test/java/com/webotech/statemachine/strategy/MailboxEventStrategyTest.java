@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.NamedState;
+import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.TestingUtil;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class MailboxEventStrategyTest {
+
+  private static final StateEvent<Integer> tick = new NamedStateEvent<>("tick");
+  private static final StateEvent<Integer> stop = new NamedStateEvent<>("stop");
+  private final UnexpectedFlowListener<List<Integer>, Integer> unexpectedFlowListener = mock(
+      UnexpectedFlowListener.class);
+
+  @Test
+  void shouldProcessEachMachineInOrderOnWorkStealingPool() {
+    ForkJoinPool pool = new ForkJoinPool(4, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null,
+        true);
+    try {
+      MailboxEventStrategy<List<Integer>, Integer> strategy = newStrategy(pool, -1);
+      AtomicInteger maxActiveDrains = new AtomicInteger();
+      List<GenericStateMachine<List<Integer>, Integer>> stateMachines = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        GenericStateMachine<List<Integer>, Integer> stateMachine = newStateMachine(strategy);
+        AtomicInteger activeDrains = new AtomicInteger();
+        stateMachine.getCurrentState().appendEntryActions((ev, sm) -> {
+          maxActiveDrains.accumulateAndGet(activeDrains.incrementAndGet(), Math::max);
+          Thread.yield();
+          activeDrains.decrementAndGet();
+        });
+        stateMachines.add(stateMachine);
+      }
+      for (int i = 0; i < 100; i++) {
+        for (GenericStateMachine<List<Integer>, Integer> stateMachine : stateMachines) {
+          tick.setPayload(i);
+          stateMachine.fire(tick);
+        }
+      }
+      assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+          () -> strategy.getEventQueueSize() == 0 && stateMachines.stream()
+              .allMatch(sm -> sm.getContext().size() == 100)));
+      for (GenericStateMachine<List<Integer>, Integer> stateMachine : stateMachines) {
+        for (int i = 0; i < 100; i++) {
+          assertEquals(i, stateMachine.getContext().get(i));
+        }
+      }
+      assertEquals(1, maxActiveDrains.get());
+      assertEquals(50, strategy.getMailboxCount());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldScheduleOneDrainTaskPerMailbox() {
+    ExecutorService executor = mock(ExecutorService.class);
+    MailboxEventStrategy<List<Integer>, Integer> strategy = newStrategy(executor, 2);
+    tick.setPayload(1);
+    GenericStateMachine<List<Integer>, Integer> stateMachine1 = newStateMachine(strategy);
+    GenericStateMachine<List<Integer>, Integer> stateMachine2 = newStateMachine(strategy);
+    assertTrue(strategy.tryProcessEvent(tick, stateMachine1));
+    assertTrue(strategy.tryProcessEvent(tick, stateMachine1));
+    assertFalse(strategy.tryProcessEvent(tick, stateMachine1));
+    assertTrue(strategy.tryProcessEvent(tick, stateMachine2));
+    assertEquals(3, strategy.getEventQueueSize());
+    assertEquals(1, strategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(tick, stateMachine1);
+    ArgumentCaptor<Runnable> drainTasks = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(2)).execute(drainTasks.capture());
+    drainTasks.getAllValues().forEach(Runnable::run);
+    assertEquals(0, strategy.getEventQueueSize());
+    assertEquals(2, stateMachine1.getContext().size());
+    assertEquals(1, stateMachine2.getContext().size());
+  }
+
+  @Test
+  void shouldRemoveMailboxOfEndedMachine() {
+    ExecutorService executor = mock(ExecutorService.class);
+    MailboxEventStrategy<List<Integer>, Integer> strategy = newStrategy(executor, -1);
+    GenericStateMachine<List<Integer>, Integer> stateMachine = newStateMachine(strategy);
+    assertTrue(strategy.tryProcessEvent(stop, stateMachine));
+    assertEquals(1, strategy.getMailboxCount());
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertTrue(stateMachine.isEnded());
+    assertEquals(0, strategy.getMailboxCount());
+  }
+
+  @Test
+  void shouldRemoveMailboxOfMachineStoppedWhileIdle() {
+    ExecutorService executor = mock(ExecutorService.class);
+    MailboxEventStrategy<List<Integer>, Integer> strategy = newStrategy(executor, -1);
+    GenericStateMachine<List<Integer>, Integer> stateMachine = newStateMachine(strategy);
+    tick.setPayload(1);
+    assertTrue(strategy.tryProcessEvent(tick, stateMachine));
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertEquals(1, strategy.getMailboxCount());
+
+    stateMachine.stop();
+    assertTrue(stateMachine.isEnded());
+    assertEquals(0, strategy.getMailboxCount());
+  }
+
+  @Test
+  void shouldDrainMailboxesByWeightedRoundRobin() {
+    ExecutorService executor = mock(ExecutorService.class);
+    List<Runnable> tasks = new ArrayList<>();
+    doAnswer(invocation -> tasks.add(invocation.getArgument(0))).when(executor).execute(any());
+    Map<StateMachine<List<Integer>, Integer>, Integer> weights = new HashMap<>();
+    EventProcessingStrategy<List<Integer>, Integer> strategy = EventProcessingStrategyFactory.createMailboxStrategy(
+        new EventProcessingStrategyFactory.Config<List<Integer>, Integer>().withExecutor(executor)
+            .withDrainQuantum(2, Duration.ofSeconds(1))
+            .withDrainWeight(sm -> weights.getOrDefault(sm, 1)));
+    GenericStateMachine<List<Integer>, Integer> heavy = newStateMachine(strategy);
+    GenericStateMachine<List<Integer>, Integer> light = newStateMachine(strategy);
+    weights.put(heavy, 2);
+    List<String> processed = new ArrayList<>();
+    heavy.getCurrentState().appendEntryActions((ev, sm) -> processed.add("heavy"));
+    light.getCurrentState().appendEntryActions((ev, sm) -> processed.add("light"));
+    for (int i = 0; i < 6; i++) {
+      tick.setPayload(i);
+      heavy.fire(tick);
+      light.fire(tick);
+    }
+    while (!tasks.isEmpty()) {
+      tasks.remove(0).run();
+    }
+    assertEquals(List.of("heavy", "heavy", "heavy", "heavy", "light", "light", "heavy", "heavy",
+        "light", "light", "light", "light"), processed);
+    assertEquals(0, strategy.getEventQueueSize());
+  }
+
+  private MailboxEventStrategy<List<Integer>, Integer> newStrategy(ExecutorService executor,
+      int maxQueueSize) {
+    return new MailboxEventStrategy<>(mock(BiConsumer.class), executor, unexpectedFlowListener,
+        maxQueueSize);
+  }
+
+  private static GenericStateMachine<List<Integer>, Integer> newStateMachine(
+      EventProcessingStrategy<List<Integer>, Integer> strategy) {
+    State<List<Integer>, Integer> ticking = new NamedState<>("TICKING");
+    ticking.appendEntryActions((ev, sm) -> {
+      if (ev != null && ev.getPayload() != null) {
+        sm.getContext().add(ev.getPayload());
+      }
+    });
+    GenericStateMachine<List<Integer>, Integer> stateMachine = new GenericStateMachine.Builder<List<Integer>, Integer>().setContext(
+        new CopyOnWriteArrayList<>()).setEventProcessingStrategy(strategy).build();
+    stateMachine.initialSate(ticking).receives(tick).itTransitionsTo(ticking).when(ticking)
+        .receives(stop).itEnds();
+    stateMachine.start();
+    return stateMachine;
+  }
+}
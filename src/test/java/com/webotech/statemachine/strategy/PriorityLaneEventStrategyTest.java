@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.NamedState;
+import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class PriorityLaneEventStrategyTest {
+
+  private static final StateEvent<Void> work = new NamedStateEvent<>("work");
+  private static final StateEvent<Void> error = new NamedStateEvent<>("error");
+  private static final StateEvent<Void> stop = new NamedStateEvent<>("stop");
+  private ExecutorService executor;
+  private UnexpectedFlowListener<List<String>, Void> unexpectedFlowListener;
+  private PriorityLaneEventStrategy<List<String>, Void> strategy;
+  private GenericStateMachine<List<String>, Void> stateMachine;
+
+  @BeforeEach
+  void setup() {
+    executor = mock(ExecutorService.class);
+    unexpectedFlowListener = mock(UnexpectedFlowListener.class);
+    strategy = new PriorityLaneEventStrategy<>(mock(BiConsumer.class), executor,
+        unexpectedFlowListener, 3, List.of(Set.of(error), Set.of(stop)));
+    State<List<String>, Void> running = new NamedState<>("RUNNING");
+    running.appendEntryActions((ev, sm) -> sm.getContext().add(ev.getName()));
+    stateMachine = new GenericStateMachine.Builder<List<String>, Void>().setContext(
+        new ArrayList<>()).setEventProcessingStrategy(strategy).build();
+    stateMachine.initialSate(running).receives(work).itTransitionsTo(running).when(running)
+        .receives(error).itTransitionsTo(running).when(running).receives(stop)
+        .itTransitionsTo(running);
+    stateMachine.start();
+    stateMachine.getContext().clear();
+  }
+
+  @Test
+  void shouldClassifyEventsIntoLanes() {
+    assertEquals(3, strategy.getLaneCount());
+    assertEquals(0, strategy.laneFor(error));
+    assertEquals(1, strategy.laneFor(stop));
+    assertEquals(2, strategy.laneFor(work));
+    assertThrows(IllegalStateException.class,
+        () -> new PriorityLaneEventStrategy<>(mock(BiConsumer.class), executor,
+            unexpectedFlowListener, -1, List.of(Set.of(stop), Set.of(stop))));
+  }
+
+  @Test
+  void shouldProcessHigherLanesFirst() {
+    assertTrue(strategy.tryProcessEvent(work, stateMachine));
+    assertTrue(strategy.tryProcessEvent(work, stateMachine));
+    assertTrue(strategy.tryProcessEvent(stop, stateMachine));
+    assertTrue(strategy.tryProcessEvent(work, stateMachine));
+    assertTrue(strategy.tryProcessEvent(error, stateMachine));
+    assertEquals(5, strategy.getEventQueueSize());
+
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertEquals(List.of("error", "stop", "work", "work", "work"), stateMachine.getContext());
+    assertEquals(0, strategy.getEventQueueSize());
+  }
+
+  @Test
+  void shouldKeepPriorityOfRefiredEventWithPayload() {
+    StateEvent<String> retry = new NamedStateEvent<>("retry");
+    StateEvent<String> failure = new NamedStateEvent<>("failure");
+    PriorityLaneEventStrategy<List<String>, String> payloadStrategy = new PriorityLaneEventStrategy<>(
+        mock(BiConsumer.class), executor, mock(UnexpectedFlowListener.class), -1,
+        List.of(Set.of(failure)));
+    State<List<String>, String> running = new NamedState<>("RUNNING");
+    running.appendEntryActions((ev, sm) -> {
+      sm.getContext().add(ev.getName() + ":" + ev.getPayload());
+      if ("timeout".equals(ev.getPayload()) && sm.getContext().size() == 1) {
+        sm.fire(retry);
+        sm.fire(ev);
+      }
+    });
+    GenericStateMachine<List<String>, String> payloadMachine = new GenericStateMachine.Builder<List<String>, String>().setContext(
+        new ArrayList<>()).setEventProcessingStrategy(payloadStrategy).build();
+    payloadMachine.initialSate(running).receives(retry).itTransitionsTo(running).when(running)
+        .receives(failure).itTransitionsTo(running);
+    payloadMachine.start();
+    payloadMachine.getContext().clear();
+
+    StateEvent<String> firedFailure = new NamedStateEvent<>("failure");
+    firedFailure.setPayload("timeout");
+    assertTrue(payloadStrategy.tryProcessEvent(firedFailure, payloadMachine));
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertEquals(List.of("failure:timeout", "failure:timeout", "retry:null"),
+        payloadMachine.getContext());
+  }
+
+  @Test
+  void shouldOnlyBoundDefaultLane() {
+    for (int i = 0; i < 3; i++) {
+      assertTrue(strategy.tryProcessEvent(work, stateMachine));
+    }
+    assertFalse(strategy.tryProcessEvent(work, stateMachine));
+    assertTrue(strategy.tryProcessEvent(stop, stateMachine));
+    assertEquals(4, strategy.getEventQueueSize());
+    assertEquals(1, strategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(work, stateMachine);
+
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertTrue(strategy.tryProcessEvent(work, stateMachine));
+  }
+}
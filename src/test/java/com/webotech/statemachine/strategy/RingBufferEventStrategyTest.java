@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.NamedState;
+import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.TestingUtil;
+import com.webotech.statemachine.TransitionTable;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.api.StateMachine;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class RingBufferEventStrategyTest {
+
+  private static final StateEvent<Void> event1 = new NamedStateEvent<>("event1");
+  private static final State<Void, Void> state1 = new NamedState<>("STATE-1");
+  private static final State<Void, Void> state2 = new NamedState<>("STATE-2");
+  private ExecutorService executor;
+  private GenericStateMachine<Void, Void> stateMachine;
+  private UnexpectedFlowListener<Void, Void> unexpectedFlowListener;
+  private BiConsumer<StateEvent<Void>, StateMachine<Void, Void>> unmappedEventHandler;
+  private TransitionTable<Void, Void> transitionTable;
+
+  @BeforeEach
+  void setup() {
+    executor = Executors.newSingleThreadExecutor();
+    stateMachine = mock(GenericStateMachine.class);
+    unexpectedFlowListener = mock(UnexpectedFlowListener.class);
+    unmappedEventHandler = mock(BiConsumer.class);
+    transitionTable = TransitionTable.compile(Map.of(state1, Map.of(event1, state2)), List.of(),
+        List.of(), new NamedState<>(GenericStateMachine.RESERVED_STATE_NAME_END),
+        new NamedStateEvent<>(GenericStateMachine.RESERVED_STATE_EVENT_NAME_IMMEDIATE));
+    when(stateMachine.getTransitionTable()).thenReturn(transitionTable);
+    when(stateMachine.getNoopState()).thenReturn(
+        new NamedState<>(GenericStateMachine.RESERVED_STATE_NAME_NOOP));
+    when(stateMachine.getCurrentState()).thenReturn(state1);
+    when(stateMachine.getCurrentStateId()).thenReturn(transitionTable.getStateId(state1));
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void shouldRoundCapacityToPowerOfTwo() {
+    assertEquals(RingBufferEventStrategy.DEFAULT_CAPACITY, RingBufferEventStrategy.capacityFor(-1));
+    assertEquals(1, RingBufferEventStrategy.capacityFor(1));
+    assertEquals(2, RingBufferEventStrategy.capacityFor(2));
+    assertEquals(8, RingBufferEventStrategy.capacityFor(5));
+    assertEquals(1024, RingBufferEventStrategy.capacityFor(1024));
+    assertThrows(IllegalArgumentException.class,
+        () -> RingBufferEventStrategy.capacityFor(Integer.MAX_VALUE));
+  }
+
+  @Test
+  void shouldProcessEventsInSequence() {
+    RingBufferEventStrategy<Void, Void> strategy = new RingBufferEventStrategy<>(
+        unmappedEventHandler, executor, unexpectedFlowListener, 4);
+    for (int i = 0; i < 10; i++) {
+      strategy.processEvent(event1, stateMachine);
+      waitForEventsToProcess(strategy);
+    }
+    verify(stateMachine, times(10)).updateCurrentState(transitionTable.getStateId(state2));
+    verifyNoInteractions(unexpectedFlowListener);
+  }
+
+  @Test
+  void shouldProcessEventsFromManyThreads() throws InterruptedException {
+    RingBufferEventStrategy<Void, Void> strategy = new RingBufferEventStrategy<>(
+        unmappedEventHandler, executor, unexpectedFlowListener, 1024);
+    int threads = 4;
+    int eventsPerThread = 200;
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(() -> {
+        for (int i = 0; i < eventsPerThread; i++) {
+          strategy.processEvent(event1, stateMachine);
+        }
+        latch.countDown();
+      }).start();
+    }
+    if (!latch.await(5, TimeUnit.SECONDS)) {
+      fail("Timed out");
+    }
+    waitForEventsToProcess(strategy);
+    verify(stateMachine, times(threads * eventsPerThread)).updateCurrentState(
+        transitionTable.getStateId(state2));
+    verifyNoInteractions(unexpectedFlowListener);
+  }
+
+  @Test
+  void shouldDropEventsWhenFull() {
+    ExecutorService mockExecutor = mock(ExecutorService.class);
+    RingBufferEventStrategy<Void, Void> strategy = new RingBufferEventStrategy<>(
+        unmappedEventHandler, mockExecutor, unexpectedFlowListener, 2);
+    strategy.processEvent(event1, stateMachine);
+    strategy.processEvent(event1, stateMachine);
+    verifyNoInteractions(unexpectedFlowListener);
+    assertFalse(strategy.tryProcessEvent(event1, stateMachine));
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+    assertEquals(1, strategy.getDroppedEventCount());
+    assertEquals(2, strategy.getEventQueueSize());
+
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(mockExecutor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertEquals(0, strategy.getEventQueueSize());
+    verify(stateMachine, times(2)).updateCurrentState(transitionTable.getStateId(state2));
+  }
+
+  @Test
+  void shouldClaimBatch() {
+    ExecutorService mockExecutor = mock(ExecutorService.class);
+    RingBufferEventStrategy<Void, Void> strategy = new RingBufferEventStrategy<>(
+        unmappedEventHandler, mockExecutor, unexpectedFlowListener, 4);
+    strategy.processEvent(event1, stateMachine);
+    assertEquals(3, strategy.processEvents(List.of(event1, event1, event1, event1), stateMachine));
+    assertEquals(4, strategy.getEventQueueSize());
+    assertEquals(1, strategy.getDroppedEventCount());
+    verify(unexpectedFlowListener, times(1)).onEventDropped(event1, stateMachine);
+    assertEquals(0, strategy.processEvents(List.of(event1), stateMachine));
+
+    ArgumentCaptor<Runnable> drainTask = ArgumentCaptor.forClass(Runnable.class);
+    verify(mockExecutor, times(1)).execute(drainTask.capture());
+    drainTask.getValue().run();
+    assertEquals(0, strategy.getEventQueueSize());
+    verify(stateMachine, times(4)).updateCurrentState(transitionTable.getStateId(state2));
+  }
+
+  @Test
+  void shouldHandleUncaughtException() {
+    RingBufferEventStrategy<Void, Void> strategy = new RingBufferEventStrategy<>(
+        unmappedEventHandler, executor, unexpectedFlowListener, 4);
+    IllegalStateException testInduced = new IllegalStateException("test induced");
+    when(stateMachine.getCurrentStateId()).thenThrow(testInduced);
+    strategy.processEvent(event1, stateMachine);
+    waitForEventsToProcess(strategy);
+    verify(unexpectedFlowListener, times(1)).onExceptionDuringEventProcessing(eq(event1),
+        eq(stateMachine), any(Thread.class), eq(testInduced));
+  }
+
+  private static void waitForEventsToProcess(RingBufferEventStrategy<Void, Void> strategy) {
+    if (!TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+        () -> strategy.getEventQueueSize() == 0)) {
+      fail("Timed out");
+    }
+  }
+}
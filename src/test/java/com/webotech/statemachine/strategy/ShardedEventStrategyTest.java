@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.webotech.statemachine.GenericStateMachine;
+import com.webotech.statemachine.NamedState;
+import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.TestingUtil;
+import com.webotech.statemachine.UnexpectedFlowListener;
+import com.webotech.statemachine.api.State;
+import com.webotech.statemachine.api.StateEvent;
+import com.webotech.statemachine.strategy.EventProcessingStrategyFactory.Config;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ShardedEventStrategyTest {
+
+  private static final StateEvent<Void> next = new NamedStateEvent<>("next");
+
+  @Test
+  void shouldPinStateMachineToShard() {
+    EventProcessingStrategy<Void, Void> shard1 = mock(EventProcessingStrategy.class);
+    EventProcessingStrategy<Void, Void> shard2 = mock(EventProcessingStrategy.class);
+    UnexpectedFlowListener<Void, Void> unexpectedFlowListener = mock(UnexpectedFlowListener.class);
+    when(shard1.getUnexpectedFlowListener()).thenReturn(unexpectedFlowListener);
+    when(shard1.getEventQueueSize()).thenReturn(2);
+    when(shard2.getEventQueueSize()).thenReturn(3);
+    when(shard1.getDroppedEventCount()).thenReturn(4L);
+    when(shard2.getDroppedEventCount()).thenReturn(5L);
+    ShardedEventStrategy<Void, Void> strategy = new ShardedEventStrategy<>(List.of(shard1, shard2));
+    GenericStateMachine<Void, Void> stateMachine = mock(GenericStateMachine.class);
+    StateEvent<Void> event = new NamedStateEvent<>("event");
+
+    EventProcessingStrategy<Void, Void> shard = strategy.shardFor(stateMachine);
+    for (int i = 0; i < 10; i++) {
+      assertSame(shard, strategy.shardFor(stateMachine));
+    }
+    strategy.processEvent(event, stateMachine);
+    verify(shard).processEvent(event, stateMachine);
+    assertEquals(2, strategy.getShardCount());
+    assertEquals(5, strategy.getEventQueueSize());
+    assertEquals(9, strategy.getDroppedEventCount());
+    assertSame(unexpectedFlowListener, strategy.getUnexpectedFlowListener());
+    assertThrows(IllegalArgumentException.class, () -> new ShardedEventStrategy<>(List.of()));
+  }
+
+  @Test
+  void shouldKeepOrderPerStateMachine() {
+    EventProcessingStrategy<List<Integer>, Void> strategy = EventProcessingStrategyFactory.createShardedStrategy(
+        new Config<List<Integer>, Void>().withShardCount(4).withThreadName("shard"));
+    State<List<Integer>, Void> counting = new NamedState<>("COUNTING");
+    counting.appendEntryActions((ev, sm) -> sm.getContext().add(sm.getContext().size()));
+    List<GenericStateMachine<List<Integer>, Void>> stateMachines = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      GenericStateMachine<List<Integer>, Void> stateMachine = new GenericStateMachine.Builder<List<Integer>, Void>().setContext(
+          new ArrayList<>()).setEventProcessingStrategy(strategy).build();
+      stateMachine.initialSate(counting).receives(next).itTransitionsTo(counting);
+      stateMachine.start();
+      stateMachines.add(stateMachine);
+    }
+    for (int i = 0; i < 100; i++) {
+      stateMachines.forEach(sm -> sm.fire(next));
+    }
+    assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+        () -> strategy.getEventQueueSize() == 0 && stateMachines.stream()
+            .allMatch(sm -> sm.getContext().size() == 101)));
+    for (GenericStateMachine<List<Integer>, Void> stateMachine : stateMachines) {
+      for (int i = 0; i < 101; i++) {
+        assertEquals(i, stateMachine.getContext().get(i));
+      }
+    }
+  }
+}
@@ -4,7 +4,7 @@
 
 package com.webotech.statemachine.strategy;
 
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -13,9 +13,11 @@ import static org.mockito.Mockito.when;
 import com.webotech.statemachine.GenericStateMachine;
 import com.webotech.statemachine.NamedState;
 import com.webotech.statemachine.NamedStateEvent;
+import com.webotech.statemachine.TransitionTable;
 import com.webotech.statemachine.api.State;
 import com.webotech.statemachine.api.StateEvent;
 import com.webotech.statemachine.api.StateMachine;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 import org.junit.jupiter.api.BeforeEach;
@@ -36,18 +38,24 @@ class TransitionTaskTest {
   private BiConsumer<StateEvent<Void>, StateMachine<Void, Void>> unmappedEventHandler;
   private GenericStateMachine<Void, Void> stateMachine;
   private TransitionTask<Void, Void> transitionTask;
+  private TransitionTable<Void, Void> transitionTable;
 
   @BeforeEach
+  @SuppressWarnings("deprecation")
   void setup() {
     stateMachine = mock(GenericStateMachine.class);
     unmappedEventHandler = mock(BiConsumer.class);
     Map<State<Void, Void>, Map<StateEvent<Void>, State<Void, Void>>> states = Map.of(state1,
-        Map.of(event1, state2), state2, Map.of(event1, noopState));
+        Map.of(event1, state2), state2, Map.of(event1, noopState), noopState, Map.of());
+    transitionTable = TransitionTable.compile(states, List.of(state1, state2), List.of(event1),
+        endState, immediateEvent);
     transitionTask = new TransitionTask<>(unmappedEventHandler);
     transitionTask.setStates(states);
 
+    when(stateMachine.getTransitionTable()).thenReturn(transitionTable);
     when(stateMachine.getNoopState()).thenReturn(noopState);
     when(stateMachine.getCurrentState()).thenReturn(state1);
+    when(stateMachine.getCurrentStateId()).thenReturn(transitionTable.getStateId(state1));
     when(stateMachine.getEndState()).thenReturn(endState);
     when(stateMachine.getImmediateEvent()).thenReturn(immediateEvent);
   }
@@ -62,6 +70,7 @@ class TransitionTaskTest {
   @Test
   void shouldHandleNoopState() {
     when(stateMachine.getCurrentState()).thenReturn(state2);
+    when(stateMachine.getCurrentStateId()).thenReturn(transitionTable.getStateId(state2));
 
     transitionTask.execute(event1, stateMachine);
 
@@ -72,13 +81,13 @@ class TransitionTaskTest {
         event1, noopState);
 
     // ensure no state change
-    verify(stateMachine, times(0)).updateCurrentState(any());
+    verify(stateMachine, times(0)).updateCurrentState(anyInt());
   }
 
   @Test
   void shouldTransition() {
     State<Void, Void> mockState = mock(State.class);
-    when(stateMachine.getCurrentState()).thenReturn(state1, state1, mockState);
+    when(stateMachine.getCurrentState()).thenReturn(state1, mockState);
 
     transitionTask.execute(event1, stateMachine);
 
@@ -87,10 +96,25 @@ class TransitionTaskTest {
     verify(stateMachine, times(1)).notifyStateMachineListener(false, state1, event1, state2);
 
     // transition
-    verify(stateMachine, times(1)).updateCurrentState(state2);
+    verify(stateMachine, times(1)).updateCurrentState(transitionTable.getStateId(state2));
 
     // entry/exit actions
     verify(mockState, times(1)).onExit(event1, stateMachine);
     verify(mockState, times(1)).onEntry(event1, stateMachine);
   }
-}
\ No newline at end of file
+
+  @Test
+  void shouldStopWhenStateEndsOnEntry() {
+    Map<State<Void, Void>, Map<StateEvent<Void>, State<Void, Void>>> states = Map.of(state1,
+        Map.of(event1, state2));
+    TransitionTable<Void, Void> endingTable = TransitionTable.compile(states, List.of(), List.of(),
+        endState, immediateEvent);
+    when(stateMachine.getTransitionTable()).thenReturn(endingTable);
+    when(stateMachine.getCurrentStateId()).thenReturn(endingTable.getStateId(state1));
+
+    transitionTask.execute(event1, stateMachine);
+
+    verify(stateMachine, times(1)).updateCurrentState(endingTable.getStateId(state2));
+    verify(stateMachine, times(1)).stop();
+  }
+}
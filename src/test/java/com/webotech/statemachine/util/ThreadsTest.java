@@ -5,6 +5,7 @@
 package com.webotech.statemachine.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -67,4 +68,17 @@ class ThreadsTest {
     assertTrue(threadNameRef.get().matches(ThreadsTest.class.getSimpleName() + "-\\d+"));
   }
 
-}
\ No newline at end of file
+  @Test
+  void shouldCreateVirtualThreadFactoryWhenSupported() {
+    if (Threads.isVirtualThreadSupported()) {
+      Thread thread = Threads.newNamedVirtualThreadFactory("virtual").newThread(() -> {
+      });
+      assertTrue(thread.getName().matches("virtual-\\d+"));
+    } else {
+      assertThrows(UnsupportedOperationException.class,
+          () -> Threads.newNamedVirtualThreadFactory("virtual"));
+      assertThrows(UnsupportedOperationException.class,
+          () -> Threads.newNamedVirtualThreadPerTaskExecutor("virtual", null));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2024 Paul Mackinlay <paul.mackinlay@gmail.com>
+ */
+
+package com.webotech.statemachine.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.webotech.statemachine.TestingUtil;
+import com.webotech.statemachine.util.TimingWheel.Timeout;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+
+  private TimingWheel timingWheel;
+
+  @BeforeEach
+  void setup() {
+    timingWheel = new TimingWheel(Duration.ofMillis(1), 8,
+        Threads.newNamedDaemonThreadFactory("timing-wheel-test"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    timingWheel.close();
+  }
+
+  @Test
+  void shouldRunTasksInDeadlineOrder() throws InterruptedException {
+    List<Integer> ran = new CopyOnWriteArrayList<>();
+    CountDownLatch latch = new CountDownLatch(3);
+    long start = System.nanoTime();
+    // 30 millis is more than one revolution of the wheel
+    timingWheel.schedule(Duration.ofMillis(30), () -> {
+      ran.add(30);
+      latch.countDown();
+    });
+    timingWheel.schedule(Duration.ofMillis(5), () -> {
+      ran.add(5);
+      latch.countDown();
+    });
+    Timeout timeout = timingWheel.schedule(Duration.ofMillis(15), () -> {
+      ran.add(15);
+      latch.countDown();
+    });
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+    assertEquals(List.of(5, 15, 30), ran);
+    assertTrue(timeout.isExpired());
+    assertFalse(timeout.cancel());
+    assertEquals(0, timingWheel.getPendingCount());
+  }
+
+  @Test
+  void shouldCancelTask() {
+    AtomicInteger ran = new AtomicInteger();
+    Timeout timeout = timingWheel.schedule(Duration.ofMillis(20), ran::incrementAndGet);
+    assertEquals(1, timingWheel.getPendingCount());
+    assertTrue(timeout.cancel());
+    assertFalse(timeout.cancel());
+    assertTrue(timeout.isCancelled());
+    assertEquals(0, timingWheel.getPendingCount());
+    TestingUtil.sleep(50);
+    assertEquals(0, ran.get());
+    assertFalse(timeout.isExpired());
+  }
+
+  @Test
+  void shouldKeepRunningTasksAfterTaskThrowsError() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+    timingWheel.schedule(Duration.ZERO, () -> {
+      throw new AssertionError("test induced");
+    });
+    timingWheel.schedule(Duration.ofMillis(5), () -> {
+      assertTrue(TimingWheel.isTimerThread());
+      latch.countDown();
+    });
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertFalse(TimingWheel.isTimerThread());
+  }
+
+  @Test
+  void shouldScheduleManyTasks() {
+    AtomicInteger ran = new AtomicInteger();
+    int cancelled = 0;
+    for (int i = 0; i < 100_000; i++) {
+      Timeout timeout = timingWheel.schedule(Duration.ofMillis(i % 50), ran::incrementAndGet);
+      if (i % 2 == 0 && timeout.cancel()) {
+        cancelled++;
+      }
+    }
+    assertTrue(cancelled > 0);
+    assertTrue(TestingUtil.awaitCondition(5000, TimeUnit.MILLISECONDS,
+        () -> timingWheel.getPendingCount() == 0));
+    assertEquals(100_000 - cancelled, ran.get());
+  }
+
+  @Test
+  void shouldNotScheduleWhenClosed() {
+    timingWheel.close();
+    assertThrows(IllegalStateException.class,
+        () -> timingWheel.schedule(Duration.ZERO, () -> {
+        }));
+  }
+}